@@ -6,15 +6,15 @@
 package net.neoforged.neoforge.attachment;
 
 import com.mojang.logging.LogUtils;
-import java.util.IdentityHashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 import net.minecraft.core.HolderLookup;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.resources.ResourceLocation;
-import net.neoforged.fml.loading.FMLLoader;
 import net.neoforged.neoforge.registries.NeoForgeRegistries;
 import org.jetbrains.annotations.MustBeInvokedByOverriders;
 import org.jetbrains.annotations.Nullable;
@@ -26,29 +26,118 @@ import org.slf4j.Logger;
  */
 public abstract class AttachmentHolder implements IAttachmentHolder {
     public static final String ATTACHMENTS_NBT_KEY = "neoforge:attachments";
-    private static final boolean IN_DEV = !FMLLoader.isProduction();
     private static final Logger LOGGER = LogUtils.getLogger();
 
-    private void validateAttachmentType(AttachmentType<?> type) {
-        Objects.requireNonNull(type);
-        if (!IN_DEV) return;
+    private static final int PAGE_SHIFT = 3;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
 
-        if (!NeoForgeRegistries.ATTACHMENT_TYPES.containsValue(type)) {
+    private int validateAttachmentType(AttachmentType<?> type) {
+        int index = Objects.requireNonNull(type).index;
+        if (index < 0) {
             throw new IllegalArgumentException("Data attachment type with default value " + type.defaultValueSupplier.apply(getExposedHolder()) + " must be registered!");
         }
+        return index;
+    }
+
+    /**
+     * Attachment values, indexed by {@link AttachmentType#index}.
+     * The values are split into pages of {@value #PAGE_SIZE} that are only allocated once one of their attachments is set,
+     * so that holders only pay for the pages they actually use.
+     */
+    @Nullable
+    private Object[][] attachmentPages = null;
+    private int attachmentCount = 0;
+
+    /**
+     * Last tags written for {@linkplain AttachmentType#dirtyCheck dirty-tracked} attachments, indexed like the attachments.
+     * Cleared whenever the corresponding attachment is replaced or removed.
+     */
+    @Nullable
+    private Object[][] serializedPages = null;
+
+    @Nullable
+    private static Object getSlot(@Nullable Object[][] pages, int index) {
+        int page = index >>> PAGE_SHIFT;
+        if (pages == null || page >= pages.length) {
+            return null;
+        }
+        var values = pages[page];
+        return values == null ? null : values[index & PAGE_MASK];
+    }
+
+    private static Object[][] ensurePage(@Nullable Object[][] pages, int index) {
+        int page = index >>> PAGE_SHIFT;
+        if (pages == null) {
+            pages = new Object[page + 1][];
+        } else if (page >= pages.length) {
+            pages = Arrays.copyOf(pages, page + 1);
+        }
+        if (pages[page] == null) {
+            pages[page] = new Object[PAGE_SIZE];
+        }
+        return pages;
+    }
+
+    @Nullable
+    private static Object clearSlot(@Nullable Object[][] pages, int index) {
+        int page = index >>> PAGE_SHIFT;
+        if (pages == null || page >= pages.length || pages[page] == null) {
+            return null;
+        }
+        Object previous = pages[page][index & PAGE_MASK];
+        pages[page][index & PAGE_MASK] = null;
+        return previous;
+    }
+
+    @Nullable
+    final Object getAttachment(int index) {
+        return getSlot(attachmentPages, index);
+    }
+
+    @Nullable
+    final Object putAttachment(int index, Object value) {
+        attachmentPages = ensurePage(attachmentPages, index);
+        var values = attachmentPages[index >>> PAGE_SHIFT];
+        Object previous = values[index & PAGE_MASK];
+        values[index & PAGE_MASK] = value;
+        if (previous == null) {
+            attachmentCount++;
+        }
+        // Also invalidate when the same instance is set again, which is a common way to signal a change.
+        clearSlot(serializedPages, index);
+        return previous;
     }
 
     @Nullable
-    Map<AttachmentType<?>, Object> attachments = null;
+    final Object removeAttachment(int index) {
+        Object previous = clearSlot(attachmentPages, index);
+        if (previous != null) {
+            attachmentCount--;
+            clearSlot(serializedPages, index);
+        }
+        return previous;
+    }
 
     /**
-     * Create the attachment map if it does not yet exist, or return the current map.
+     * Calls the consumer for every attachment of this holder, in index order.
      */
-    final Map<AttachmentType<?>, Object> getAttachmentMap() {
-        if (attachments == null) {
-            attachments = new IdentityHashMap<>(4);
+    final void forEachAttachment(BiConsumer<AttachmentType<?>, Object> consumer) {
+        var pages = attachmentPages;
+        if (pages == null || attachmentCount == 0) {
+            return;
+        }
+        for (int page = 0; page < pages.length; page++) {
+            var values = pages[page];
+            if (values == null) {
+                continue;
+            }
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (values[i] != null) {
+                    consumer.accept(NeoForgeRegistries.ATTACHMENT_TYPES.byId(page << PAGE_SHIFT | i), values[i]);
+                }
+            }
         }
-        return attachments;
     }
 
     /**
@@ -62,51 +151,42 @@ public abstract class AttachmentHolder implements IAttachmentHolder {
 
     @Override
     public final boolean hasAttachments() {
-        return attachments != null && !attachments.isEmpty();
+        return attachmentCount != 0;
     }
 
     @Override
     public final boolean hasData(AttachmentType<?> type) {
-        validateAttachmentType(type);
-        return attachments != null && attachments.containsKey(type);
+        return getAttachment(validateAttachmentType(type)) != null;
     }
 
     @Override
     public final <T> T getData(AttachmentType<T> type) {
-        validateAttachmentType(type);
-        T ret = (T) getAttachmentMap().get(type);
+        int index = validateAttachmentType(type);
+        T ret = (T) getAttachment(index);
         if (ret == null) {
             ret = type.defaultValueSupplier.apply(getExposedHolder());
-            attachments.put(type, ret);
+            putAttachment(index, ret);
         }
         return ret;
     }
 
     @Override
     public <T> Optional<T> getExistingData(AttachmentType<T> type) {
-        validateAttachmentType(type);
-        if (attachments == null) {
-            return Optional.empty();
-        }
-        return Optional.ofNullable((T) this.attachments.get(type));
+        return Optional.ofNullable((T) getAttachment(validateAttachmentType(type)));
     }
 
     @Override
     @MustBeInvokedByOverriders
     public <T> @Nullable T setData(AttachmentType<T> type, T data) {
-        validateAttachmentType(type);
+        int index = validateAttachmentType(type);
         Objects.requireNonNull(data);
-        return (T) getAttachmentMap().put(type, data);
+        return (T) putAttachment(index, data);
     }
 
     @Override
     @MustBeInvokedByOverriders
     public <T> @Nullable T removeData(AttachmentType<T> type) {
-        validateAttachmentType(type);
-        if (attachments == null) {
-            return null;
-        }
-        return (T) attachments.remove(type);
+        return (T) removeAttachment(validateAttachmentType(type));
     }
 
     /**
@@ -115,22 +195,46 @@ public abstract class AttachmentHolder implements IAttachmentHolder {
      */
     @Nullable
     public final CompoundTag serializeAttachments(HolderLookup.Provider provider) {
-        if (attachments == null) {
+        if (attachmentCount == 0) {
             return null;
         }
-        CompoundTag tag = null;
-        for (var entry : attachments.entrySet()) {
-            var type = entry.getKey();
+        CompoundTag tag = new CompoundTag();
+        forEachAttachment((type, value) -> {
             if (type.serializer != null) {
-                Tag serialized = ((IAttachmentSerializer<?, Object>) type.serializer).write(entry.getValue(), provider);
+                Tag serialized = type.dirtyCheck != null ? writeTracked(type, value, provider) : write(type, value, provider);
                 if (serialized != null) {
-                    if (tag == null)
-                        tag = new CompoundTag();
-                    tag.put(NeoForgeRegistries.ATTACHMENT_TYPES.getKey(type).toString(), serialized);
+                    tag.put(type.serializedKey, serialized);
                 }
             }
+        });
+        return tag.isEmpty() ? null : tag;
+    }
+
+    @Nullable
+    private static Tag write(AttachmentType<?> type, Object value, HolderLookup.Provider provider) {
+        return ((IAttachmentSerializer<?, Object>) type.serializer).write(value, provider);
+    }
+
+    /**
+     * Writes a dirty-tracked attachment, copying the last written tag if the attachment did not change since.
+     * Only copies are returned, since the saved tags may be modified by their consumers.
+     */
+    @Nullable
+    private Tag writeTracked(AttachmentType<?> type, Object value, HolderLookup.Provider provider) {
+        // Always run the dirty check, so that the attachment is marked as clean even if nothing is cached yet.
+        boolean dirty = ((Predicate<Object>) type.dirtyCheck).test(value);
+        Tag serialized = (Tag) getSlot(serializedPages, type.index);
+        if (dirty || serialized == null) {
+            serialized = write(type, value, provider);
+            if (serialized != null) {
+                serializedPages = ensurePage(serializedPages, type.index);
+                serializedPages[type.index >>> PAGE_SHIFT][type.index & PAGE_MASK] = serialized;
+            } else {
+                clearSlot(serializedPages, type.index);
+                return null;
+            }
         }
-        return tag;
+        return serialized.copy();
     }
 
     /**
@@ -152,7 +256,7 @@ public abstract class AttachmentHolder implements IAttachmentHolder {
             }
 
             try {
-                getAttachmentMap().put(type, ((IAttachmentSerializer<Tag, ?>) type.serializer).read(getExposedHolder(), tag.get(key), provider));
+                putAttachment(type.index, ((IAttachmentSerializer<Tag, ?>) type.serializer).read(getExposedHolder(), tag.get(key), provider));
             } catch (Exception exception) {
                 LOGGER.error("Failed to deserialize data attachment {}. Skipping.", key, exception);
             }
@@ -7,6 +7,7 @@ package net.neoforged.neoforge.attachment;
 
 import java.util.function.Predicate;
 import net.minecraft.core.HolderLookup;
+import net.minecraft.core.Registry;
 import net.minecraft.world.entity.Entity;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
@@ -23,22 +24,28 @@ public final class AttachmentInternals {
      * Copy some attachments to another holder.
      */
     private static <H extends AttachmentHolder> void copyAttachments(HolderLookup.Provider provider, H from, H to, Predicate<AttachmentType<?>> filter) {
-        if (from.attachments == null) {
-            return;
-        }
-        for (var entry : from.attachments.entrySet()) {
-            AttachmentType<?> type = entry.getKey();
+        from.forEachAttachment((type, value) -> {
             if (type.serializer == null) {
-                continue;
+                return;
             }
             @SuppressWarnings("unchecked")
             var copyHandler = (IAttachmentCopyHandler<Object>) type.copyHandler;
             if (filter.test(type)) {
-                Object copy = copyHandler.copy(entry.getValue(), to.getExposedHolder(), provider);
+                Object copy = copyHandler.copy(value, to.getExposedHolder(), provider);
                 if (copy != null) {
-                    to.getAttachmentMap().put(type, copy);
+                    to.putAttachment(type.index, copy);
                 }
             }
+        });
+    }
+
+    /**
+     * Assigns the dense index and the serialized key of every registered attachment type, once the registry is frozen.
+     */
+    public static void assignIndices(Registry<AttachmentType<?>> registry) {
+        for (var type : registry) {
+            type.index = registry.getId(type);
+            type.serializedKey = registry.getKey(type).toString();
         }
     }
 
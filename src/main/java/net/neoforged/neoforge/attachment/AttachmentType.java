@@ -61,11 +61,27 @@ public final class AttachmentType<T> {
     final IAttachmentSerializer<?, T> serializer;
     final boolean copyOnDeath;
     final IAttachmentCopyHandler<T> copyHandler;
+    /**
+     * Dense index of this type, assigned when {@link NeoForgeRegistries#ATTACHMENT_TYPES} is frozen.
+     * Used by {@link AttachmentHolder} to store attachments without hashing. {@code -1} until assigned.
+     */
+    int index = -1;
+    /**
+     * Registry key of this type as used in serialized attachment tags, cached to avoid converting it on every save.
+     */
+    @Nullable
+    String serializedKey;
+    /**
+     * Dirty check of {@linkplain Builder#trackDirty(Predicate) dirty-tracked} types, or {@code null} if the type is always re-encoded.
+     */
+    @Nullable
+    final Predicate<? super T> dirtyCheck;
 
     private AttachmentType(Builder<T> builder) {
         this.defaultValueSupplier = builder.defaultValueSupplier;
         this.serializer = builder.serializer;
         this.copyOnDeath = builder.copyOnDeath;
+        this.dirtyCheck = builder.dirtyCheck;
         this.copyHandler = builder.copyHandler != null ? builder.copyHandler : defaultCopyHandler(serializer);
     }
 
@@ -152,6 +168,8 @@ public final class AttachmentType<T> {
         private boolean copyOnDeath;
         @Nullable
         private IAttachmentCopyHandler<T> copyHandler;
+        @Nullable
+        private Predicate<? super T> dirtyCheck;
 
         private Builder(Function<IAttachmentHolder, T> defaultValueSupplier) {
             this.defaultValueSupplier = defaultValueSupplier;
@@ -239,6 +257,35 @@ public final class AttachmentType<T> {
             return this;
         }
 
+        /**
+         * Enables dirty tracking for this attachment, for attachments that are immutable or only change through
+         * {@link IAttachmentHolder#setData(AttachmentType, Object)}.
+         *
+         * @see #trackDirty(Predicate)
+         */
+        public Builder<T> trackDirty() {
+            return trackDirty(Predicates.alwaysFalse());
+        }
+
+        /**
+         * Enables dirty tracking for this attachment.
+         *
+         * <p>The tag written by the serializer is kept by the holder, and copied instead of serialized again when the holder is saved again
+         * unless the attachment was replaced or removed in the meantime, or {@code dirtyCheck} returns {@code true}.
+         * The dirty check is called once per save of the holder, and should reset the dirty state of the attachment.
+         *
+         * <p>Dirty tracking can only be enabled for serializable attachments.
+         *
+         * @param dirtyCheck A check that returns whether the attachment changed since the last call, and marks it as clean.
+         */
+        public Builder<T> trackDirty(Predicate<? super T> dirtyCheck) {
+            Objects.requireNonNull(dirtyCheck);
+            if (this.serializer == null)
+                throw new IllegalStateException("trackDirty requires a serializer");
+            this.dirtyCheck = dirtyCheck;
+            return this;
+        }
+
         public AttachmentType<T> build() {
             return new AttachmentType<>(this);
         }
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Map;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
@@ -136,29 +137,93 @@ public final class BlockCapability<T, C> extends BaseCapability<T, C> {
 
     final Map<Block, List<IBlockCapabilityProvider<T, C>>> providers = new IdentityHashMap<>();
 
+    /**
+     * The providers of {@link #providers}, indexed by block registry id.
+     * Blocks with multiple providers map to a single provider that queries all of them in registration order.
+     * {@code null} until registration has finished.
+     * Volatile since the table is replaced on id remapping while other threads may be querying it.
+     */
+    @Nullable
+    private volatile IBlockCapabilityProvider<T, C>[] providersById;
+
+    /**
+     * Rebuilds the provider tables of all block capabilities.
+     * Must be called once registration has finished, and again whenever block registry ids change.
+     */
+    static void freezeAll() {
+        for (var capability : getAll()) {
+            capability.freeze();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void freeze() {
+        int maxId = -1;
+        for (Block block : providers.keySet()) {
+            maxId = Math.max(maxId, BuiltInRegistries.BLOCK.getId(block));
+        }
+
+        IBlockCapabilityProvider<T, C>[] byId = new IBlockCapabilityProvider[maxId + 1];
+        providers.forEach((block, blockProviders) -> {
+            int id = BuiltInRegistries.BLOCK.getId(block);
+            if (id >= 0) {
+                byId[id] = combine(blockProviders);
+            }
+        });
+        providersById = byId;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, C> IBlockCapabilityProvider<T, C> combine(List<IBlockCapabilityProvider<T, C>> providers) {
+        return providers.size() == 1 ? providers.get(0) : new CompositeProvider<>(providers.toArray(IBlockCapabilityProvider[]::new));
+    }
+
+    @Nullable
+    private IBlockCapabilityProvider<T, C> getProvider(Block block) {
+        var byId = providersById;
+        if (byId == null) {
+            // Registration is not done yet
+            var blockProviders = providers.get(block);
+            return blockProviders == null ? null : combine(blockProviders);
+        }
+
+        int id = BuiltInRegistries.BLOCK.getId(block);
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
     @ApiStatus.Internal
     @Nullable
     public T getCapability(Level level, BlockPos pos, @Nullable BlockState state, @Nullable BlockEntity blockEntity, C context) {
+        // Get block state if it was not provided
+        if (state == null) {
+            state = blockEntity != null ? blockEntity.getBlockState() : level.getBlockState(pos);
+        }
+
+        // Most queries target blocks without providers, bail out before doing any further work
+        var provider = getProvider(state.getBlock());
+        if (provider == null)
+            return null;
+
         // Convert pos to immutable, it's easy to forget otherwise
         pos = pos.immutable();
 
-        // Get block state and block entity if they were not provided
-        if (blockEntity == null) {
-            if (state == null)
-                state = level.getBlockState(pos);
+        // Get block entity if it was not provided
+        if (blockEntity == null && state.hasBlockEntity())
+            blockEntity = level.getBlockEntity(pos);
 
-            if (state.hasBlockEntity())
-                blockEntity = level.getBlockEntity(pos);
-        } else {
-            if (state == null)
-                state = blockEntity.getBlockState();
-        }
+        return provider.getCapability(level, pos, state, blockEntity, context);
+    }
 
-        for (var provider : providers.getOrDefault(state.getBlock(), List.of())) {
-            var ret = provider.getCapability(level, pos, state, blockEntity, context);
-            if (ret != null)
-                return ret;
+    private record CompositeProvider<T, C>(IBlockCapabilityProvider<T, C>[] providers) implements IBlockCapabilityProvider<T, C> {
+        @Override
+        @Nullable
+        public T getCapability(Level level, BlockPos pos, BlockState state, @Nullable BlockEntity blockEntity, C context) {
+            for (var provider : providers) {
+                var ret = provider.getCapability(level, pos, state, blockEntity, context);
+                if (ret != null)
+                    return ret;
+            }
+            return null;
         }
-        return null;
     }
 }
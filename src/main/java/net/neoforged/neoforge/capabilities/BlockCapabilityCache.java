@@ -45,6 +45,8 @@ public final class BlockCapabilityCache<T, C> {
      * The listener itself might be in a chunk that is being unloaded, for example.</li>
      * <li>The listener does not receive notifications before {@link #getCapability()} is called.
      * After each invalidation, {@link #getCapability()} must be called again to enable further notifications.</li>
+     * <li>Invalidations are coalesced and the listener is notified at the end of the tick.
+     * {@link #getCapability()} stops returning the previous capability as soon as the invalidation happens, however.</li>
      * </ul>
      *
      * @param capability           the capability
@@ -63,7 +65,7 @@ public final class BlockCapabilityCache<T, C> {
         pos = pos.immutable();
 
         var cache = new BlockCapabilityCache<>(capability, level, pos, context, isValid, invalidationListener);
-        level.registerCapabilityListener(pos, cache.listener);
+        cache.slot = level.getCapabilityListenerHolder().addListener(pos, cache.listener);
         return cache;
     }
 
@@ -80,6 +82,12 @@ public final class BlockCapabilityCache<T, C> {
     private boolean cacheValid = false;
     @Nullable
     private T cachedCap = null;
+    /**
+     * The listener slot of {@link #pos}, and its generation when {@link #cachedCap} was computed.
+     * Invalidations bump the generation immediately, while {@link #listener} is only notified at the end of the tick.
+     */
+    private CapabilityListenerHolder.Slot slot;
+    private int cachedGeneration;
 
     private boolean canQuery = true;
     private final ICapabilityInvalidationListener listener;
@@ -136,7 +144,9 @@ public final class BlockCapabilityCache<T, C> {
         if (!canQuery)
             throw new IllegalStateException("Do not call getCapability on an invalid cache or from the invalidation listener!");
 
-        if (!cacheValid) {
+        boolean hit = cacheValid && cachedGeneration == slot.generation();
+        level.getCapabilityListenerHolder().recordCacheQuery(hit);
+        if (!hit) {
             if (!level.isLoaded(pos)) {
                 // If the position is not loaded, return no capability for now.
                 // The cache will be invalidated when the chunk is loaded.
@@ -144,6 +154,7 @@ public final class BlockCapabilityCache<T, C> {
             } else {
                 cachedCap = level.getCapability(capability, pos, context);
             }
+            cachedGeneration = slot.generation();
             cacheValid = true;
         }
 
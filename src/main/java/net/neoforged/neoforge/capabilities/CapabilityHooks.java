@@ -33,6 +33,7 @@ import net.neoforged.neoforge.items.wrapper.ForwardingItemHandler;
 import net.neoforged.neoforge.items.wrapper.InvWrapper;
 import net.neoforged.neoforge.items.wrapper.PlayerInvWrapper;
 import net.neoforged.neoforge.items.wrapper.SidedInvWrapper;
+import net.neoforged.neoforge.registries.IdMappingEvent;
 import org.jetbrains.annotations.ApiStatus;
 
 @ApiStatus.Internal
@@ -48,9 +49,17 @@ public class CapabilityHooks {
         var event = new RegisterCapabilitiesEvent();
         ModLoader.postEventWrapContainerInModOrder(event);
 
+        BlockCapability.freezeAll();
         initFinished = true;
     }
 
+    public static void rebuildBlockProvidersOnIdMapping(IdMappingEvent event) {
+        // The block provider tables are indexed by registry id, which changes when syncing registries
+        if (initFinished) {
+            BlockCapability.freezeAll();
+        }
+    }
+
     public static void registerVanillaProviders(RegisterCapabilitiesEvent event) {
         // Blocks
         var composterBlock = (WorldlyContainerHolder) Blocks.COMPOSTER;
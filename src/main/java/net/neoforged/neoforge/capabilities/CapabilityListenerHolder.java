@@ -7,57 +7,122 @@ package net.neoforged.neoforge.capabilities;
 
 import it.unimi.dsi.fastutil.longs.Long2ReferenceMap;
 import it.unimi.dsi.fastutil.longs.Long2ReferenceOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
-import java.lang.ref.ReferenceQueue;
+import it.unimi.dsi.fastutil.shorts.Short2ReferenceMap;
+import it.unimi.dsi.fastutil.shorts.Short2ReferenceOpenHashMap;
 import java.lang.ref.WeakReference;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.world.level.ChunkPos;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Holder for capability listeners associated to a level.
+ *
+ * <p>Listeners are sharded by chunk section, and stored in flat arrays inside each section.
+ * Invalidations are coalesced and delivered to the listeners once per tick, by {@link #clean()}.
+ * Each position with listeners additionally has a {@linkplain Slot#generation() generation counter} that is bumped immediately
+ * when that position is invalidated, which allows {@link BlockCapabilityCache} to stop returning stale capabilities before the listeners
+ * are notified, without affecting the caches of other positions in the same section.
  */
 // For now, we don't invalidate the cache when the level is unloaded but the chunk unload events do not fire.
 // This can be re-evaluated in the future.
 @ApiStatus.Internal
 public class CapabilityListenerHolder {
     /**
-     * Map of chunk pos -> block pos -> listeners map.
-     *
-     * <p>We have a two-level map to efficiently invalidate entire chunks at once.
+     * Interval in ticks at which all sections are swept for garbage-collected listeners,
+     * including sections that did not receive any invalidation.
+     */
+    private static final int FULL_SWEEP_INTERVAL = 1200;
+
+    /**
+     * Map of chunk pos -> sections of that chunk that have listeners.
      */
-    private final Long2ReferenceMap<Long2ReferenceMap<Set<ListenerReference>>> byChunkThenBlock = new Long2ReferenceOpenHashMap<>();
+    private final Long2ReferenceMap<ChunkListeners> byChunk = new Long2ReferenceOpenHashMap<>();
     /**
-     * Reference queue for the listener references.
-     * This allows us to listen to reference garbage collection, and remove empty entries from {@link #byChunkThenBlock}.
+     * Sections with pending invalidations, to be delivered in the next {@link #clean()}.
      */
-    private final ReferenceQueue<ICapabilityInvalidationListener> queue = new ReferenceQueue<>();
+    private List<Section> dirtySections = new ArrayList<>();
+    private List<Section> deliveringSections = new ArrayList<>();
+    /**
+     * Listeners added while invalidations are being delivered, which are only added to their section after the delivery.
+     */
+    private final List<DeferredListener> deferredListeners = new ArrayList<>();
+    private final long[] deliveryMask = new long[Section.MASK_LENGTH];
+    private boolean delivering = false;
+    private int ticksUntilFullSweep = FULL_SWEEP_INTERVAL;
+
+    private int listenerCount;
+    private int invalidationRequests;
+    private int lastTickInvalidationRequests;
+    private int lastTickNotifiedListeners;
+    private long staleReferenceSweeps;
+    private long cacheHits;
+    private long cacheMisses;
 
     /**
      * Adds a listener.
+     *
+     * @return the slot of the position the listener was added to
      */
-    public void addListener(BlockPos pos, ICapabilityInvalidationListener listener) {
-        pos = pos.immutable();
-        var chunkHolder = byChunkThenBlock.computeIfAbsent(ChunkPos.asLong(pos), l -> new Long2ReferenceOpenHashMap<>());
-        var listenersSet = chunkHolder.computeIfAbsent(pos.asLong(), l -> new ObjectOpenHashSet<>());
+    public Slot addListener(BlockPos pos, ICapabilityInvalidationListener listener) {
+        long chunkKey = ChunkPos.asLong(pos);
+        var chunk = byChunk.get(chunkKey);
+        if (chunk == null) {
+            chunk = new ChunkListeners();
+            byChunk.put(chunkKey, chunk);
+        }
+
+        var section = chunk.getOrCreate(chunkKey, SectionPos.blockToSectionCoord(pos.getY()));
+        var slot = section.getOrCreateSlot(Section.localIndex(pos));
+        if (delivering) {
+            deferredListeners.add(new DeferredListener(section, slot, listener));
+        } else {
+            add(section, slot, listener);
+        }
+        return slot;
+    }
+
+    private void add(Section section, Slot slot, ICapabilityInvalidationListener listener) {
+        if (slot.contains(listener))
+            return;
+
+        if (section.size == section.listeners.length) {
+            // Try to make room by dropping garbage-collected listeners before growing the arrays.
+            sweep(section);
+            if (section.size == section.listeners.length)
+                section.grow();
+        }
 
-        var reference = new ListenerReference(queue, pos, listener);
-        if (!listenersSet.add(reference)) {
-            // Clear the reference immediately if it was a duplicate.
-            reference.clear();
+        if (slot.listenerCount == 0) {
+            // The slot may have been pruned after it was handed out for a deferred listener
+            section.slotsByPosition.put(slot.position, slot);
         }
+        var reference = new WeakReference<>(listener);
+        slot.add(reference);
+        section.slots[section.size] = slot;
+        section.listeners[section.size] = reference;
+        section.size++;
+        listenerCount++;
     }
 
     /**
      * Invalidates listeners at a specific block position.
      */
     public void invalidatePos(BlockPos pos) {
-        var chunkHolder = byChunkThenBlock.get(ChunkPos.asLong(pos));
-        if (chunkHolder != null) {
-            var caches = chunkHolder.get(pos.asLong());
-            if (caches != null)
-                invalidateList(caches);
+        var chunk = byChunk.get(ChunkPos.asLong(pos));
+        if (chunk != null) {
+            var section = chunk.get(SectionPos.blockToSectionCoord(pos.getY()));
+            var slot = section == null ? null : section.slotsByPosition.get(Section.localIndex(pos));
+            if (slot != null) {
+                invalidationRequests++;
+                slot.generation++;
+                section.markPending(slot.position);
+                markDirty(section);
+            }
         }
     }
 
@@ -65,72 +130,347 @@ public class CapabilityListenerHolder {
      * Invalidates listeners at a specific chunk position.
      */
     public void invalidateChunk(ChunkPos chunkPos) {
-        var chunkHolder = byChunkThenBlock.get(chunkPos.toLong());
-        if (chunkHolder != null) {
-            for (var caches : chunkHolder.values())
-                invalidateList(caches);
+        var chunk = byChunk.get(chunkPos.toLong());
+        if (chunk != null) {
+            invalidationRequests++;
+            for (int i = 0; i < chunk.size; i++) {
+                var section = chunk.sections[i];
+                for (var slot : section.slotsByPosition.values())
+                    slot.generation++;
+                section.pendingAll = true;
+                markDirty(section);
+            }
         }
     }
 
-    private void invalidateList(Set<ListenerReference> caches) {
-        caches.removeIf(ref -> {
-            var listener = ref.get();
-            return listener == null || !listener.onInvalidate();
-        });
+    private void markDirty(Section section) {
+        if (!section.dirty) {
+            section.dirty = true;
+            dirtySections.add(section);
+        }
     }
 
     /**
-     * Poll the reference queue, and remove garbage-collected listener references entries from {@link #byChunkThenBlock}.
+     * Delivers the invalidations that were requested since the last call to the affected listeners,
+     * and removes garbage-collected listener references.
+     *
+     * <p>Called once per tick.
      */
     public void clean() {
-        while (true) {
-            ListenerReference ref = (ListenerReference) queue.poll();
-            if (ref == null)
-                return;
-
-            var chunkHolder = byChunkThenBlock.get(ChunkPos.asLong(ref.pos));
-            if (chunkHolder == null)
-                continue;
-
-            var set = chunkHolder.get(ref.pos.asLong());
-            // We might remove a different garbage-collected reference,
-            // or we might remove nothing if the reference was already removed.
-            // Because the hash codes will match, that is fine.
-            boolean removed = set.remove(ref);
-
-            if (removed && set.isEmpty()) {
-                chunkHolder.remove(ref.pos.asLong());
-                if (chunkHolder.isEmpty()) {
-                    byChunkThenBlock.remove(ChunkPos.asLong(ref.pos));
+        var sections = dirtySections;
+        // Invalidations requested by listeners during the delivery are delivered on the next call.
+        dirtySections = deliveringSections;
+        deliveringSections = sections;
+
+        lastTickInvalidationRequests = invalidationRequests;
+        invalidationRequests = 0;
+        lastTickNotifiedListeners = 0;
+
+        delivering = true;
+        try {
+            for (var section : sections)
+                deliver(section);
+        } finally {
+            delivering = false;
+        }
+
+        for (var deferred : deferredListeners)
+            add(deferred.section, deferred.slot, deferred.listener);
+        deferredListeners.clear();
+
+        for (var section : sections) {
+            section.pruneSlots();
+            removeIfEmpty(section);
+        }
+        sections.clear();
+
+        if (--ticksUntilFullSweep <= 0) {
+            ticksUntilFullSweep = FULL_SWEEP_INTERVAL;
+            sweepAll();
+        }
+    }
+
+    private void deliver(Section section) {
+        // Copy and reset the pending state first, so that new invalidations requested by the listeners are not lost.
+        boolean all = section.pendingAll;
+        if (!all)
+            System.arraycopy(section.pendingMask, 0, deliveryMask, 0, Section.MASK_LENGTH);
+        Arrays.fill(section.pendingMask, 0L);
+        section.pendingAll = false;
+        section.dirty = false;
+
+        int kept = 0;
+        for (int i = 0; i < section.size; i++) {
+            var reference = section.listeners[i];
+            var listener = reference.get();
+            boolean keep;
+            if (listener == null) {
+                staleReferenceSweeps++;
+                keep = false;
+            } else if (all || isSet(deliveryMask, section.slots[i].position)) {
+                lastTickNotifiedListeners++;
+                keep = listener.onInvalidate();
+            } else {
+                keep = true;
+            }
+
+            if (keep) {
+                section.slots[kept] = section.slots[i];
+                section.listeners[kept] = reference;
+                kept++;
+            } else {
+                section.slots[i].remove(reference);
+            }
+        }
+        listenerCount -= section.size - kept;
+        section.truncate(kept);
+    }
+
+    private void sweep(Section section) {
+        int kept = 0;
+        for (int i = 0; i < section.size; i++) {
+            var reference = section.listeners[i];
+            if (reference.get() == null) {
+                staleReferenceSweeps++;
+                section.slots[i].remove(reference);
+            } else {
+                section.slots[kept] = section.slots[i];
+                section.listeners[kept] = reference;
+                kept++;
+            }
+        }
+        listenerCount -= section.size - kept;
+        section.truncate(kept);
+        // Slots handed out for deferred listeners must survive until those listeners are added
+        if (deferredListeners.isEmpty())
+            section.pruneSlots();
+    }
+
+    private void sweepAll() {
+        var chunks = byChunk.values().iterator();
+        while (chunks.hasNext()) {
+            var chunk = chunks.next();
+            for (int i = chunk.size - 1; i >= 0; i--) {
+                var section = chunk.sections[i];
+                sweep(section);
+                // Sections with pending invalidations are removed once they are delivered.
+                if (section.size == 0 && !section.dirty)
+                    chunk.remove(section);
+            }
+            if (chunk.size == 0)
+                chunks.remove();
+        }
+    }
+
+    private void removeIfEmpty(Section section) {
+        if (section.size != 0 || section.dirty)
+            return;
+
+        var chunk = byChunk.get(section.chunkKey);
+        if (chunk != null) {
+            chunk.remove(section);
+            if (chunk.size == 0)
+                byChunk.remove(section.chunkKey);
+        }
+    }
+
+    private static boolean isSet(long[] mask, short position) {
+        return (mask[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * {@return the number of listener references currently held, including references that were not swept yet}
+     */
+    public int getListenerCount() {
+        return listenerCount;
+    }
+
+    /**
+     * {@return the number of invalidation requests that were coalesced into the last delivery}
+     */
+    public int getLastTickInvalidationRequests() {
+        return lastTickInvalidationRequests;
+    }
+
+    /**
+     * {@return the number of listeners that were notified during the last delivery}
+     */
+    public int getLastTickNotifiedListeners() {
+        return lastTickNotifiedListeners;
+    }
+
+    /**
+     * {@return the total number of garbage-collected listener references that were removed}
+     */
+    public long getStaleReferenceSweeps() {
+        return staleReferenceSweeps;
+    }
+
+    /**
+     * {@return the total number of {@link BlockCapabilityCache} queries that returned the cached capability}
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * {@return the total number of {@link BlockCapabilityCache} queries that had to query the level again}
+     */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    void recordCacheQuery(boolean hit) {
+        if (hit) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+    }
+
+    /**
+     * The listeners of a single position, identified by its local index in the section.
+     *
+     * <p>The slot also references the listeners of its position, which are usually few,
+     * so that adding a listener only checks for duplicates among them instead of the whole section.
+     */
+    public static final class Slot {
+        private final short position;
+        private int generation;
+        @SuppressWarnings("unchecked")
+        private WeakReference<ICapabilityInvalidationListener>[] references = new WeakReference[1];
+        private int listenerCount;
+
+        private Slot(short position) {
+            this.position = position;
+        }
+
+        private boolean contains(ICapabilityInvalidationListener listener) {
+            for (int i = 0; i < listenerCount; i++) {
+                if (references[i].get() == listener)
+                    return true;
+            }
+            return false;
+        }
+
+        private void add(WeakReference<ICapabilityInvalidationListener> reference) {
+            if (listenerCount == references.length)
+                references = Arrays.copyOf(references, listenerCount * 2);
+            references[listenerCount++] = reference;
+        }
+
+        private void remove(WeakReference<ICapabilityInvalidationListener> reference) {
+            for (int i = 0; i < listenerCount; i++) {
+                if (references[i] == reference) {
+                    references[i] = references[--listenerCount];
+                    references[listenerCount] = null;
+                    return;
                 }
             }
         }
+
+        /**
+         * {@return a counter that changes every time this position is invalidated}
+         */
+        int generation() {
+            return generation;
+        }
     }
 
-    private static class ListenerReference extends WeakReference<ICapabilityInvalidationListener> {
-        private final BlockPos pos;
-        private final int listenerHashCode;
+    /**
+     * The listeners of a single chunk section.
+     *
+     * <p>Listeners are stored in a flat array, next to the {@linkplain Slot slot} of their position at the same index.
+     */
+    public static final class Section {
+        private static final int MASK_LENGTH = 4096 / Long.SIZE;
+
+        private final long chunkKey;
+        private final int sectionY;
+        private final Short2ReferenceMap<Slot> slotsByPosition = new Short2ReferenceOpenHashMap<>();
+        private Slot[] slots = new Slot[4];
+        @SuppressWarnings("unchecked")
+        private WeakReference<ICapabilityInvalidationListener>[] listeners = new WeakReference[4];
+        private int size;
+        private final long[] pendingMask = new long[MASK_LENGTH];
+        private boolean pendingAll;
+        private boolean dirty;
 
-        private ListenerReference(ReferenceQueue<ICapabilityInvalidationListener> queue, BlockPos pos, ICapabilityInvalidationListener listener) {
-            super(listener, queue);
-            this.pos = pos;
-            this.listenerHashCode = System.identityHashCode(listener);
+        private Section(long chunkKey, int sectionY) {
+            this.chunkKey = chunkKey;
+            this.sectionY = sectionY;
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof ListenerReference otherRef) {
-                // Equivalent if the hash codes and the listeners match.
-                // Use identity comparisons.
-                return otherRef.listenerHashCode == listenerHashCode && otherRef.get() == get();
-            } else {
-                return false;
+        private static short localIndex(BlockPos pos) {
+            return (short) ((pos.getY() & 15) << 8 | (pos.getZ() & 15) << 4 | (pos.getX() & 15));
+        }
+
+        private Slot getOrCreateSlot(short position) {
+            var slot = slotsByPosition.get(position);
+            if (slot == null) {
+                slot = new Slot(position);
+                slotsByPosition.put(position, slot);
             }
+            return slot;
+        }
+
+        /**
+         * Removes the slots of positions that no longer have listeners.
+         */
+        private void pruneSlots() {
+            slotsByPosition.values().removeIf(slot -> slot.listenerCount == 0);
         }
 
-        @Override
-        public int hashCode() {
-            return listenerHashCode;
+        private void markPending(short position) {
+            pendingMask[position >>> 6] |= 1L << position;
+        }
+
+        private void grow() {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+            listeners = Arrays.copyOf(listeners, listeners.length * 2);
+        }
+
+        private void truncate(int newSize) {
+            Arrays.fill(slots, newSize, size, null);
+            Arrays.fill(listeners, newSize, size, null);
+            size = newSize;
+        }
+    }
+
+    private static final class ChunkListeners {
+        private Section[] sections = new Section[2];
+        private int size;
+
+        @Nullable
+        private Section get(int sectionY) {
+            for (int i = 0; i < size; i++) {
+                if (sections[i].sectionY == sectionY)
+                    return sections[i];
+            }
+            return null;
+        }
+
+        private Section getOrCreate(long chunkKey, int sectionY) {
+            var section = get(sectionY);
+            if (section == null) {
+                if (size == sections.length)
+                    sections = Arrays.copyOf(sections, size * 2);
+                section = new Section(chunkKey, sectionY);
+                sections[size++] = section;
+            }
+            return section;
+        }
+
+        private void remove(Section section) {
+            for (int i = 0; i < size; i++) {
+                if (sections[i] == section) {
+                    sections[i] = sections[--size];
+                    sections[size] = null;
+                    return;
+                }
+            }
         }
     }
+
+    private record DeferredListener(Section section, Slot slot, ICapabilityInvalidationListener listener) {}
 }
@@ -14,6 +14,9 @@ import net.minecraft.server.level.ServerLevel;
  *
  * <p>The listener will be held by a weak reference, so it is important to keep a strong reference to it
  * as long as you need it.
+ *
+ * <p>Invalidations are coalesced and delivered once per tick, at the end of the level tick.
+ * A listener is notified at most once per tick, no matter how many times its position was invalidated.
  */
 @FunctionalInterface
 public interface ICapabilityInvalidationListener {
@@ -40,13 +40,16 @@ public final class QuadTransformers {
             return empty();
         return quad -> {
             var vertices = quad.getVertices();
+            // Reused for the four vertices of the quad
+            Vector4f pos = new Vector4f();
+            Vector3f normal = new Vector3f();
             for (int i = 0; i < 4; i++) {
                 int offset = i * IQuadTransformer.STRIDE + IQuadTransformer.POSITION;
                 float x = Float.intBitsToFloat(vertices[offset]);
                 float y = Float.intBitsToFloat(vertices[offset + 1]);
                 float z = Float.intBitsToFloat(vertices[offset + 2]);
 
-                Vector4f pos = new Vector4f(x, y, z, 1);
+                pos.set(x, y, z, 1);
                 transform.transformPosition(pos);
                 pos.div(pos.w);
 
@@ -64,12 +67,12 @@ public final class QuadTransformers {
                     float y = ((byte) ((normalIn >> 8) & 0xFF)) / 127.0f;
                     float z = ((byte) ((normalIn >> 16) & 0xFF)) / 127.0f;
 
-                    Vector3f pos = new Vector3f(x, y, z);
-                    transform.transformNormal(pos);
+                    normal.set(x, y, z);
+                    transform.transformNormal(normal);
 
-                    vertices[offset] = (((byte) (pos.x() * 127.0f)) & 0xFF) |
-                            ((((byte) (pos.y() * 127.0f)) & 0xFF) << 8) |
-                            ((((byte) (pos.z() * 127.0f)) & 0xFF) << 16) |
+                    vertices[offset] = (((byte) (normal.x() * 127.0f)) & 0xFF) |
+                            ((((byte) (normal.y() * 127.0f)) & 0xFF) << 8) |
+                            ((((byte) (normal.z() * 127.0f)) & 0xFF) << 16) |
                             (normalIn & 0xFF000000); // Restore padding, just in case
                 }
             }
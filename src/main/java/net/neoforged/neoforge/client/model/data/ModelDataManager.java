@@ -10,8 +10,9 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectFunction;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import java.util.HashSet;
-import java.util.Set;
+import it.unimi.dsi.fastutil.shorts.ShortOpenHashSet;
+import it.unimi.dsi.fastutil.shorts.ShortSet;
+import java.util.Arrays;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.SectionPos;
 import net.minecraft.world.level.ChunkPos;
@@ -23,6 +24,7 @@ import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.fml.common.EventBusSubscriber.Bus;
 import net.neoforged.neoforge.event.level.ChunkEvent;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
 /**
@@ -30,13 +32,20 @@ import org.jetbrains.annotations.UnmodifiableView;
  *
  * Users should not instantiate this unless they know what they are doing. The manager is also not thread-safe,
  * it should only be interacted with on the main client thread.
+ *
+ * <p>The model data of each section is stored in an immutable {@link SectionData}, which is replaced as a whole when
+ * the model data of a block entity in the section is refreshed. Snapshots for chunk meshing therefore share the section
+ * data with the manager instead of copying it.
  */
 @EventBusSubscriber(modid = "neoforge", bus = Bus.GAME, value = Dist.CLIENT)
 public class ModelDataManager {
     private final Thread owningThread = Thread.currentThread();
     private final Level level;
-    private final Long2ObjectMap<Set<BlockPos>> needModelDataRefresh = new Long2ObjectOpenHashMap<>();
-    private final Long2ObjectMap<Long2ObjectMap<ModelData>> modelDataCache = new Long2ObjectOpenHashMap<>();
+    /**
+     * The {@linkplain #localIndex(int, int, int) local indices} of the block entities to refresh, per section.
+     */
+    private final Long2ObjectMap<ShortSet> needModelDataRefresh = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<SectionData> modelDataCache = new Long2ObjectOpenHashMap<>();
     public static final Long2ObjectFunction<ModelData> EMPTY_SNAPSHOT = pos -> ModelData.EMPTY;
 
     public ModelDataManager(Level level) {
@@ -54,8 +63,13 @@ public class ModelDataManager {
 
         Preconditions.checkNotNull(blockEntity, "BlockEntity must not be null");
         Preconditions.checkState(blockEntity.getLevel() == level, "BlockEntity does not belong to the level owning this manager");
-        needModelDataRefresh.computeIfAbsent(SectionPos.asLong(blockEntity.getBlockPos()), $ -> new HashSet<>())
-                .add(blockEntity.getBlockPos());
+        BlockPos pos = blockEntity.getBlockPos();
+        ShortSet needUpdate = needModelDataRefresh.get(SectionPos.asLong(pos));
+        if (needUpdate == null) {
+            needUpdate = new ShortOpenHashSet();
+            needModelDataRefresh.put(SectionPos.asLong(pos), needUpdate);
+        }
+        needUpdate.add(localIndex(pos.getX(), pos.getY(), pos.getZ()));
     }
 
     /**
@@ -72,9 +86,9 @@ public class ModelDataManager {
     public Long2ObjectMap<ModelData> getAt(SectionPos pos) {
         long sectionKey = pos.asLong();
         refreshAt(sectionKey);
-        var map = modelDataCache.get(sectionKey);
-        if (map != null) {
-            return Long2ObjectMaps.unmodifiable(map);
+        var data = modelDataCache.get(sectionKey);
+        if (data != null) {
+            return data.asMap(sectionKey);
         } else {
             return Long2ObjectMaps.emptyMap();
         }
@@ -90,29 +104,41 @@ public class ModelDataManager {
         Preconditions.checkArgument(level.isClientSide, "Cannot request model data for server level");
         long sectionPos = SectionPos.asLong(pos);
         refreshAt(sectionPos);
-        return modelDataCache.getOrDefault(sectionPos, Long2ObjectMaps.emptyMap()).getOrDefault(pos.asLong(), ModelData.EMPTY);
+        var data = modelDataCache.get(sectionPos);
+        return data != null ? data.get(localIndex(pos.getX(), pos.getY(), pos.getZ())) : ModelData.EMPTY;
     }
 
     /**
      * Snapshot the state of this manager for all sections in the volume specified by the given section coordinates.
      * The snapshot will return {@link ModelData#EMPTY} for nonexistent keys.
+     *
+     * <p>The snapshot references the immutable data of the sections, so it can be used from other threads
+     * and is not affected by later refreshes.
      */
     public Long2ObjectFunction<ModelData> snapshotSectionRegion(int sectionMinX, int sectionMinY, int sectionMinZ, int sectionMaxX, int sectionMaxY, int sectionMaxZ) {
         if (isOtherThread()) {
             throw new UnsupportedOperationException("Cannot snapshot active manager outside the owning thread: " + owningThread);
         }
-        Long2ObjectMap<ModelData> cache = new Long2ObjectOpenHashMap<>();
-        cache.defaultReturnValue(ModelData.EMPTY);
+        int sizeX = sectionMaxX - sectionMinX + 1;
+        int sizeY = sectionMaxY - sectionMinY + 1;
+        int sizeZ = sectionMaxZ - sectionMinZ + 1;
+        SectionData[] sections = null;
         for (int x = sectionMinX; x <= sectionMaxX; x++) {
             for (int y = sectionMinY; y <= sectionMaxY; y++) {
                 for (int z = sectionMinZ; z <= sectionMaxZ; z++) {
                     long sectionPos = SectionPos.asLong(x, y, z);
                     refreshAt(sectionPos);
-                    cache.putAll(modelDataCache.getOrDefault(sectionPos, Long2ObjectMaps.emptyMap()));
+                    SectionData data = modelDataCache.get(sectionPos);
+                    if (data != null) {
+                        if (sections == null) {
+                            sections = new SectionData[sizeX * sizeY * sizeZ];
+                        }
+                        sections[((x - sectionMinX) * sizeY + (y - sectionMinY)) * sizeZ + (z - sectionMinZ)] = data;
+                    }
                 }
             }
         }
-        return cache.isEmpty() ? EMPTY_SNAPSHOT : cache;
+        return sections == null ? EMPTY_SNAPSHOT : new RegionSnapshot(sectionMinX, sectionMinY, sectionMinZ, sizeX, sizeY, sizeZ, sections);
     }
 
     private void refreshAt(long section) {
@@ -120,11 +146,19 @@ public class ModelDataManager {
             return;
         }
 
-        Set<BlockPos> needUpdate = needModelDataRefresh.remove(section);
+        ShortSet needUpdate = needModelDataRefresh.remove(section);
 
         if (needUpdate != null) {
-            Long2ObjectMap<ModelData> data = modelDataCache.computeIfAbsent(section, $ -> new Long2ObjectOpenHashMap<>());
-            for (BlockPos pos : needUpdate) {
+            short[] indices = needUpdate.toShortArray();
+            Arrays.sort(indices);
+            ModelData[] values = new ModelData[indices.length];
+            int minX = SectionPos.sectionToBlockCoord(SectionPos.x(section));
+            int minY = SectionPos.sectionToBlockCoord(SectionPos.y(section));
+            int minZ = SectionPos.sectionToBlockCoord(SectionPos.z(section));
+            BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+            for (int i = 0; i < indices.length; i++) {
+                short index = indices[i];
+                pos.set(minX + SectionPos.sectionRelativeX(index), minY + SectionPos.sectionRelativeY(index), minZ + SectionPos.sectionRelativeZ(index));
                 BlockEntity toUpdate = level.getBlockEntity(pos);
                 ModelData newData = ModelData.EMPTY;
                 // Query the BE for new model data if it exists
@@ -136,20 +170,26 @@ public class ModelDataManager {
                         throw new NullPointerException("Null ModelData provided by " + BlockEntityType.getKey(toUpdate.getType()) + " @ " + pos);
                     }
                 }
-                // Make sure we don't bother storing empty data in the map
-                if (newData != ModelData.EMPTY) {
-                    data.put(pos.asLong(), newData);
-                } else {
-                    data.remove(pos.asLong());
-                }
+                values[i] = newData;
             }
-            // Remove the map completely if it's now empty
-            if (data.isEmpty()) {
+            // Empty data is not stored, and the section is removed completely if it ends up empty
+            SectionData data = SectionData.update(modelDataCache.get(section), indices, values);
+            if (data != null) {
+                modelDataCache.put(section, data);
+            } else {
                 modelDataCache.remove(section);
             }
         }
     }
 
+    /**
+     * {@return the index of the given block position within its section}
+     * This is the same packing as {@link SectionPos#sectionRelativePos(BlockPos)}.
+     */
+    private static short localIndex(int x, int y, int z) {
+        return (short) ((x & 15) << 8 | (z & 15) << 4 | (y & 15));
+    }
+
     private boolean isOtherThread() {
         return Thread.currentThread() != owningThread;
     }
@@ -171,4 +211,123 @@ public class ModelDataManager {
             }
         }
     }
+
+    /**
+     * The non-empty model data of one section, as a sparse array sorted by {@linkplain #localIndex(int, int, int) local index}.
+     * Instances are immutable: refreshes create a new instance, so that they can be shared with meshing threads.
+     */
+    private static final class SectionData {
+        private final short[] indices;
+        private final ModelData[] values;
+        @Nullable
+        private Long2ObjectMap<ModelData> map;
+
+        private SectionData(short[] indices, ModelData[] values) {
+            this.indices = indices;
+            this.values = values;
+        }
+
+        private ModelData get(short index) {
+            int i = Arrays.binarySearch(indices, index);
+            return i >= 0 ? values[i] : ModelData.EMPTY;
+        }
+
+        /**
+         * {@return a copy of the given data with the given sorted changes applied, or {@code null} if no data remains}
+         * Changes to {@link ModelData#EMPTY} remove the data at their index.
+         */
+        @Nullable
+        private static SectionData update(@Nullable SectionData data, short[] changedIndices, ModelData[] changedValues) {
+            short[] oldIndices = data != null ? data.indices : new short[0];
+            ModelData[] oldValues = data != null ? data.values : new ModelData[0];
+            short[] indices = new short[oldIndices.length + changedIndices.length];
+            ModelData[] values = new ModelData[indices.length];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < oldIndices.length || j < changedIndices.length) {
+                short index;
+                ModelData value;
+                if (j >= changedIndices.length || (i < oldIndices.length && oldIndices[i] < changedIndices[j])) {
+                    index = oldIndices[i];
+                    value = oldValues[i++];
+                } else {
+                    if (i < oldIndices.length && oldIndices[i] == changedIndices[j]) {
+                        i++;
+                    }
+                    index = changedIndices[j];
+                    value = changedValues[j++];
+                }
+                if (value != ModelData.EMPTY) {
+                    indices[size] = index;
+                    values[size++] = value;
+                }
+            }
+            if (size == 0) {
+                return null;
+            }
+            return new SectionData(Arrays.copyOf(indices, size), Arrays.copyOf(values, size));
+        }
+
+        /**
+         * {@return an unmodifiable map of the data by block position, built on first use}
+         */
+        private Long2ObjectMap<ModelData> asMap(long section) {
+            if (map == null) {
+                int minX = SectionPos.sectionToBlockCoord(SectionPos.x(section));
+                int minY = SectionPos.sectionToBlockCoord(SectionPos.y(section));
+                int minZ = SectionPos.sectionToBlockCoord(SectionPos.z(section));
+                var byPos = new Long2ObjectOpenHashMap<ModelData>(indices.length);
+                for (int i = 0; i < indices.length; i++) {
+                    short index = indices[i];
+                    byPos.put(BlockPos.asLong(minX + SectionPos.sectionRelativeX(index), minY + SectionPos.sectionRelativeY(index), minZ + SectionPos.sectionRelativeZ(index)), values[i]);
+                }
+                map = Long2ObjectMaps.unmodifiable(byPos);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * A snapshot of the model data of a box of sections, indexed by section offset within the box.
+     */
+    private static final class RegionSnapshot implements Long2ObjectFunction<ModelData> {
+        private final int minX;
+        private final int minY;
+        private final int minZ;
+        private final int sizeX;
+        private final int sizeY;
+        private final int sizeZ;
+        private final SectionData[] sections;
+
+        private RegionSnapshot(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ, SectionData[] sections) {
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.sizeZ = sizeZ;
+            this.sections = sections;
+        }
+
+        @Override
+        public ModelData get(long pos) {
+            int blockX = BlockPos.getX(pos);
+            int blockY = BlockPos.getY(pos);
+            int blockZ = BlockPos.getZ(pos);
+            int x = SectionPos.blockToSectionCoord(blockX) - minX;
+            int y = SectionPos.blockToSectionCoord(blockY) - minY;
+            int z = SectionPos.blockToSectionCoord(blockZ) - minZ;
+            if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) {
+                return ModelData.EMPTY;
+            }
+            SectionData data = sections[(x * sizeY + y) * sizeZ + z];
+            return data != null ? data.get(localIndex(blockX, blockY, blockZ)) : ModelData.EMPTY;
+        }
+
+        @Override
+        public ModelData defaultReturnValue() {
+            return ModelData.EMPTY;
+        }
+    }
 }
@@ -26,6 +26,7 @@ import org.joml.Vector3f;
  */
 public abstract class QuadLighter {
     private static final float[] WHITE = new float[] { 1.0f, 1.0f, 1.0f };
+    private static final int TINT_CACHE_SIZE = 4;
 
     private final BlockColors colors;
 
@@ -33,8 +34,11 @@ public abstract class QuadLighter {
     private BlockAndTintGetter level;
     private BlockPos pos;
     private BlockState state;
-    private int cachedTintIndex = -1;
-    private final float[] cachedTintColor = new float[3];
+    // Tint colors of the current block, most blocks use at most a few tint indices
+    private final int[] cachedTintIndices = new int[TINT_CACHE_SIZE];
+    private final float[][] cachedTintColors = new float[TINT_CACHE_SIZE][3];
+    private int cachedTintCount;
+    private int nextTintSlot;
 
     // Arrays used for quad processing, initialized once and then used repeatedly to avoid GC pressure
     private final float[] brightness = new float[4];
@@ -73,7 +77,8 @@ public abstract class QuadLighter {
         this.level = level;
         this.pos = pos;
         this.state = state;
-        this.cachedTintIndex = -1;
+        this.cachedTintCount = 0;
+        this.nextTintSlot = 0;
         computeLightingAt(level, pos, state);
     }
 
@@ -161,14 +166,26 @@ public abstract class QuadLighter {
     }
 
     private float[] getColorFast(int tintIndex) {
-        if (tintIndex != cachedTintIndex) {
-            var packedColor = colors.getColor(state, level, pos, tintIndex);
-            cachedTintIndex = tintIndex;
-            cachedTintColor[0] = ((packedColor >> 16) & 0xFF) / 255F;
-            cachedTintColor[1] = ((packedColor >> 8) & 0xFF) / 255F;
-            cachedTintColor[2] = (packedColor & 0xFF) / 255F;
+        for (int i = 0; i < cachedTintCount; i++) {
+            if (cachedTintIndices[i] == tintIndex) {
+                return cachedTintColors[i];
+            }
+        }
+
+        int slot;
+        if (cachedTintCount < TINT_CACHE_SIZE) {
+            slot = cachedTintCount++;
+        } else {
+            slot = nextTintSlot;
+            nextTintSlot = (nextTintSlot + 1) % TINT_CACHE_SIZE;
         }
-        return cachedTintColor;
+        var packedColor = colors.getColor(state, level, pos, tintIndex);
+        var color = cachedTintColors[slot];
+        cachedTintIndices[slot] = tintIndex;
+        color[0] = ((packedColor >> 16) & 0xFF) / 255F;
+        color[1] = ((packedColor >> 8) & 0xFF) / 255F;
+        color[2] = (packedColor & 0xFF) / 255F;
+        return color;
     }
 
     public static float calculateShade(float normalX, float normalY, float normalZ, boolean constantAmbientLight) {
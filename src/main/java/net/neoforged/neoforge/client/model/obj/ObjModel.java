@@ -312,7 +312,7 @@ public class ObjModel extends SimpleUnbakedGeometry<ObjModel> {
         return allComponentNames = Collections.unmodifiableSet(names);
     }
 
-    private Pair<BakedQuad, Direction> makeQuad(int[][] indices, int tintIndex, Vector4f colorTint, Vector4f ambientColor, TextureAtlasSprite texture, Transformation transform) {
+    private Pair<BakedQuad, Direction> makeQuad(QuadBakingVertexConsumer quadBaker, int[][] indices, int tintIndex, Vector4f colorTint, Vector4f ambientColor, TextureAtlasSprite texture, Transformation transform) {
         boolean needsNormalRecalculation = false;
         for (int[] ints : indices) {
             needsNormalRecalculation |= ints.length < 3;
@@ -331,8 +331,6 @@ public class ObjModel extends SimpleUnbakedGeometry<ObjModel> {
             faceNormal = abs;
         }
 
-        var quadBaker = new QuadBakingVertexConsumer();
-
         quadBaker.setSprite(texture);
         quadBaker.setTintIndex(tintIndex);
 
@@ -547,8 +545,9 @@ public class ObjModel extends SimpleUnbakedGeometry<ObjModel> {
 
             var rootTransform = owner.getRootTransform();
             var transform = rootTransform.isIdentity() ? modelTransform.getRotation() : modelTransform.getRotation().compose(rootTransform);
+            var quadBaker = new QuadBakingVertexConsumer();
             for (int[][] face : faces) {
-                Pair<BakedQuad, Direction> quad = makeQuad(face, tintIndex, colorTint, mat.ambientColor, texture, transform);
+                Pair<BakedQuad, Direction> quad = makeQuad(quadBaker, face, tintIndex, colorTint, mat.ambientColor, texture, transform);
                 if (quad.getRight() == null)
                     modelBuilder.addUnculledFace(quad.getLeft());
                 else
@@ -563,10 +562,11 @@ public class ObjModel extends SimpleUnbakedGeometry<ObjModel> {
             int tintIndex = mat.diffuseTintIndex;
             Vector4f colorTint = mat.diffuseColor;
 
-            final List<BakedQuad> quads = new ArrayList<>();
+            final List<BakedQuad> quads = new ArrayList<>(this.faces.size());
 
+            var quadBaker = new QuadBakingVertexConsumer();
             for (var face : this.faces) {
-                var pair = makeQuad(face, tintIndex, colorTint, mat.ambientColor, UnitTextureAtlasSprite.INSTANCE, Transformation.identity());
+                var pair = makeQuad(quadBaker, face, tintIndex, colorTint, mat.ambientColor, UnitTextureAtlasSprite.INSTANCE, Transformation.identity());
                 quads.add(pair.getLeft());
             }
 
@@ -24,10 +24,11 @@ import net.neoforged.neoforge.client.textures.UnitTextureAtlasSprite;
  * This consumer accepts data in {@link com.mojang.blaze3d.vertex.DefaultVertexFormat#BLOCK} and is not picky about
  * ordering or missing elements, but will not automatically populate missing data (color will be black, for example).
  * <p>
- * Built quads must be retrieved after building four vertices
+ * Built quads must be retrieved after building four vertices with {@link #bakeQuad()}.
+ * The consumer can be reused for the next quad afterward.
  */
 public class QuadBakingVertexConsumer implements VertexConsumer {
-    private final Map<VertexFormatElement, Integer> ELEMENT_OFFSETS = Util.make(new IdentityHashMap<>(), map -> {
+    private static final Map<VertexFormatElement, Integer> ELEMENT_OFFSETS = Util.make(new IdentityHashMap<>(), map -> {
         for (var element : DefaultVertexFormat.BLOCK.getElements())
             map.put(element, DefaultVertexFormat.BLOCK.getOffset(element) / 4); // Int offset
     });
@@ -137,6 +138,8 @@ public class QuadBakingVertexConsumer implements VertexConsumer {
             throw new IllegalStateException("Not enough vertices available. Vertices in buffer: " + vertexIndex);
         }
 
+        // Every quad owns its vertex array: vanilla reads BakedQuad#getVertices from index zero and mutating transformers
+        // write to it, so quads cannot be views into storage shared with other quads
         BakedQuad quad = new BakedQuad(quadData.clone(), tintIndex, direction, sprite, shade, hasAmbientOcclusion);
         vertexIndex = 0;
         building = false;
@@ -71,6 +71,10 @@ public class NeoForgeConfig {
         public final ModConfigSpec.EnumValue<TagConventionLogWarning.LogWarningMode> logUntranslatedItemTagWarnings;
         public final ModConfigSpec.EnumValue<TagConventionLogWarning.LogWarningMode> logLegacyTagWarnings;
 
+        public final ModConfigSpec.IntValue splitPacketMaxBytesInFlight;
+        public final ModConfigSpec.IntValue payloadWorkerThreads;
+        public final ModConfigSpec.IntValue payloadWorkerMaxQueuedPayloads;
+
         Common(ModConfigSpec.Builder builder) {
             builder.comment("General configuration settings")
                     .push("general");
@@ -86,6 +90,26 @@ public class NeoForgeConfig {
                     .defineEnum("logLegacyTagWarnings", TagConventionLogWarning.LogWarningMode.DEV_SHORT);
 
             builder.pop();
+
+            builder.comment("Network configuration settings")
+                    .push("network");
+
+            splitPacketMaxBytesInFlight = builder
+                    .comment("The maximum amount of bytes of a single split packet that a connection may buffer while receiving it. Connections sending larger packets are dropped. Defaults to 64 MiB.")
+                    .translation("neoforge.configgui.splitPacketMaxBytesInFlight")
+                    .defineInRange("splitPacketMaxBytesInFlight", 64 * 1024 * 1024, 1024 * 1024, Integer.MAX_VALUE);
+
+            payloadWorkerThreads = builder
+                    .comment("The number of threads that handle payloads registered to run on the payload workers. 0 uses a quarter of the available processors, with at least one thread.")
+                    .translation("neoforge.configgui.payloadWorkerThreads")
+                    .defineInRange("payloadWorkerThreads", 0, 0, 64);
+
+            payloadWorkerMaxQueuedPayloads = builder
+                    .comment("The maximum amount of payloads of a single connection that may wait for the payload workers. Reading from the connection is paused until the workers catch up. Defaults to 256.")
+                    .translation("neoforge.configgui.payloadWorkerMaxQueuedPayloads")
+                    .defineInRange("payloadWorkerMaxQueuedPayloads", 256, 1, 65536);
+
+            builder.pop();
         }
     }
 
@@ -23,9 +23,11 @@ import net.minecraft.world.item.ItemStack;
 import net.neoforged.bus.api.EventPriority;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.LogicalSide;
+import net.neoforged.neoforge.common.crafting.ItemIdSet;
 import net.neoforged.neoforge.common.loot.LootModifierManager;
 import net.neoforged.neoforge.common.util.FakePlayerFactory;
 import net.neoforged.neoforge.common.util.LogicalSidedProvider;
+import net.neoforged.neoforge.common.world.LevelChunkAuxiliaryLightManager;
 import net.neoforged.neoforge.event.AddReloadListenerEvent;
 import net.neoforged.neoforge.event.OnDatapackSyncEvent;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
@@ -41,10 +43,16 @@ import net.neoforged.neoforge.registries.DataMapLoader;
 import net.neoforged.neoforge.registries.RegistryManager;
 import net.neoforged.neoforge.server.command.ConfigCommand;
 import net.neoforged.neoforge.server.command.NeoForgeCommand;
+import net.neoforged.neoforge.server.timings.TickPhaseProfiler;
 import org.jetbrains.annotations.ApiStatus;
 
 @ApiStatus.Internal
 public class NeoForgeEventHandler {
+    /**
+     * Interval in ticks between two emissions of the entity census flight recorder events.
+     */
+    private static final int ENTITY_CENSUS_EVENT_INTERVAL = 100;
+
     @SubscribeEvent(priority = EventPriority.HIGH)
     public void onEntityJoinWorld(EntityJoinLevelEvent event) {
         Entity entity = event.getEntity();
@@ -65,8 +73,11 @@ public class NeoForgeEventHandler {
 
     @SubscribeEvent(priority = EventPriority.HIGHEST)
     public void onDimensionUnload(LevelEvent.Unload event) {
-        if (event.getLevel() instanceof ServerLevel)
+        if (event.getLevel() instanceof ServerLevel) {
             FakePlayerFactory.unloadLevel((ServerLevel) event.getLevel());
+            LevelChunkAuxiliaryLightManager.forgetPendingChanges((ServerLevel) event.getLevel());
+            TickPhaseProfiler.unloadLevel(((ServerLevel) event.getLevel()).dimension());
+        }
     }
 
     @SubscribeEvent
@@ -77,6 +88,12 @@ public class NeoForgeEventHandler {
     @SubscribeEvent
     public void postServerTick(ServerTickEvent.Post event) {
         WorldWorkerManager.tick(false);
+        TickPhaseProfiler.recordServerPhase(TickPhaseProfiler.Phase.WORLD_WORKERS, WorldWorkerManager.getLastUsedNanos());
+        LevelChunkAuxiliaryLightManager.sendPendingChanges();
+        if (event.getServer().getTickCount() % ENTITY_CENSUS_EVENT_INTERVAL == 0) {
+            for (ServerLevel level : event.getServer().getAllLevels())
+                level.getEntityCensus().emitEvents(level);
+        }
     }
 
     @SubscribeEvent
@@ -101,6 +118,7 @@ public class NeoForgeEventHandler {
 
     @SubscribeEvent
     public void tagsUpdated(TagsUpdatedEvent event) {
+        ItemIdSet.invalidateCaches();
         if (event.getUpdateCause() == TagsUpdatedEvent.UpdateCause.SERVER_DATA_LOAD) {
             DATA_MAPS.apply();
         }
@@ -5,58 +5,293 @@
 
 package net.neoforged.neoforge.common;
 
+import com.mojang.logging.LogUtils;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.server.MinecraftServer;
+import net.neoforged.neoforge.server.ServerLifecycleHooks;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
 
+/**
+ * Runs {@linkplain IWorker workers} on the server thread, in the time that is left at the end of each server tick.
+ *
+ * <p>The time budget of a tick is the part of the tick duration that the tick itself did not use,
+ * with a small floor so that workers still make progress while the server is lagging.
+ * Within the budget, workers are served by weighted fairness: the worker that used the least time relative to its
+ * {@linkplain IWorker#getPriority() priority} runs next.
+ * A worker that overruns the budget is charged for it, so that other workers go first during the next ticks.
+ *
+ * <p>Workers may additionally offload {@linkplain IWorker#getThreadSafeWork() thread-safe work} to a small background executor.
+ */
 public class WorldWorkerManager {
-    private static List<IWorker> workers = new ArrayList<IWorker>();
+    private static final Logger LOGGER = LogUtils.getLogger();
+    /**
+     * Minimum budget per tick, so that workers are not starved when the server is lagging.
+     */
+    private static final long MIN_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * Part of the tick slack that is kept free, to absorb the overhead of scheduling and of the next tick.
+     */
+    private static final long SLACK_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int MAX_OFFLOAD_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 4));
+    private static final int MAX_QUEUED_OFFLOADS = 64;
+    private static final long OFFLOAD_SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    // Workers may be added from any thread, and are moved to the worker list at the start of the next tick.
+    private static final Queue<IWorker> addedWorkers = new ConcurrentLinkedQueue<>();
+    private static final List<WorkerState> workers = new ArrayList<>();
     private static long startTime = -1;
-    private static int index = 0;
+    private static long lastBudgetNanos;
+    private static long lastUsedNanos;
+    @Nullable
+    private static ThreadPoolExecutor offloadExecutor;
 
     public static void tick(boolean start) {
         if (start) {
-            startTime = System.currentTimeMillis();
+            startTime = System.nanoTime();
             return;
         }
 
-        index = 0;
-        IWorker task = getNext();
-        if (task == null)
+        IWorker added;
+        while ((added = addedWorkers.poll()) != null) {
+            workers.add(new WorkerState(added, minVirtualTime()));
+        }
+
+        lastUsedNanos = 0;
+        if (workers.isEmpty())
             return;
 
-        long time = 50 - (System.currentTimeMillis() - startTime);
-        if (time < 10)
-            time = 10; //If ticks are lagging, give us at least 10ms to do something.
-        time += System.currentTimeMillis();
+        long now = System.nanoTime();
+        long budget = Math.max(MIN_BUDGET_NANOS, tickDurationNanos() - (now - startTime) - SLACK_MARGIN_NANOS);
+        long deadline = now + budget;
+        lastBudgetNanos = budget;
+
+        for (var state : workers) {
+            state.skipped = false;
+            state.lastTickNanos = 0;
+            // Workers whose offloaded work finished since the last tick were not checked yet
+            if (!state.finished && !state.offloaded && !state.worker.hasWork())
+                state.finished = true;
+        }
+
+        while (true) {
+            WorkerState state = getNext();
+            if (state == null)
+                break;
+
+            Runnable threadSafeWork = state.worker.getThreadSafeWork();
+            long taskStart = System.nanoTime();
+            if (threadSafeWork != null) {
+                offload(state, threadSafeWork);
+            } else {
+                boolean again = state.worker.doWork();
+                if (!again)
+                    state.skipped = true;
+            }
+            long taskEnd = System.nanoTime();
+            state.charge(taskEnd - taskStart);
+
+            // While thread-safe work is running, the worker may only be queried again once that work is done
+            if (!state.offloaded && !state.worker.hasWork())
+                state.finished = true;
+
+            if (taskEnd - deadline >= 0)
+                break;
+        }
+
+        workers.removeIf(state -> state.finished && !state.offloaded);
+        lastUsedNanos = System.nanoTime() - now;
+    }
+
+    private static long tickDurationNanos() {
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        return server != null ? server.tickRateManager().nanosecondsPerTick() : DEFAULT_TICK_NANOS;
+    }
 
-        while (System.currentTimeMillis() < time && task != null) {
-            boolean again = task.doWork();
+    /**
+     * {@return the eligible worker with the least weighted time, or {@code null} if no worker is eligible}
+     */
+    @Nullable
+    private static WorkerState getNext() {
+        WorkerState next = null;
+        for (var state : workers) {
+            if (state.finished || state.skipped || state.offloaded)
+                continue;
+            if (next == null || state.virtualTime < next.virtualTime)
+                next = state;
+        }
+        return next;
+    }
 
-            if (!task.hasWork()) {
-                remove(task);
-                task = getNext();
-            } else if (!again) {
-                task = getNext();
+    private static long minVirtualTime() {
+        long min = 0;
+        boolean first = true;
+        for (var state : workers) {
+            if (first || state.virtualTime < min) {
+                min = state.virtualTime;
+                first = false;
             }
         }
+        return min;
     }
 
-    public static synchronized void addWorker(IWorker worker) {
-        workers.add(worker);
+    /**
+     * Runs the work on the offload executor.
+     * {@link WorkerState#offloaded} is cleared once the work is done, as the last write of the executor thread,
+     * so that the server thread sees all effects of the work once it sees the flag cleared.
+     */
+    private static void offload(WorkerState state, Runnable work) {
+        state.offloaded = true;
+        Runnable task = () -> {
+            long start = System.nanoTime();
+            try {
+                work.run();
+            } catch (Throwable t) {
+                LOGGER.error("Thread-safe work of world worker {} failed", state.name, t);
+            } finally {
+                state.offloadedNanos += System.nanoTime() - start;
+                state.offloaded = false;
+            }
+        };
+
+        try {
+            getOffloadExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            // The executor is saturated: run the work on the server thread instead, where it is charged to the worker.
+            task.run();
+        }
     }
 
-    private static synchronized IWorker getNext() {
-        return workers.size() > index ? workers.get(index++) : null;
+    private static ThreadPoolExecutor getOffloadExecutor() {
+        if (offloadExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            offloadExecutor = new ThreadPoolExecutor(MAX_OFFLOAD_THREADS, MAX_OFFLOAD_THREADS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_OFFLOADS), runnable -> {
+                Thread thread = new Thread(runnable, "NeoForge World Worker #" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            offloadExecutor.allowCoreThreadTimeOut(true);
+        }
+        return offloadExecutor;
     }
 
-    private static synchronized void remove(IWorker worker) {
-        workers.remove(worker);
-        index--;
+    public static void addWorker(IWorker worker) {
+        addedWorkers.add(worker);
     }
 
     //Internal only, used to clear everything when the server shuts down.
-    public static synchronized void clear() {
+    public static void clear() {
+        addedWorkers.clear();
         workers.clear();
+
+        var executor = offloadExecutor;
+        offloadExecutor = null;
+        if (executor != null) {
+            // Let running work finish, since it may be in the middle of writing data, but drop queued work
+            executor.getQueue().clear();
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(OFFLOAD_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    LOGGER.warn("Thread-safe work of world workers did not finish within {} seconds of the server stopping", OFFLOAD_SHUTDOWN_TIMEOUT_SECONDS);
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * {@return the timing metrics of the current workers}
+     * Must be called on the server thread.
+     */
+    public static List<WorkerMetrics> getMetrics() {
+        List<WorkerMetrics> metrics = new ArrayList<>(workers.size());
+        for (var state : workers) {
+            metrics.add(new WorkerMetrics(state.name, state.worker.getPriority(), state.invocations, state.totalNanos, state.maxNanos, state.lastTickNanos, state.offloadedNanos));
+        }
+        return metrics;
+    }
+
+    /**
+     * {@return the time budget of the workers during the last tick, in nanoseconds}
+     */
+    public static long getLastBudgetNanos() {
+        return lastBudgetNanos;
+    }
+
+    /**
+     * {@return the time used by the workers during the last tick, in nanoseconds}
+     */
+    public static long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    /**
+     * Timing metrics of a worker.
+     *
+     * @param name           the class name of the worker
+     * @param priority       the priority of the worker
+     * @param invocations    the number of times the worker was run on the server thread
+     * @param totalNanos     the total time spent on the server thread
+     * @param maxNanos       the longest single run on the server thread
+     * @param lastTickNanos  the time spent on the server thread during the last tick
+     * @param offloadedNanos the total time spent running thread-safe work off the server thread
+     */
+    public record WorkerMetrics(String name, Priority priority, long invocations, long totalNanos, long maxNanos, long lastTickNanos, long offloadedNanos) {}
+
+    public enum Priority {
+        LOW(1),
+        NORMAL(4),
+        HIGH(16);
+
+        private final int weight;
+
+        Priority(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class WorkerState {
+        private final IWorker worker;
+        private final String name;
+        /**
+         * Time spent by this worker, divided by the weight of its priority.
+         */
+        private long virtualTime;
+        private boolean skipped;
+        private boolean finished;
+        private volatile boolean offloaded;
+
+        private long invocations;
+        private long totalNanos;
+        private long maxNanos;
+        private long lastTickNanos;
+        private volatile long offloadedNanos;
+
+        private WorkerState(IWorker worker, long virtualTime) {
+            this.worker = worker;
+            this.name = worker.getClass().getName();
+            this.virtualTime = virtualTime;
+        }
+
+        private void charge(long nanos) {
+            virtualTime += nanos / worker.getPriority().weight;
+            invocations++;
+            totalNanos += nanos;
+            lastTickNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
     }
 
     public static interface IWorker {
@@ -67,5 +302,25 @@ public class WorldWorkerManager {
          * Returning false will skip calling this worker until next tick.
          */
         boolean doWork();
+
+        /**
+         * {@return the priority of this worker}
+         * Higher priority workers receive a larger share of the time budget.
+         */
+        default Priority getPriority() {
+            return Priority.NORMAL;
+        }
+
+        /**
+         * Returns a part of the work that can safely run off the server thread, or {@code null} if there is none.
+         *
+         * <p>This is called before each run of the worker on the server thread.
+         * If work is returned, it is run on a background executor instead of calling {@link #doWork()},
+         * and the worker is not scheduled again until the work is done.
+         */
+        @Nullable
+        default Runnable getThreadSafeWork() {
+            return null;
+        }
     }
 }
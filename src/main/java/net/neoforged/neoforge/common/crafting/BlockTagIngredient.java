@@ -37,13 +37,25 @@ public class BlockTagIngredient implements ICustomIngredient {
 
     @Nullable
     protected ItemStack[] itemStacks;
+    @Nullable
+    private volatile Contents contents;
 
     public BlockTagIngredient(TagKey<Block> tag) {
         this.tag = tag;
     }
 
     protected void dissolve() {
-        if (itemStacks == null) {
+        getContents();
+    }
+
+    /**
+     * {@return the stacks and item set of the tag, computed again when tags are reloaded}
+     * The contents are published as a whole, so that concurrent callers never see stacks and item set of different tags.
+     */
+    private Contents getContents() {
+        Contents contents = this.contents;
+        int generation = ItemIdSet.getGeneration();
+        if (contents == null || contents.generation() != generation) {
             List<ItemStack> list = new ArrayList<>();
             for (Holder<Block> block : BuiltInRegistries.BLOCK.getTagOrEmpty(tag)) {
                 ItemStack stack = new ItemStack(block.value());
@@ -58,14 +70,17 @@ public class BlockTagIngredient implements ICustomIngredient {
                 list.add(itemStack);
             }
 
-            itemStacks = list.toArray(ItemStack[]::new);
+            ItemStack[] stacks = list.toArray(ItemStack[]::new);
+            contents = new Contents(stacks, ItemIdSet.ofStacks(stacks), generation);
+            itemStacks = stacks;
+            this.contents = contents;
         }
+        return contents;
     }
 
     @Override
     public Stream<ItemStack> getItems() {
-        dissolve();
-        return Stream.of(itemStacks);
+        return Stream.of(getContents().stacks());
     }
 
     @Override
@@ -73,14 +88,12 @@ public class BlockTagIngredient implements ICustomIngredient {
         if (stack == null)
             return false;
 
-        dissolve();
-        for (ItemStack itemStack : itemStacks) {
-            if (itemStack.is(stack.getItem())) {
-                return true;
-            }
-        }
+        return getContents().items().contains(stack.getItem());
+    }
 
-        return false;
+    @Override
+    public ItemIdSet computeItemSet() {
+        return getContents().items();
     }
 
     public TagKey<Block> getTag() {
@@ -108,4 +121,6 @@ public class BlockTagIngredient implements ICustomIngredient {
     public int hashCode() {
         return tag.hashCode();
     }
+
+    private record Contents(ItemStack[] stacks, ItemIdSet items, int generation) {}
 }
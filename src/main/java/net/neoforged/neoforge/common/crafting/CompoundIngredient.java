@@ -13,6 +13,7 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.crafting.Ingredient;
 import net.neoforged.neoforge.common.NeoForgeMod;
 import net.neoforged.neoforge.common.util.NeoForgeExtraCodecs;
+import org.jetbrains.annotations.Nullable;
 
 /** Ingredient that matches if any of the child ingredients match */
 public record CompoundIngredient(List<Ingredient> children) implements ICustomIngredient {
@@ -60,6 +61,20 @@ public record CompoundIngredient(List<Ingredient> children) implements ICustomIn
         return true;
     }
 
+    @Override
+    @Nullable
+    public ItemIdSet computeItemSet() {
+        ItemIdSet items = ItemIdSet.EMPTY;
+        for (var child : children) {
+            ItemIdSet childItems = child.getItemSet();
+            if (childItems == null) {
+                return null;
+            }
+            items = items.or(childItems);
+        }
+        return items;
+    }
+
     @Override
     public IngredientType<?> getType() {
         return NeoForgeMod.COMPOUND_INGREDIENT_TYPE.get();
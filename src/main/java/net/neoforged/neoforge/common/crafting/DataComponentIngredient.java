@@ -76,6 +76,11 @@ public class DataComponentIngredient implements ICustomIngredient {
         return false;
     }
 
+    @Override
+    public ItemIdSet computeItemSet() {
+        return ItemIdSet.ofHolders(items);
+    }
+
     @Override
     public IngredientType<?> getType() {
         return NeoForgeMod.DATA_COMPONENT_INGREDIENT_TYPE.get();
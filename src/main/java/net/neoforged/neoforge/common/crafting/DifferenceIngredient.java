@@ -11,6 +11,7 @@ import java.util.stream.Stream;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.crafting.Ingredient;
 import net.neoforged.neoforge.common.NeoForgeMod;
+import org.jetbrains.annotations.Nullable;
 
 /** Ingredient that matches everything from the first ingredient that is not included in the second ingredient */
 public record DifferenceIngredient(Ingredient base, Ingredient subtracted) implements ICustomIngredient {
@@ -36,6 +37,20 @@ public record DifferenceIngredient(Ingredient base, Ingredient subtracted) imple
         return base.isSimple() && subtracted.isSimple();
     }
 
+    @Override
+    @Nullable
+    public ItemIdSet computeItemSet() {
+        ItemIdSet items = base.getItemSet();
+        // Only simple ingredients accept every stack of the items in their set
+        if (items != null && subtracted.isSimple()) {
+            ItemIdSet subtractedItems = subtracted.getItemSet();
+            if (subtractedItems != null) {
+                items = items.andNot(subtractedItems);
+            }
+        }
+        return items;
+    }
+
     @Override
     public IngredientType<?> getType() {
         return NeoForgeMod.DIFFERENCE_INGREDIENT_TYPE.get();
@@ -11,6 +11,7 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.crafting.Ingredient;
 import net.neoforged.neoforge.registries.NeoForgeRegistries;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Interface that modders can implement to create new behaviors for {@link Ingredient}s.
@@ -59,6 +60,20 @@ public interface ICustomIngredient {
      */
     boolean isSimple();
 
+    /**
+     * {@return the items of the stacks that this ingredient may accept, or {@code null} if that is not known in advance}
+     *
+     * <p>Stacks of items outside the set are rejected without calling {@link #test}, so the set must contain the item of every accepted stack.
+     * If this ingredient {@linkplain #isSimple() is simple}, the set must contain exactly the accepted items.
+     *
+     * <p>The set is cached by the ingredient and computed again after tags are reloaded, so it may only depend on tags and on this ingredient.
+     * Ingredients made of other ingredients can combine the {@linkplain Ingredient#getItemSet() item sets} of their children.
+     */
+    @Nullable
+    default ItemIdSet computeItemSet() {
+        return null;
+    }
+
     /**
      * {@return the type of this ingredient}
      *
@@ -13,6 +13,7 @@ import java.util.stream.Stream;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.crafting.Ingredient;
 import net.neoforged.neoforge.common.NeoForgeMod;
+import org.jetbrains.annotations.Nullable;
 
 /** Ingredient that matches if all child ingredients match */
 public record IntersectionIngredient(List<Ingredient> children) implements ICustomIngredient {
@@ -70,6 +71,19 @@ public record IntersectionIngredient(List<Ingredient> children) implements ICust
         return true;
     }
 
+    @Override
+    @Nullable
+    public ItemIdSet computeItemSet() {
+        ItemIdSet items = null;
+        for (var child : children) {
+            ItemIdSet childItems = child.getItemSet();
+            if (childItems != null) {
+                items = items == null ? childItems : items.and(childItems);
+            }
+        }
+        return items;
+    }
+
     @Override
     public IngredientType<?> getType() {
         return NeoForgeMod.INTERSECTION_INGREDIENT_TYPE.get();
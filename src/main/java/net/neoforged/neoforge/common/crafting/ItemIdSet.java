@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.common.crafting;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * An immutable set of items, stored as a bitset indexed by {@linkplain BuiltInRegistries#ITEM item registry} id.
+ *
+ * <p>Ingredients use these sets to reject stacks by their item before testing their components,
+ * see {@link ICustomIngredient#computeItemSet()}.
+ * Since sets of ingredients may depend on tags, they are cached per {@linkplain #getGeneration() generation},
+ * which changes whenever tags are reloaded.
+ */
+public final class ItemIdSet {
+    public static final ItemIdSet EMPTY = new ItemIdSet(new long[0]);
+
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private final long[] words;
+
+    private ItemIdSet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * {@return the set of the items of the given stacks}
+     */
+    public static ItemIdSet ofStacks(ItemStack... stacks) {
+        long[] words = new long[0];
+        for (ItemStack stack : stacks) {
+            words = set(words, BuiltInRegistries.ITEM.getId(stack.getItem()));
+        }
+        return new ItemIdSet(words);
+    }
+
+    /**
+     * {@return the set of the items of the given holders}
+     */
+    public static ItemIdSet ofHolders(Iterable<Holder<Item>> items) {
+        long[] words = new long[0];
+        for (Holder<Item> item : items) {
+            words = set(words, BuiltInRegistries.ITEM.getId(item.value()));
+        }
+        return new ItemIdSet(words);
+    }
+
+    private static long[] set(long[] words, int id) {
+        if (id < 0) {
+            return words;
+        }
+        int word = id >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        words[word] |= 1L << id;
+        return words;
+    }
+
+    public boolean contains(Item item) {
+        return contains(BuiltInRegistries.ITEM.getId(item));
+    }
+
+    /**
+     * {@return whether the set contains the item with the given registry id}
+     */
+    public boolean contains(int id) {
+        int word = id >>> 6;
+        return id >= 0 && word < words.length && (words[word] & (1L << id)) != 0;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@return the items that are in both this set and the other set}
+     */
+    public ItemIdSet and(ItemIdSet other) {
+        long[] result = new long[Math.min(words.length, other.words.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = words[i] & other.words[i];
+        }
+        return new ItemIdSet(result);
+    }
+
+    /**
+     * {@return the items that are in this set or in the other set}
+     */
+    public ItemIdSet or(ItemIdSet other) {
+        long[] result = Arrays.copyOf(words, Math.max(words.length, other.words.length));
+        for (int i = 0; i < other.words.length; i++) {
+            result[i] |= other.words[i];
+        }
+        return new ItemIdSet(result);
+    }
+
+    /**
+     * {@return the items of this set that are not in the other set}
+     */
+    public ItemIdSet andNot(ItemIdSet other) {
+        long[] result = words.clone();
+        for (int i = 0; i < Math.min(result.length, other.words.length); i++) {
+            result[i] &= ~other.words[i];
+        }
+        return new ItemIdSet(result);
+    }
+
+    /**
+     * {@return the current generation of cached item sets}
+     * Item sets cached with an older generation must be computed again.
+     */
+    public static int getGeneration() {
+        return GENERATION.get();
+    }
+
+    /**
+     * Invalidates the cached item sets of all ingredients. Called when tags are reloaded.
+     */
+    @ApiStatus.Internal
+    public static void invalidateCaches() {
+        GENERATION.incrementAndGet();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ItemIdSet other)) return false;
+        int length = Math.max(words.length, other.words.length);
+        for (int i = 0; i < length; i++) {
+            long word = i < words.length ? words[i] : 0;
+            long otherWord = i < other.words.length ? other.words[i] : 0;
+            if (word != otherWord) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.hashCode(Arrays.copyOf(words, length));
+    }
+}
@@ -6,14 +6,23 @@
 package net.neoforged.neoforge.common.util;
 
 import java.util.Arrays;
-import java.util.BitSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.function.Predicate;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Matches inputs to tests, such as the items in a crafting grid to the ingredients of a shapeless recipe.
+ * <p>
+ * This finds a maximum bipartite matching between tests and inputs with the Hopcroft-Karp algorithm,
+ * which takes polynomial time however much the tests overlap.
+ * The buffers used while matching are kept per thread and reused, so that matching only allocates the returned array.
+ * Tests that match recipes themselves while they are being matched get buffers of their own.
+ */
 public class RecipeMatcher {
+    private static final int UNMATCHED = -1;
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     /**
      * Attempts to match inputs to the specified tests. In the best way that all inputs are used by one test.
      * Will return null in any of these cases:
@@ -29,108 +38,191 @@ public class RecipeMatcher {
         if (elements != tests.size())
             return null; // There will not be a 1:1 mapping of inputs -> tests
 
-        int[] ret = new int[elements];
-        Arrays.fill(ret, -1);
-
-        // [UnusedInputs] [UnusedIngredients] [IngredientMatchMask]...
-        BitSet data = new BitSet((elements + 2) * elements);
-        for (int x = 0; x < elements; x++) {
-            int matched = 0;
-            int offset = (x + 2) * elements;
-            Predicate<T> test = tests.get(x);
-
-            for (int y = 0; y < elements; y++) {
-                if (data.get(y))
-                    continue;
+        Scratch scratch = SCRATCH.get();
+        if (scratch.inUse) {
+            // A test is matching recipes itself, it must not overwrite the buffers of the outer match
+            scratch = new Scratch();
+        }
+        scratch.inUse = true;
+        try {
+            return findMatches(inputs, tests, elements, scratch);
+        } finally {
+            scratch.inUse = false;
+        }
+    }
 
-                if (test.test(inputs.get(y))) {
-                    data.set(offset + y);
-                    matched++;
+    private static <T> int @Nullable [] findMatches(List<T> inputs, List<? extends Predicate<T>> tests, int elements, Scratch scratch) {
+        scratch.ensureCapacity(elements);
+        int words = (elements + Long.SIZE - 1) >>> 6;
+        long[] adjacency = scratch.adjacency;
+        int[] inputOfTest = scratch.inputOfTest;
+        int[] testOfInput = scratch.testOfInput;
+        Arrays.fill(adjacency, 0, elements * words, 0L);
+        Arrays.fill(inputOfTest, 0, elements, UNMATCHED);
+        Arrays.fill(testOfInput, 0, elements, UNMATCHED);
+
+        // Build the adjacency bitsets, greedily matching each test to the first free input it accepts
+        int matched = 0;
+        for (int test = 0; test < elements; test++) {
+            Predicate<T> predicate = tests.get(test);
+            int offset = test * words;
+            boolean any = false;
+            for (int input = 0; input < elements; input++) {
+                if (predicate.test(inputs.get(input))) {
+                    adjacency[offset + (input >>> 6)] |= 1L << input;
+                    any = true;
+                    if (inputOfTest[test] == UNMATCHED && testOfInput[input] == UNMATCHED) {
+                        inputOfTest[test] = input;
+                        testOfInput[input] = test;
+                        matched++;
+                    }
                 }
             }
 
-            if (matched == 0)
+            if (!any)
                 return null; //We have an test that matched non of the inputs
+        }
 
-            if (matched == 1) {
-                if (!claim(ret, data, x, elements))
-                    return null; //We failed to claim this index, which means it caused something else to go to 0 matches, which makes the whole thing fail
+        while (matched < elements && scratch.buildLayers(elements, words)) {
+            Arrays.fill(scratch.nextInput, 0, elements, 0);
+            for (int test = 0; test < elements; test++) {
+                if (inputOfTest[test] == UNMATCHED && scratch.augment(test, elements, words))
+                    matched++;
             }
         }
 
-        if (data.nextClearBit(0) >= elements) //All items have been used, which means all tests have a match!
-            return ret;
+        if (matched < elements)
+            return null; // Some tests or inputs are left without a match
 
-        // We should be in a state where multiple tests are satified by multiple inputs. So we need to try a branching recursive test.
-        // However for performance reasons, we should probably make that check a sub-set of the entire graph.
-        if (backtrack(data, ret, 0, elements))
-            return ret;
-
-        return null; //Backtrack failed, no matches, we cry and go home now :(
+        return Arrays.copyOf(testOfInput, elements);
     }
 
-    // This is bad... need to think of a better cascade, recursion instead of stack?
-    private static boolean claim(int[] ret, BitSet data, int claimed, int elements) {
-        Queue<Integer> pending = new LinkedList<Integer>();
-        pending.add(claimed);
-
-        while (pending.peek() != null) {
-            int test = pending.poll();
-            int offset = (test + 2) * elements;
-            int used = data.nextSetBit(offset) - offset;
-
-            if (used >= elements || used < 0)
-                throw new IllegalStateException("What? We matched something, but it wasn't set in the range of this test! Test: " + test + " Used: " + used);
-
-            data.set(used);
-            data.set(elements + test);
-            ret[used] = test;
-
-            for (int x = 0; x < elements; x++) {
-                offset = (x + 2) * elements;
-                if (data.get(offset + used) && !data.get(elements + x)) {
-                    data.clear(offset + used);
-                    int count = 0;
-                    for (int y = offset; y < offset + elements; y++)
-                        if (data.get(y))
-                            count++;
-
-                    if (count == 0)
-                        return false; //Claiming this caused another test to lose its last match..
-
-                    if (count == 1)
-                        pending.add(x);
-                }
-            }
+    private static final class Scratch {
+        /**
+         * Whether a match is using these buffers on the current thread.
+         */
+        private boolean inUse;
+        /**
+         * One bitset of the accepted inputs per test.
+         */
+        private long[] adjacency = new long[0];
+        private int[] inputOfTest = new int[0];
+        private int[] testOfInput = new int[0];
+        /**
+         * The BFS layer of each test, counting from the unmatched tests.
+         */
+        private int[] layer = new int[0];
+        private int[] queue = new int[0];
+        /**
+         * The stack of tests of the current augmenting path.
+         */
+        private int[] path = new int[0];
+        /**
+         * The next input to try for each test, so that no edge is tried twice in the same phase.
+         */
+        private int[] nextInput = new int[0];
+
+        private void ensureCapacity(int elements) {
+            if (this.inputOfTest.length >= elements)
+                return;
+
+            int capacity = Math.max(elements, this.inputOfTest.length * 2);
+            int words = (capacity + Long.SIZE - 1) >>> 6;
+            this.adjacency = new long[capacity * words];
+            this.inputOfTest = new int[capacity];
+            this.testOfInput = new int[capacity];
+            this.layer = new int[capacity];
+            this.queue = new int[capacity];
+            this.path = new int[capacity];
+            this.nextInput = new int[capacity];
         }
 
-        return true;
-    }
+        /**
+         * {@return the first input at or after {@code from} that the test accepts, or {@code -1} if there is none}
+         */
+        private int nextAdjacent(int test, int from, int elements, int words) {
+            if (from >= elements)
+                return -1;
+
+            int offset = test * words;
+            int word = from >>> 6;
+            long bits = this.adjacency[offset + word] & (-1L << from);
+            while (bits == 0) {
+                if (++word >= words)
+                    return -1;
+                bits = this.adjacency[offset + word];
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
 
-    //We use recursion here, why? Because I feel like it. Also because we should only ever be working in data sets < 9
-    private static boolean backtrack(BitSet data, int[] ret, int start, int elements) {
-        int test = data.nextClearBit(elements + start) - elements;
-        if (test >= elements)
-            return true; //Could not find the next unused test.
+        /**
+         * Layers the tests by breadth-first search from the unmatched tests, alternating between accepted inputs and their matched tests.
+         *
+         * @return whether an unmatched input was reached, that is whether an augmenting path exists
+         */
+        private boolean buildLayers(int elements, int words) {
+            int head = 0;
+            int tail = 0;
+            for (int test = 0; test < elements; test++) {
+                if (this.inputOfTest[test] == UNMATCHED) {
+                    this.layer[test] = 0;
+                    this.queue[tail++] = test;
+                } else {
+                    this.layer[test] = UNREACHED;
+                }
+            }
 
-        if (test < 0)
-            throw new IllegalStateException("This should never happen, negative test in backtrack!");
+            boolean found = false;
+            while (head < tail) {
+                int test = this.queue[head++];
+                for (int input = nextAdjacent(test, 0, elements, words); input >= 0; input = nextAdjacent(test, input + 1, elements, words)) {
+                    int next = this.testOfInput[input];
+                    if (next == UNMATCHED) {
+                        found = true;
+                    } else if (this.layer[next] == UNREACHED) {
+                        this.layer[next] = this.layer[test] + 1;
+                        this.queue[tail++] = next;
+                    }
+                }
+            }
+            return found;
+        }
 
-        int offset = (test + 2) * elements;
-        for (int x = 0; x < elements; x++) {
-            if (!data.get(offset + x) || data.get(x))
-                continue;
+        /**
+         * Searches an augmenting path from an unmatched test along the layers, and flips the matching along it.
+         * The search is iterative, tests that lead to no path are removed from the layers for the rest of the phase.
+         *
+         * @return whether the matching was augmented
+         */
+        private boolean augment(int root, int elements, int words) {
+            int depth = 0;
+            this.path[depth++] = root;
+            while (depth > 0) {
+                int test = this.path[depth - 1];
+                int input = nextAdjacent(test, this.nextInput[test], elements, words);
+                if (input < 0) {
+                    this.layer[test] = UNREACHED;
+                    depth--;
+                    continue;
+                }
 
-            data.set(x);
+                this.nextInput[test] = input + 1;
+                int next = this.testOfInput[input];
+                if (next == UNMATCHED) {
+                    // Flip the matching along the path: each test on it takes the input it leads to
+                    for (int i = depth - 1; i >= 0; i--) {
+                        int pathTest = this.path[i];
+                        int pathInput = this.nextInput[pathTest] - 1;
+                        this.inputOfTest[pathTest] = pathInput;
+                        this.testOfInput[pathInput] = pathTest;
+                    }
+                    return true;
+                }
 
-            if (backtrack(data, ret, test + 1, elements)) {
-                ret[x] = test;
-                return true;
+                if (this.layer[next] != UNREACHED && this.layer[next] == this.layer[test] + 1)
+                    this.path[depth++] = next;
             }
-
-            data.clear(x);
+            return false;
         }
-
-        return false;
     }
 }
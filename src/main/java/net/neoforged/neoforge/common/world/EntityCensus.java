@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.common.world;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMaps;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Counts the entities of a {@link ServerLevel} by type and by chunk.
+ * <p>
+ * The counts are kept up to date as entities start and stop being tracked by the level, and as they move between chunks,
+ * so that they can be read at any time without iterating the entities of the level.
+ * The census counts the same entities as {@link ServerLevel#getAllEntities()}, each in the chunk of its {@linkplain Entity#chunkPosition() position}.
+ * <p>
+ * While a flight recording is running, the counts are emitted every five seconds as {@code neoforge.EntityCount} and {@code neoforge.EntityHotspot} events.
+ * The census must only be used on the server thread.
+ */
+public final class EntityCensus {
+    private static final int HOTSPOT_EVENTS = 5;
+
+    private final Reference2LongOpenHashMap<Entity> chunkByEntity = new Reference2LongOpenHashMap<>();
+    private final Reference2IntOpenHashMap<EntityType<?>> countByType = new Reference2IntOpenHashMap<>();
+    private final Long2IntOpenHashMap countByChunk = new Long2IntOpenHashMap();
+    private final Reference2ObjectOpenHashMap<EntityType<?>, Long2IntOpenHashMap> countByTypeAndChunk = new Reference2ObjectOpenHashMap<>();
+
+    @ApiStatus.Internal
+    public void onTrackingStart(Entity entity) {
+        if (chunkByEntity.containsKey(entity))
+            return;
+
+        long chunk = entity.chunkPosition().toLong();
+        chunkByEntity.put(entity, chunk);
+        countByType.addTo(entity.getType(), 1);
+        add(countByChunk, chunk, 1);
+        add(countByTypeAndChunk.computeIfAbsent(entity.getType(), type -> new Long2IntOpenHashMap()), chunk, 1);
+    }
+
+    @ApiStatus.Internal
+    public void onTrackingEnd(Entity entity) {
+        if (!chunkByEntity.containsKey(entity))
+            return;
+
+        long chunk = chunkByEntity.removeLong(entity);
+        if (countByType.addTo(entity.getType(), -1) == 1)
+            countByType.removeInt(entity.getType());
+        add(countByChunk, chunk, -1);
+        removeFromType(entity.getType(), chunk);
+    }
+
+    @ApiStatus.Internal
+    public void onSectionChange(Entity entity) {
+        if (!chunkByEntity.containsKey(entity))
+            return;
+
+        long oldChunk = chunkByEntity.getLong(entity);
+        long newChunk = entity.chunkPosition().toLong();
+        if (oldChunk == newChunk)
+            return;
+
+        chunkByEntity.put(entity, newChunk);
+        add(countByChunk, oldChunk, -1);
+        add(countByChunk, newChunk, 1);
+        removeFromType(entity.getType(), oldChunk);
+        add(countByTypeAndChunk.computeIfAbsent(entity.getType(), type -> new Long2IntOpenHashMap()), newChunk, 1);
+    }
+
+    private void removeFromType(EntityType<?> type, long chunk) {
+        Long2IntOpenHashMap chunks = countByTypeAndChunk.get(type);
+        if (chunks != null) {
+            add(chunks, chunk, -1);
+            if (chunks.isEmpty())
+                countByTypeAndChunk.remove(type);
+        }
+    }
+
+    private static void add(Long2IntOpenHashMap counts, long chunk, int delta) {
+        if (counts.addTo(chunk, delta) + delta == 0)
+            counts.remove(chunk);
+    }
+
+    /**
+     * {@return the number of entities in the level}
+     */
+    public int getTotal() {
+        return chunkByEntity.size();
+    }
+
+    public int getCount(EntityType<?> type) {
+        return countByType.getInt(type);
+    }
+
+    public int getCount(ChunkPos chunk) {
+        return countByChunk.get(chunk.toLong());
+    }
+
+    public int getCount(EntityType<?> type, ChunkPos chunk) {
+        Long2IntOpenHashMap chunks = countByTypeAndChunk.get(type);
+        return chunks != null ? chunks.get(chunk.toLong()) : 0;
+    }
+
+    /**
+     * {@return an unmodifiable view of the number of entities of each type in the level, without types that have no entity}
+     */
+    public Reference2IntMap<EntityType<?>> getCountsByType() {
+        return Reference2IntMaps.unmodifiable(countByType);
+    }
+
+    /**
+     * {@return the number of chunks that contain an entity}
+     */
+    public int getChunkCount() {
+        return countByChunk.size();
+    }
+
+    /**
+     * {@return the number of chunks that contain an entity of the given type}
+     */
+    public int getChunkCount(EntityType<?> type) {
+        Long2IntOpenHashMap chunks = countByTypeAndChunk.get(type);
+        return chunks != null ? chunks.size() : 0;
+    }
+
+    /**
+     * {@return the chunks with the most entities, sorted by descending count and then by position}
+     *
+     * @param limit The maximum number of chunks to return
+     */
+    public List<ChunkCount> getTopChunks(int limit) {
+        return topChunks(countByChunk, limit);
+    }
+
+    /**
+     * {@return the chunks with the most entities of the given type, sorted by descending count and then by position}
+     *
+     * @param limit The maximum number of chunks to return
+     */
+    public List<ChunkCount> getTopChunks(EntityType<?> type, int limit) {
+        Long2IntOpenHashMap chunks = countByTypeAndChunk.get(type);
+        return chunks != null ? topChunks(chunks, limit) : List.of();
+    }
+
+    private static List<ChunkCount> topChunks(Long2IntOpenHashMap counts, int limit) {
+        limit = Math.min(limit, counts.size());
+        if (limit <= 0)
+            return List.of();
+
+        // Insertion into a bounded sorted array, the limit is expected to be small
+        long[] chunks = new long[limit];
+        int[] values = new int[limit];
+        int size = 0;
+        for (Long2IntMap.Entry entry : counts.long2IntEntrySet()) {
+            long chunk = entry.getLongKey();
+            int count = entry.getIntValue();
+            if (size == limit && !isBefore(count, chunk, values[limit - 1], chunks[limit - 1]))
+                continue;
+
+            int i = Math.min(size, limit - 1);
+            while (i > 0 && isBefore(count, chunk, values[i - 1], chunks[i - 1])) {
+                chunks[i] = chunks[i - 1];
+                values[i] = values[i - 1];
+                i--;
+            }
+            chunks[i] = chunk;
+            values[i] = count;
+            size = Math.min(size + 1, limit);
+        }
+
+        List<ChunkCount> top = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            top.add(new ChunkCount(new ChunkPos(chunks[i]), values[i]));
+        return top;
+    }
+
+    private static boolean isBefore(int count, long chunk, int otherCount, long otherChunk) {
+        return count != otherCount ? count > otherCount : chunk < otherChunk;
+    }
+
+    /**
+     * Emits the counts of the census as flight recorder events, if they are enabled.
+     */
+    @ApiStatus.Internal
+    public void emitEvents(ServerLevel level) {
+        if (!new EntityCountEvent().isEnabled() && !new EntityHotspotEvent().isEnabled())
+            return;
+
+        String dimension = level.dimension().location().toString();
+        for (Reference2IntMap.Entry<EntityType<?>> entry : countByType.reference2IntEntrySet()) {
+            EntityCountEvent event = new EntityCountEvent();
+            if (event.shouldCommit()) {
+                event.dimension = dimension;
+                event.type = BuiltInRegistries.ENTITY_TYPE.getKey(entry.getKey()).toString();
+                event.count = entry.getIntValue();
+                event.commit();
+            }
+        }
+        for (ChunkCount chunk : getTopChunks(HOTSPOT_EVENTS)) {
+            EntityHotspotEvent event = new EntityHotspotEvent();
+            if (event.shouldCommit()) {
+                event.dimension = dimension;
+                event.chunkX = chunk.pos().x;
+                event.chunkZ = chunk.pos().z;
+                event.count = chunk.count();
+                event.commit();
+            }
+        }
+    }
+
+    public record ChunkCount(ChunkPos pos, int count) {}
+
+    @Name("neoforge.EntityCount")
+    @Label("Entity Count")
+    @Category({ "NeoForge", "Entities" })
+    @StackTrace(false)
+    static final class EntityCountEvent extends Event {
+        @Label("Dimension")
+        String dimension;
+        @Label("Type")
+        String type;
+        @Label("Count")
+        int count;
+    }
+
+    @Name("neoforge.EntityHotspot")
+    @Label("Entity Hotspot")
+    @Category({ "NeoForge", "Entities" })
+    @StackTrace(false)
+    static final class EntityHotspotEvent extends Event {
+        @Label("Dimension")
+        String dimension;
+        @Label("Chunk X")
+        int chunkX;
+        @Label("Chunk Z")
+        int chunkZ;
+        @Label("Count")
+        int count;
+    }
+}
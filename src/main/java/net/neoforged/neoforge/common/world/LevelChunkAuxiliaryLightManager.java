@@ -5,91 +5,253 @@
 
 package net.neoforged.neoforge.common.world;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.HolderLookup;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
 import net.minecraft.network.protocol.game.ClientboundBundlePacket;
 import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.DataLayer;
 import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.lighting.LightEngine;
 import net.neoforged.neoforge.common.util.INBTSerializable;
+import net.neoforged.neoforge.network.PacketDistributor;
 import net.neoforged.neoforge.network.payload.AuxiliaryLightDataPayload;
+import net.neoforged.neoforge.network.payload.AuxiliaryLightDeltaPayload;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Stores the auxiliary light values of a chunk as one nibble array per section, like vanilla light data.
+ * Sections without any light value do not allocate an array.
+ * <p>
+ * The values are saved as one byte array per section, and sent to clients along with the chunk.
+ * Values changed on the server afterward are sent as deltas to the players tracking the chunk at the end of the tick.
+ * <p>
+ * Values are read without locking, since the light engine reads them off-thread. Writes are synchronized on the manager.
+ */
 @ApiStatus.Internal
 public final class LevelChunkAuxiliaryLightManager implements AuxiliaryLightManager, INBTSerializable<ListTag> {
     public static final String LIGHT_NBT_KEY = "neoforge:aux_lights";
+    private static final String SECTION_Y_KEY = "y";
+    private static final String SECTION_DATA_KEY = "data";
+    /**
+     * Managers of server chunks with changed values that were not sent to clients yet.
+     */
+    private static final Set<LevelChunkAuxiliaryLightManager> PENDING_SYNC = ConcurrentHashMap.newKeySet();
 
     private final LevelChunk owner;
-    private final Map<BlockPos, Byte> lights = new ConcurrentHashMap<>();
+    /**
+     * The light values per section index, or {@code null} for sections without light values.
+     */
+    private final AtomicReferenceArray<DataLayer> sections;
+    /**
+     * The number of non-zero light values per section index.
+     */
+    private final int[] counts;
+    /**
+     * The positions of the values changed since they were last sent to clients, only tracked on the server.
+     */
+    private final LongSet changed = new LongOpenHashSet();
 
     public LevelChunkAuxiliaryLightManager(LevelChunk owner) {
         this.owner = owner;
+        this.sections = new AtomicReferenceArray<>(owner.getSectionsCount());
+        this.counts = new int[owner.getSectionsCount()];
     }
 
     @Override
     public void setLightAt(BlockPos pos, int value) {
-        pos = pos.immutable();
         value = Mth.clamp(value, 0, LightEngine.MAX_LEVEL);
+        int index = owner.getSectionIndex(pos.getY());
+        if (index < 0 || index >= counts.length) {
+            return;
+        }
 
-        Byte oldValue;
-        if (value > 0) {
-            oldValue = lights.put(pos, (byte) value);
-        } else {
-            oldValue = lights.remove(pos);
+        int oldValue;
+        synchronized (this) {
+            oldValue = set(index, pos.getX(), pos.getY(), pos.getZ(), value);
+            if (oldValue != value && owner.getLevel() instanceof ServerLevel) {
+                changed.add(pos.asLong());
+                PENDING_SYNC.add(this);
+            }
         }
-        if (Objects.requireNonNullElse(oldValue, (byte) 0) != value) {
-            owner.getLevel().getChunkSource().getLightEngine().checkBlock(pos);
+        if (oldValue != value) {
+            owner.getLevel().getChunkSource().getLightEngine().checkBlock(pos.immutable());
             owner.setUnsaved(true);
         }
     }
 
     @Override
     public int getLightAt(BlockPos pos) {
-        return lights.getOrDefault(pos, (byte) 0);
+        int index = owner.getSectionIndex(pos.getY());
+        if (index < 0 || index >= counts.length) {
+            return 0;
+        }
+        DataLayer layer = sections.get(index);
+        return layer != null ? layer.get(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15) : 0;
     }
 
-    @Nullable
-    @Override
-    public ListTag serializeNBT(HolderLookup.Provider provider) {
-        if (lights.isEmpty()) {
-            return null;
+    /**
+     * Sets a light value, allocating or freeing the array of its section as needed.
+     * Must be called while synchronized on this manager.
+     *
+     * @return the previous light value
+     */
+    private int set(int index, int x, int y, int z, int value) {
+        DataLayer layer = sections.get(index);
+        int oldValue = layer != null ? layer.get(x & 15, y & 15, z & 15) : 0;
+        if (oldValue == value) {
+            return oldValue;
         }
 
+        if (layer == null) {
+            // Fully allocated before publishing, so that readers on other threads never see a lazily allocated array
+            layer = new DataLayer(new byte[DataLayer.SIZE]);
+            sections.set(index, layer);
+        }
+        layer.set(x & 15, y & 15, z & 15, value);
+        if (oldValue == 0) {
+            counts[index]++;
+        } else if (value == 0 && --counts[index] == 0) {
+            sections.set(index, null);
+        }
+        return oldValue;
+    }
+
+    /**
+     * Replaces the light values of a section. Must be called while synchronized on this manager.
+     */
+    private void setSection(int index, @Nullable DataLayer layer) {
+        int count = 0;
+        if (layer != null) {
+            for (byte packed : layer.getData()) {
+                count += ((packed & 0x0F) != 0 ? 1 : 0) + ((packed & 0xF0) != 0 ? 1 : 0);
+            }
+        }
+        counts[index] = count;
+        sections.set(index, count > 0 ? layer : null);
+    }
+
+    @Nullable
+    @Override
+    public synchronized ListTag serializeNBT(HolderLookup.Provider provider) {
         ListTag list = new ListTag();
-        lights.forEach((pos, light) -> {
-            CompoundTag tag = new CompoundTag();
-            tag.putLong("pos", pos.asLong());
-            tag.putByte("level", light);
-            list.add(tag);
-        });
-        return list;
+        for (int index = 0; index < counts.length; index++) {
+            DataLayer layer = sections.get(index);
+            if (layer != null) {
+                CompoundTag tag = new CompoundTag();
+                tag.putInt(SECTION_Y_KEY, owner.getSectionYFromSectionIndex(index));
+                // Copied since the chunk may be written to disk on another thread
+                tag.putByteArray(SECTION_DATA_KEY, layer.getData().clone());
+                list.add(tag);
+            }
+        }
+        return list.isEmpty() ? null : list;
     }
 
     @Override
-    public void deserializeNBT(HolderLookup.Provider provider, ListTag list) {
+    public synchronized void deserializeNBT(HolderLookup.Provider provider, ListTag list) {
         for (int i = 0; i < list.size(); i++) {
             CompoundTag tag = list.getCompound(i);
-            lights.put(BlockPos.of(tag.getLong("pos")), tag.getByte("level"));
+            if (tag.contains(SECTION_DATA_KEY, Tag.TAG_BYTE_ARRAY)) {
+                byte[] data = tag.getByteArray(SECTION_DATA_KEY);
+                int index = owner.getSectionIndexFromSectionY(tag.getInt(SECTION_Y_KEY));
+                if (data.length == DataLayer.SIZE && index >= 0 && index < counts.length) {
+                    setSection(index, new DataLayer(data));
+                }
+            } else {
+                // Chunks saved before light values were stored per section have one tag per block
+                BlockPos pos = BlockPos.of(tag.getLong("pos"));
+                int index = owner.getSectionIndex(pos.getY());
+                if (index >= 0 && index < counts.length) {
+                    set(index, pos.getX(), pos.getY(), pos.getZ(), Mth.clamp(tag.getByte("level"), 0, LightEngine.MAX_LEVEL));
+                }
+            }
         }
     }
 
     public Packet<?> sendLightDataTo(ClientboundLevelChunkWithLightPacket chunkPacket) {
+        List<AuxiliaryLightDataPayload.Section> sectionData = new ArrayList<>();
+        synchronized (this) {
+            for (int index = 0; index < counts.length; index++) {
+                DataLayer layer = sections.get(index);
+                if (layer != null) {
+                    sectionData.add(new AuxiliaryLightDataPayload.Section(owner.getSectionYFromSectionIndex(index), layer.getData().clone()));
+                }
+            }
+        }
         return new ClientboundBundlePacket(List.of(chunkPacket, new ClientboundCustomPayloadPacket(
-                new AuxiliaryLightDataPayload(owner.getPos(), Map.copyOf(lights)))));
+                new AuxiliaryLightDataPayload(owner.getPos(), sectionData))));
+    }
+
+    public synchronized void handleLightDataSync(List<AuxiliaryLightDataPayload.Section> sectionData) {
+        for (int index = 0; index < counts.length; index++) {
+            setSection(index, null);
+        }
+        for (AuxiliaryLightDataPayload.Section section : sectionData) {
+            int index = owner.getSectionIndexFromSectionY(section.y());
+            if (index >= 0 && index < counts.length) {
+                setSection(index, new DataLayer(section.data()));
+            }
+        }
+    }
+
+    public void handleLightDataDelta(AuxiliaryLightDeltaPayload payload) {
+        for (int i = 0; i < payload.positions().length; i++) {
+            setLightAt(payload.unpack(payload.positions()[i]), payload.values()[i]);
+        }
     }
 
-    public void handleLightDataSync(Map<BlockPos, Byte> lights) {
-        this.lights.clear();
-        this.lights.putAll(lights);
+    /**
+     * Sends the changed light values of all server chunks to the players tracking them.
+     */
+    public static void sendPendingChanges() {
+        for (Iterator<LevelChunkAuxiliaryLightManager> iterator = PENDING_SYNC.iterator(); iterator.hasNext();) {
+            LevelChunkAuxiliaryLightManager manager = iterator.next();
+            iterator.remove();
+            manager.sendChanges();
+        }
+    }
+
+    /**
+     * Forgets the changed light values of the chunks of the given level, which is being unloaded.
+     */
+    public static void forgetPendingChanges(Level level) {
+        PENDING_SYNC.removeIf(manager -> manager.owner.getLevel() == level);
+    }
+
+    private void sendChanges() {
+        int[] positions;
+        byte[] values;
+        synchronized (this) {
+            positions = new int[changed.size()];
+            values = new byte[changed.size()];
+            int i = 0;
+            var pos = new BlockPos.MutableBlockPos();
+            for (var iterator = changed.iterator(); iterator.hasNext(); i++) {
+                pos.set(iterator.nextLong());
+                positions[i] = AuxiliaryLightDeltaPayload.pack(pos);
+                values[i] = (byte) getLightAt(pos);
+            }
+            changed.clear();
+        }
+        if (positions.length > 0 && owner.getLevel() instanceof ServerLevel level) {
+            PacketDistributor.sendToPlayersTrackingChunk(level, owner.getPos(), new AuxiliaryLightDeltaPayload(owner.getPos(), positions, values));
+        }
     }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.items;
+
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Optional extension of {@link IItemHandler} for handlers with many slots, that can find slots faster than a linear scan.
+ * For example, a storage may keep track of its empty and non-empty slots, or index its contents by item.
+ *
+ * <p>Users that would otherwise scan all slots, such as hoppers, use these queries instead when they are available.
+ * The results must be consistent with {@link #getStackInSlot(int)} and {@link #insertItem(int, ItemStack, boolean)}.
+ */
+public interface IItemHandlerSlotLookup extends IItemHandler {
+    /**
+     * Finds the first slot that is not empty, starting from the given slot.
+     *
+     * @param startSlot Slot to start searching from (inclusive).
+     * @return the index of the first non-empty slot at or after {@code startSlot}, or {@code -1} if there is none.
+     **/
+    int findFirstNonEmptySlot(int startSlot);
+
+    /**
+     * Finds the first slot that would accept at least part of the given stack, starting from the given slot.
+     * A slot accepts a stack if {@link #insertItem(int, ItemStack, boolean) simulating its insertion}
+     * would return a remainder smaller than the stack.
+     *
+     * <p><strong>IMPORTANT:</strong> This ItemStack <em>MUST NOT</em> be modified.
+     *
+     * @param stack     Stack to find a slot for. Never empty.
+     * @param startSlot Slot to start searching from (inclusive).
+     * @return the index of the first accepting slot at or after {@code startSlot}, or {@code -1} if there is none.
+     **/
+    int findFirstSlotAccepting(ItemStack stack, int startSlot);
+}
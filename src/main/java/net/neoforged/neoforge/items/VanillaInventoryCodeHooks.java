@@ -8,8 +8,10 @@ package net.neoforged.neoforge.items;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntitySelector;
 import net.minecraft.world.item.ItemStack;
@@ -22,9 +24,11 @@ import net.minecraft.world.level.block.entity.Hopper;
 import net.minecraft.world.level.block.entity.HopperBlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.phys.AABB;
+import net.neoforged.neoforge.capabilities.BlockCapabilityCache;
 import net.neoforged.neoforge.capabilities.Capabilities;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
 public class VanillaInventoryCodeHooks {
@@ -39,7 +43,7 @@ public class VanillaInventoryCodeHooks {
                 .map(itemHandlerResult -> {
                     IItemHandler handler = itemHandlerResult.getKey();
 
-                    for (int i = 0; i < handler.getSlots(); i++) {
+                    for (int i = nextNonEmptySlot(handler, 0); i >= 0; i = nextNonEmptySlot(handler, i + 1)) {
                         ItemStack extractItem = handler.extractItem(i, 1, true);
                         if (!extractItem.isEmpty()) {
                             for (int j = 0; j < dest.getContainerSize(); j++) {
@@ -94,15 +98,19 @@ public class VanillaInventoryCodeHooks {
      */
     public static boolean insertHook(HopperBlockEntity hopper) {
         Direction hopperFacing = hopper.getBlockState().getValue(HopperBlock.FACING);
-        return getAttachedItemHandler(hopper.getLevel(), hopper.getBlockPos(), hopperFacing)
+        return getAttachedItemHandler(hopper, hopperFacing)
                 .map(destinationResult -> {
                     IItemHandler itemHandler = destinationResult.getKey();
                     Object destination = destinationResult.getValue();
-                    if (isFull(itemHandler)) {
+                    // Handlers with slot lookups are not scanned up front, they find an accepting slot for each item directly.
+                    if (!(itemHandler instanceof IItemHandlerSlotLookup) && isFull(itemHandler)) {
                         return false;
                     } else {
                         for (int i = 0; i < hopper.getContainerSize(); ++i) {
                             if (!hopper.getItem(i).isEmpty()) {
+                                if (itemHandler instanceof IItemHandlerSlotLookup lookup && lookup.findFirstSlotAccepting(hopper.getItem(i), 0) < 0) {
+                                    continue;
+                                }
                                 ItemStack originalSlotContents = hopper.getItem(i).copy();
                                 ItemStack insertStack = hopper.removeItem(i, 1);
                                 ItemStack remainder = putStackInInventoryAllSlots(hopper, destination, itemHandler, insertStack);
@@ -122,12 +130,32 @@ public class VanillaInventoryCodeHooks {
     }
 
     private static ItemStack putStackInInventoryAllSlots(BlockEntity source, Object destination, IItemHandler destInventory, ItemStack stack) {
+        if (destInventory instanceof IItemHandlerSlotLookup lookup) {
+            int slot = lookup.findFirstSlotAccepting(stack, 0);
+            while (slot >= 0) {
+                stack = insertStack(source, destination, destInventory, stack, slot);
+                if (stack.isEmpty())
+                    break;
+                slot = lookup.findFirstSlotAccepting(stack, slot + 1);
+            }
+            return stack;
+        }
         for (int slot = 0; slot < destInventory.getSlots() && !stack.isEmpty(); slot++) {
             stack = insertStack(source, destination, destInventory, stack, slot);
         }
         return stack;
     }
 
+    /**
+     * {@return the first slot at or after {@code startSlot} that may not be empty, or {@code -1} if there is none}
+     */
+    private static int nextNonEmptySlot(IItemHandler handler, int startSlot) {
+        if (handler instanceof IItemHandlerSlotLookup lookup) {
+            return lookup.findFirstNonEmptySlot(startSlot);
+        }
+        return startSlot < handler.getSlots() ? startSlot : -1;
+    }
+
     /**
      * Copied from TileEntityHopper#insertStack and added capability support
      */
@@ -136,7 +164,8 @@ public class VanillaInventoryCodeHooks {
 
         if (destInventory.insertItem(slot, stack, true).isEmpty()) {
             boolean insertedItem = false;
-            boolean inventoryWasEmpty = isEmpty(destInventory);
+            // Only hoppers care about whether they were empty, avoid scanning other inventories.
+            boolean inventoryWasEmpty = destination instanceof HopperBlockEntity && isEmpty(destInventory);
 
             if (itemstack.isEmpty()) {
                 destInventory.insertItem(slot, stack, false);
@@ -192,10 +221,30 @@ public class VanillaInventoryCodeHooks {
         return getItemHandlerAt(level, pos.getX() + direction.getStepX() + 0.5, pos.getY() + direction.getStepY() + 0.5, pos.getZ() + direction.getStepZ() + 0.5, direction.getOpposite());
     }
 
+    private static Optional<Pair<IItemHandler, Object>> getAttachedItemHandler(HopperBlockEntity hopper, Direction direction) {
+        if (hopper.getLevel() instanceof ServerLevel serverLevel) {
+            return getCachedItemHandler(hopper.getCapabilityCaches().getInsertCache(serverLevel, direction));
+        }
+        return getAttachedItemHandler(hopper.getLevel(), hopper.getBlockPos(), direction);
+    }
+
     private static Optional<Pair<IItemHandler, Object>> getSourceItemHandler(Level level, Hopper hopper) {
+        if (hopper instanceof HopperBlockEntity hopperBlockEntity && level instanceof ServerLevel serverLevel) {
+            return getCachedItemHandler(hopperBlockEntity.getCapabilityCaches().getExtractCache(serverLevel));
+        }
         return getItemHandlerAt(level, hopper.getLevelX(), hopper.getLevelY() + 1.0, hopper.getLevelZ(), Direction.DOWN);
     }
 
+    private static Optional<Pair<IItemHandler, Object>> getCachedItemHandler(NeighborCache neighbor) {
+        var cache = neighbor.cache;
+        var blockCap = cache.getCapability();
+        if (blockCap != null)
+            return Optional.of(neighbor.getResult(blockCap));
+
+        BlockPos pos = cache.pos();
+        return getEntityItemHandlerAt(cache.level(), pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5, cache.context());
+    }
+
     private static Optional<Pair<IItemHandler, Object>> getItemHandlerAt(Level worldIn, double x, double y, double z, final Direction side) {
         BlockPos blockpos = BlockPos.containing(x, y, z);
         BlockState state = worldIn.getBlockState(blockpos);
@@ -207,6 +256,10 @@ public class VanillaInventoryCodeHooks {
             return Optional.of(ImmutablePair.of(blockCap, blockEntity));
 
         // Otherwise fallback to automation entity capability
+        return getEntityItemHandlerAt(worldIn, x, y, z, side);
+    }
+
+    private static Optional<Pair<IItemHandler, Object>> getEntityItemHandlerAt(Level worldIn, double x, double y, double z, Direction side) {
         // Note: the isAlive check matches what vanilla does for hoppers in EntitySelector.CONTAINER_ENTITY_SELECTOR
         List<Entity> list = worldIn.getEntities((Entity) null, new AABB(x - 0.5D, y - 0.5D, z - 0.5D, x + 0.5D, y + 0.5D, z + 0.5D), EntitySelector.ENTITY_STILL_ALIVE);
         if (!list.isEmpty()) {
@@ -220,4 +273,60 @@ public class VanillaInventoryCodeHooks {
 
         return Optional.empty();
     }
+
+    /**
+     * Caches of the item handlers a hopper block entity transfers items with.
+     * The caches are created lazily, and stop listening for invalidations once the hopper is removed.
+     */
+    @ApiStatus.Internal
+    public static final class HopperCapabilityCaches {
+        private final HopperBlockEntity hopper;
+        @Nullable
+        private NeighborCache insertCache;
+        @Nullable
+        private NeighborCache extractCache;
+
+        public HopperCapabilityCaches(HopperBlockEntity hopper) {
+            this.hopper = hopper;
+        }
+
+        private NeighborCache getInsertCache(ServerLevel level, Direction facing) {
+            // The facing of the hopper can change without the block entity being replaced.
+            if (insertCache == null || insertCache.cache.level() != level || insertCache.cache.context() != facing.getOpposite()) {
+                insertCache = new NeighborCache(level, hopper.getBlockPos().relative(facing), facing.getOpposite(), () -> !hopper.isRemoved());
+            }
+            return insertCache;
+        }
+
+        private NeighborCache getExtractCache(ServerLevel level) {
+            if (extractCache == null || extractCache.cache.level() != level) {
+                extractCache = new NeighborCache(level, hopper.getBlockPos().above(), Direction.DOWN, () -> !hopper.isRemoved());
+            }
+            return extractCache;
+        }
+    }
+
+    /**
+     * Caches the item handler of a neighboring block, together with the block entity it was queried from,
+     * so that transfers do not need to look up the block entity again.
+     */
+    private static final class NeighborCache {
+        private final BlockCapabilityCache<IItemHandler, @Nullable Direction> cache;
+        @Nullable
+        private Pair<IItemHandler, Object> cachedResult;
+
+        private NeighborCache(ServerLevel level, BlockPos pos, Direction side, BooleanSupplier isValid) {
+            this.cache = BlockCapabilityCache.create(Capabilities.ItemHandler.BLOCK, level, pos, side, isValid, () -> cachedResult = null);
+        }
+
+        private Pair<IItemHandler, Object> getResult(IItemHandler blockCap) {
+            // The invalidation listener only runs at the end of the tick, so also check that the handler and block entity are still current.
+            var result = cachedResult;
+            if (result == null || result.getKey() != blockCap || result.getValue() instanceof BlockEntity blockEntity && blockEntity.isRemoved()) {
+                result = ImmutablePair.of(blockCap, cache.level().getBlockEntity(cache.pos()));
+                cachedResult = result;
+            }
+            return result;
+        }
+    }
 }
@@ -16,13 +16,17 @@ import net.neoforged.neoforge.network.payload.AdvancedAddEntityPayload;
 import net.neoforged.neoforge.network.payload.AdvancedContainerSetDataPayload;
 import net.neoforged.neoforge.network.payload.AdvancedOpenScreenPayload;
 import net.neoforged.neoforge.network.payload.AuxiliaryLightDataPayload;
+import net.neoforged.neoforge.network.payload.AuxiliaryLightDeltaPayload;
 import net.neoforged.neoforge.network.payload.ConfigFilePayload;
 import net.neoforged.neoforge.network.payload.FrozenRegistryPayload;
 import net.neoforged.neoforge.network.payload.FrozenRegistrySyncCompletedPayload;
 import net.neoforged.neoforge.network.payload.FrozenRegistrySyncStartPayload;
 import net.neoforged.neoforge.network.payload.KnownRegistryDataMapsPayload;
 import net.neoforged.neoforge.network.payload.KnownRegistryDataMapsReplyPayload;
+import net.neoforged.neoforge.network.payload.NetworkPayloadIdsPayload;
 import net.neoforged.neoforge.network.payload.RegistryDataMapSyncPayload;
+import net.neoforged.neoforge.network.registration.HandlerThread;
+import net.neoforged.neoforge.network.registration.NetworkRegistry;
 import net.neoforged.neoforge.network.registration.PayloadRegistrar;
 import net.neoforged.neoforge.registries.ClientRegistryManager;
 import net.neoforged.neoforge.registries.RegistryManager;
@@ -33,7 +37,7 @@ import org.jetbrains.annotations.ApiStatus;
 public class NetworkInitialization {
     @SubscribeEvent
     private static void register(final RegisterPayloadHandlersEvent event) {
-        final PayloadRegistrar registrar = event.registrar("1") // Update this version if the payload semantics change.
+        final PayloadRegistrar registrar = event.registrar("2") // Update this version if the payload semantics change.
                 .optional();
         registrar
                 .configurationToClient(
@@ -72,6 +76,10 @@ public class NetworkInitialization {
                         AuxiliaryLightDataPayload.TYPE,
                         AuxiliaryLightDataPayload.STREAM_CODEC,
                         ClientPayloadHandler::handle)
+                .playToClient(
+                        AuxiliaryLightDeltaPayload.TYPE,
+                        AuxiliaryLightDeltaPayload.STREAM_CODEC,
+                        ClientPayloadHandler::handle)
                 .playToClient(
                         RegistryDataMapSyncPayload.TYPE,
                         RegistryDataMapSyncPayload.STREAM_CODEC,
@@ -79,5 +87,14 @@ public class NetworkInitialization {
                 .playToClient(AdvancedContainerSetDataPayload.TYPE,
                         AdvancedContainerSetDataPayload.STREAM_CODEC,
                         ClientPayloadHandler::handle);
+
+        // The compact payload ids have to be known before the connection enters the play phase
+        event.registrar("1")
+                .optional()
+                .executesOn(HandlerThread.NETWORK)
+                .configurationToClient(
+                        NetworkPayloadIdsPayload.TYPE,
+                        NetworkPayloadIdsPayload.STREAM_CODEC,
+                        NetworkRegistry::handlePayloadIds);
     }
 }
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import net.minecraft.network.Connection;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.BundlePacket;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
+import net.minecraft.network.protocol.common.ServerboundCustomPayloadPacket;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.filters.SharedPayloadPacket;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+import net.neoforged.neoforge.network.handling.IPayloadHandler;
+import net.neoforged.neoforge.network.handling.MainThreadPayloadHandler;
+import net.neoforged.neoforge.network.handling.WorkerPayloadHandler;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Traffic metrics of custom payload channels, collected while {@linkplain #setEnabled(boolean) enabled}.
+ * <p>
+ * For each channel, this counts the payloads and bytes that were received and sent, the packets that had to be split,
+ * and keeps histograms of the time spent encoding, decoding and handling the payloads.
+ * The same counters are kept per connection. Sent payloads are counted when they are handed to a connection, for remote and
+ * memory connections alike. Their bytes are counted once the packet splitter encoded them, so only remote connections of
+ * NeoForge peers count sent bytes, including those of split packets.
+ * <p>
+ * While enabled, payloads and handlers are also reported as the JFR events {@code neoforge.NetworkPayload} and {@code neoforge.PayloadHandled}.
+ * While disabled, the instrumented paths only read a volatile flag, and handlers are not wrapped.
+ * <p>
+ * Collection starts enabled if the system property {@code neoforge.network.metrics} is {@code true}.
+ */
+@ApiStatus.Internal
+public final class NetworkMetrics {
+    private static final AttributeKey<Map<ResourceLocation, Counters>> ATTRIBUTE_METRICS = AttributeKey.valueOf("neoforge:network_metrics");
+    private static final Map<ResourceLocation, ChannelMetrics> CHANNELS = new ConcurrentHashMap<>();
+    /**
+     * The last payload decoded on this thread and its size, until the payload is handled.
+     * Payloads that are handled on another thread take their size with them, see {@link #keepDecodedSize(Runnable)}.
+     */
+    private static final ThreadLocal<DecodedPayload> LAST_DECODED = new ThreadLocal<>();
+
+    private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("neoforge.network.metrics", "false"));
+
+    private NetworkMetrics() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        NetworkMetrics.enabled = enabled;
+    }
+
+    /**
+     * Forgets the metrics of all channels.
+     * Metrics of connections are only forgotten when the connection closes.
+     */
+    public static void reset() {
+        CHANNELS.clear();
+    }
+
+    /**
+     * {@return the metrics of all channels that saw traffic since the last reset}
+     */
+    public static Map<ResourceLocation, ChannelMetrics> getChannels() {
+        return CHANNELS;
+    }
+
+    /**
+     * {@return the counters of all channels that saw traffic on the given connection}
+     */
+    public static Map<ResourceLocation, Counters> getConnection(Connection connection) {
+        Map<ResourceLocation, Counters> metrics = connection.channel().attr(ATTRIBUTE_METRICS).get();
+        return metrics != null ? metrics : Map.of();
+    }
+
+    private static ChannelMetrics channel(ResourceLocation id) {
+        return CHANNELS.computeIfAbsent(id, k -> new ChannelMetrics());
+    }
+
+    private static Counters connection(Channel channel, ResourceLocation id) {
+        Map<ResourceLocation, Counters> metrics = channel.attr(ATTRIBUTE_METRICS).get();
+        if (metrics == null) {
+            metrics = new ConcurrentHashMap<>();
+            Map<ResourceLocation, Counters> existing = channel.attr(ATTRIBUTE_METRICS).setIfAbsent(metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics.computeIfAbsent(id, k -> new Counters());
+    }
+
+    /**
+     * {@return the id of the payload sent by the given packet, or null if it is not a custom payload packet}
+     */
+    @Nullable
+    public static ResourceLocation getPayloadId(Packet<?> packet) {
+        if (packet instanceof ClientboundCustomPayloadPacket customPayloadPacket) {
+            return customPayloadPacket.payload().type().id();
+        } else if (packet instanceof SharedPayloadPacket sharedPayloadPacket) {
+            return sharedPayloadPacket.packet().payload().type().id();
+        } else if (packet instanceof ServerboundCustomPayloadPacket customPayloadPacket) {
+            return customPayloadPacket.payload().type().id();
+        }
+        return null;
+    }
+
+    /**
+     * Encodes a payload, measuring the time it takes.
+     */
+    public static <B extends ByteBuf, T> void encode(StreamCodec<? super B, T> codec, B buf, T payload, ResourceLocation id) {
+        long start = System.nanoTime();
+        codec.encode(buf, payload);
+        channel(id).encodeNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Decodes a payload, measuring the time and bytes it takes.
+     */
+    public static <B extends ByteBuf> CustomPacketPayload decode(StreamCodec<? super B, ? extends CustomPacketPayload> codec, B buf, ResourceLocation id) {
+        int startIndex = buf.readerIndex();
+        long start = System.nanoTime();
+        CustomPacketPayload payload = codec.decode(buf);
+        channel(id).decodeNanos.record(System.nanoTime() - start);
+
+        LAST_DECODED.set(new DecodedPayload(payload, buf.readerIndex() - startIndex));
+        return payload;
+    }
+
+    /**
+     * {@return a task that runs the given handler with the size of the payload that was last decoded on this thread}
+     * Used when a payload is decoded on the network thread, but handled on another thread.
+     */
+    public static Runnable keepDecodedSize(Runnable handler) {
+        DecodedPayload decoded = LAST_DECODED.get();
+        if (decoded == null) {
+            return handler;
+        }
+        LAST_DECODED.remove();
+        return () -> {
+            LAST_DECODED.set(decoded);
+            try {
+                handler.run();
+            } finally {
+                LAST_DECODED.remove();
+            }
+        };
+    }
+
+    /**
+     * Records the custom payloads of a packet that is handed to the given connection, including the payloads of bundles.
+     * This is the only place that counts sent payloads.
+     */
+    public static void onSent(Connection connection, Packet<?> packet) {
+        if (packet instanceof BundlePacket<?> bundlePacket) {
+            for (Packet<?> subPacket : bundlePacket.subPackets()) {
+                onSent(connection, subPacket);
+            }
+            return;
+        }
+
+        ResourceLocation id = getPayloadId(packet);
+        if (id == null) {
+            return;
+        }
+        channel(id).recordOut();
+        connection(connection.channel(), id).recordOut();
+        if (connection.isMemoryConnection()) {
+            // Payloads sent through memory connections are never encoded, so they do not have a size
+            commitPayloadEvent(id, "out", 0);
+        }
+    }
+
+    /**
+     * Records the size of an encoded payload that is handed to the compressor of the given channel.
+     * The payload itself was already counted when it was {@linkplain #onSent(Connection, Packet) sent}.
+     *
+     * @param split Whether the packet is split into multiple parts.
+     */
+    public static void onEncoded(Channel channel, ResourceLocation id, int bytes, boolean split) {
+        ChannelMetrics metrics = channel(id);
+        metrics.bytesOut.add(bytes);
+        if (split) {
+            metrics.splitPackets.increment();
+        }
+        connection(channel, id).bytesOut.add(bytes);
+        commitPayloadEvent(id, "out", bytes);
+    }
+
+    /**
+     * Records a modded payload that is about to be handled.
+     * Its size is known if it was the last payload decoded on the current thread, or was handed to it with {@link #keepDecodedSize(Runnable)}.
+     * Payloads that were not decoded, or decoded together with others in a bundle, are counted without a size.
+     */
+    public static void onReceived(Connection connection, ResourceLocation id, CustomPacketPayload payload) {
+        DecodedPayload decoded = LAST_DECODED.get();
+        int bytes = 0;
+        if (decoded != null && decoded.payload() == payload) {
+            bytes = decoded.bytes();
+            LAST_DECODED.remove();
+        }
+        channel(id).recordIn(bytes);
+        connection(connection.channel(), id).recordIn(bytes);
+        commitPayloadEvent(id, "in", bytes);
+    }
+
+    /**
+     * Runs a payload handler while metrics are enabled, measuring the time it takes on the thread that it runs on.
+     * Handlers that run on the main thread or the payload workers are only wrapped here, so that they are measured there.
+     */
+    public static <T extends CustomPacketPayload> void handle(IPayloadHandler<T> handler, T payload, IPayloadContext context) {
+        if (handler instanceof MainThreadPayloadHandler<T> mainThreadHandler) {
+            new MainThreadPayloadHandler<T>((p, c) -> measure(mainThreadHandler.handler(), p, c)).handle(payload, context);
+        } else if (handler instanceof WorkerPayloadHandler<T> workerHandler) {
+            new WorkerPayloadHandler<T>((p, c) -> measure(workerHandler.handler(), p, c)).handle(payload, context);
+        } else {
+            measure(handler, payload, context);
+        }
+    }
+
+    private static <T extends CustomPacketPayload> void measure(IPayloadHandler<T> handler, T payload, IPayloadContext context) {
+        PayloadHandledEvent event = new PayloadHandledEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            handler.handle(payload, context);
+        } finally {
+            channel(payload.type().id()).handleNanos.record(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.channel = payload.type().id().toString();
+                event.commit();
+            }
+        }
+    }
+
+    private static void commitPayloadEvent(ResourceLocation id, String direction, int bytes) {
+        NetworkPayloadEvent event = new NetworkPayloadEvent();
+        if (event.shouldCommit()) {
+            event.channel = id.toString();
+            event.direction = direction;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    private record DecodedPayload(CustomPacketPayload payload, int bytes) {}
+
+    /**
+     * Payload and byte counters of a channel.
+     */
+    public static class Counters {
+        private final LongAdder packetsIn = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder packetsOut = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+
+        private void recordIn(int bytes) {
+            packetsIn.increment();
+            bytesIn.add(bytes);
+        }
+
+        private void recordOut() {
+            packetsOut.increment();
+        }
+
+        public long packetsIn() {
+            return packetsIn.sum();
+        }
+
+        public long bytesIn() {
+            return bytesIn.sum();
+        }
+
+        public long packetsOut() {
+            return packetsOut.sum();
+        }
+
+        public long bytesOut() {
+            return bytesOut.sum();
+        }
+
+        public long totalBytes() {
+            return bytesIn() + bytesOut();
+        }
+    }
+
+    /**
+     * Counters and latency histograms of a channel.
+     */
+    public static final class ChannelMetrics extends Counters {
+        private final LongAdder splitPackets = new LongAdder();
+        private final LatencyHistogram encodeNanos = new LatencyHistogram();
+        private final LatencyHistogram decodeNanos = new LatencyHistogram();
+        private final LatencyHistogram handleNanos = new LatencyHistogram();
+
+        public long splitPackets() {
+            return splitPackets.sum();
+        }
+
+        public LatencyHistogram encodeNanos() {
+            return encodeNanos;
+        }
+
+        public LatencyHistogram decodeNanos() {
+            return decodeNanos;
+        }
+
+        public LatencyHistogram handleNanos() {
+            return handleNanos;
+        }
+    }
+
+    /**
+     * A histogram of durations in nanoseconds, with one bucket per power of two.
+     */
+    public static final class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos | 1));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long meanNanos() {
+            long count = count();
+            return count == 0 ? 0 : totalNanos.sum() / count;
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * {@return an upper bound of the given percentile, in nanoseconds}
+         *
+         * @param percentile The percentile, between 0 and 1.
+         */
+        public long percentileNanos(double percentile) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < Long.SIZE; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return i == Long.SIZE - 1 ? Long.MAX_VALUE : Math.min((1L << (i + 1)) - 1, maxNanos());
+                }
+            }
+            return maxNanos();
+        }
+    }
+
+    @Name("neoforge.NetworkPayload")
+    @Label("Network Payload")
+    @Category({ "NeoForge", "Network" })
+    @StackTrace(false)
+    static final class NetworkPayloadEvent extends Event {
+        @Label("Channel")
+        String channel;
+        @Label("Direction")
+        String direction;
+        @Label("Size")
+        @DataAmount
+        int bytes;
+    }
+
+    @Name("neoforge.PayloadHandled")
+    @Label("Payload Handled")
+    @Category({ "NeoForge", "Network" })
+    @StackTrace(false)
+    static final class PayloadHandledEvent extends Event {
+        @Label("Channel")
+        String channel;
+    }
+}
@@ -6,16 +6,28 @@
 package net.neoforged.neoforge.network;
 
 import com.google.common.base.Preconditions;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelPipeline;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ClientPacketListener;
+import net.minecraft.network.Connection;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.HandlerNames;
+import net.minecraft.network.PacketEncoder;
+import net.minecraft.network.codec.StreamCodec;
 import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.PacketFlow;
 import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
 import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.minecraft.network.protocol.game.ClientGamePacketListener;
 import net.minecraft.network.protocol.game.ClientboundBundlePacket;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerChunkCache;
 import net.minecraft.server.level.ServerLevel;
@@ -23,6 +35,12 @@ import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.level.ChunkPos;
 import net.neoforged.fml.loading.FMLEnvironment;
+import net.neoforged.neoforge.network.connection.ConnectionType;
+import net.neoforged.neoforge.network.filters.GenericPacketSplitter;
+import net.neoforged.neoforge.network.filters.SharedPayloadPacket;
+import net.neoforged.neoforge.network.registration.NetworkChannel;
+import net.neoforged.neoforge.network.registration.NetworkPayloadIds;
+import net.neoforged.neoforge.network.registration.NetworkRegistry;
 import net.neoforged.neoforge.server.ServerLifecycleHooks;
 import org.jetbrains.annotations.Nullable;
 
@@ -30,6 +48,12 @@ import org.jetbrains.annotations.Nullable;
  * Means to distribute packets in various ways
  */
 public final class PacketDistributor {
+    /**
+     * Whether payloads that are sent to multiple players are encoded once for all of them, instead of once per connection.
+     */
+    private static final boolean SHARED_BROADCAST_ENCODING = !Boolean.parseBoolean(System.getProperty("neoforge.network.encodePerRecipient", "false"));
+    private static final int MIN_SHARED_RECIPIENTS = 2;
+
     private PacketDistributor() {}
 
     /**
@@ -55,7 +79,7 @@ public final class PacketDistributor {
      * Send the given payload(s) to all players in the given dimension
      */
     public static void sendToPlayersInDimension(ServerLevel level, CustomPacketPayload payload, CustomPacketPayload... payloads) {
-        level.getServer().getPlayerList().broadcastAll(makeClientboundPacket(payload, payloads), level.dimension());
+        broadcast(level.players(), makeClientboundPacket(payload, payloads));
     }
 
     /**
@@ -71,8 +95,19 @@ public final class PacketDistributor {
             double radius,
             CustomPacketPayload payload,
             CustomPacketPayload... payloads) {
-        Packet<?> packet = makeClientboundPacket(payload, payloads);
-        level.getServer().getPlayerList().broadcast(excluded, x, y, z, radius, level.dimension(), packet);
+        // Same selection as PlayerList#broadcast
+        List<ServerPlayer> players = new ArrayList<>();
+        for (ServerPlayer player : level.players()) {
+            if (player != excluded) {
+                double dx = x - player.getX();
+                double dy = y - player.getY();
+                double dz = z - player.getZ();
+                if (dx * dx + dy * dy + dz * dz < radius * radius) {
+                    players.add(player);
+                }
+            }
+        }
+        broadcast(players, makeClientboundPacket(payload, payloads));
     }
 
     /**
@@ -80,7 +115,7 @@ public final class PacketDistributor {
      */
     public static void sendToAllPlayers(CustomPacketPayload payload, CustomPacketPayload... payloads) {
         MinecraftServer server = Objects.requireNonNull(ServerLifecycleHooks.getCurrentServer(), "Cannot send clientbound payloads on the client");
-        server.getPlayerList().broadcastAll(makeClientboundPacket(payload, payloads));
+        broadcast(server.getPlayerList().getPlayers(), makeClientboundPacket(payload, payloads));
     }
 
     /**
@@ -109,12 +144,104 @@ public final class PacketDistributor {
      * Send the given payload(s) to all players tracking the chunk at the given position in the given level
      */
     public static void sendToPlayersTrackingChunk(ServerLevel level, ChunkPos chunkPos, CustomPacketPayload payload, CustomPacketPayload... payloads) {
-        Packet<?> packet = makeClientboundPacket(payload, payloads);
-        for (ServerPlayer player : level.getChunkSource().chunkMap.getPlayers(chunkPos, false)) {
-            player.connection.send(packet);
+        broadcast(level.getChunkSource().chunkMap.getPlayers(chunkPos, false), makeClientboundPacket(payload, payloads));
+    }
+
+    /**
+     * Sends the packet to all given players.
+     * <p>
+     * A single payload is encoded once for all recipients that share an encoding, which are recipients with the same
+     * {@linkplain ConnectionType connection type}, negotiated version and {@linkplain NetworkPayloadIds compact id} of the payload's channel.
+     * The encoded bytes are shared between the recipients, compression and encryption still happen per connection.
+     * Recipients that cannot receive pre-encoded packets, and bundles, are sent the packet as usual.
+     * </p>
+     */
+    private static void broadcast(List<ServerPlayer> players, Packet<?> packet) {
+        if (!SHARED_BROADCAST_ENCODING || players.size() < MIN_SHARED_RECIPIENTS || !(packet instanceof ClientboundCustomPayloadPacket payloadPacket)) {
+            for (ServerPlayer player : players) {
+                player.connection.send(packet);
+            }
+            return;
+        }
+
+        ResourceLocation id = payloadPacket.payload().type().id();
+        Map<SharedEncoding, List<ServerPlayer>> groups = new HashMap<>();
+        for (ServerPlayer player : players) {
+            Connection connection = player.connection.getConnection();
+            if (canReceiveEncoded(connection)) {
+                NetworkPayloadIds payloadIds = NetworkRegistry.getPayloadIds(connection);
+                SharedEncoding encoding = new SharedEncoding(
+                        NetworkRegistry.getConnectionType(connection),
+                        NetworkRegistry.getNegotiatedChannel(connection, ConnectionProtocol.PLAY, id),
+                        payloadIds != null ? payloadIds.getId(id) : -1);
+                groups.computeIfAbsent(encoding, k -> new ArrayList<>()).add(player);
+            } else {
+                player.connection.send(packet);
+            }
         }
+
+        for (List<ServerPlayer> group : groups.values()) {
+            ByteBuf encoded = group.size() < MIN_SHARED_RECIPIENTS ? null : encode(group.getFirst().connection.getConnection(), payloadPacket);
+            if (encoded == null) {
+                for (ServerPlayer player : group) {
+                    player.connection.send(packet);
+                }
+                continue;
+            }
+
+            // Each recipient owns one reference, so the encoded buffer is released once the last recipient wrote it.
+            // The buffer is on the heap, so a reference that is lost because sending failed only leaves it to the garbage collector.
+            SharedPayloadPacket sharedPacket = new SharedPayloadPacket(payloadPacket, ConnectionProtocol.PLAY, encoded);
+            try {
+                for (ServerPlayer player : group) {
+                    sharedPacket.retain();
+                    player.connection.send(sharedPacket);
+                }
+            } finally {
+                sharedPacket.release();
+            }
+        }
+    }
+
+    /**
+     * Whether the connection is a remote connection in the game phase, with a {@link GenericPacketSplitter} that writes {@link SharedPayloadPacket}s.
+     */
+    private static boolean canReceiveEncoded(Connection connection) {
+        if (connection.isMemoryConnection()) {
+            return false;
+        }
+        ChannelPipeline pipeline = connection.channel().pipeline();
+        return pipeline.get(GenericPacketSplitter.CHANNEL_HANDLER_NAME) != null
+                && pipeline.get(HandlerNames.ENCODER) instanceof PacketEncoder<?> encoder
+                && encoder.getProtocolInfo().id() == ConnectionProtocol.PLAY
+                && encoder.getProtocolInfo().flow() == PacketFlow.CLIENTBOUND;
     }
 
+    /**
+     * Encodes the packet with the encoder of the given connection.
+     *
+     * @return the encoded packet in a heap buffer owned by the caller, or null if it could not be encoded, in which case it is sent as usual so that the error is reported per connection
+     */
+    @Nullable
+    private static ByteBuf encode(Connection connection, ClientboundCustomPayloadPacket packet) {
+        if (!(connection.channel().pipeline().get(HandlerNames.ENCODER) instanceof PacketEncoder<?> encoder)) {
+            return null;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" }) // Eclipse requires the extra rawtype cast first.
+        var codec = (StreamCodec<ByteBuf, Packet<?>>) (StreamCodec) encoder.getProtocolInfo().codec();
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            codec.encode(buf, packet);
+            return buf;
+        } catch (Exception e) {
+            buf.release();
+            return null;
+        }
+    }
+
+    private record SharedEncoding(ConnectionType connectionType, @Nullable NetworkChannel channel, int compactId) {}
+
     private static Packet<?> makeClientboundPacket(CustomPacketPayload payload, CustomPacketPayload... payloads) {
         if (payloads.length > 0) {
             final List<Packet<? super ClientGamePacketListener>> packets = new ArrayList<>();
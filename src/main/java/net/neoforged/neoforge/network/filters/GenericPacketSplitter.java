@@ -6,32 +6,39 @@
 package net.neoforged.neoforge.network.filters;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
-import java.util.ArrayList;
 import java.util.List;
 import net.minecraft.network.CompressionDecoder;
 import net.minecraft.network.Connection;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.HandlerNames;
 import net.minecraft.network.PacketEncoder;
+import net.minecraft.network.VarInt;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.codec.StreamCodec;
 import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.PacketFlow;
 import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
 import net.minecraft.network.protocol.common.ServerboundCustomPayloadPacket;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.profiling.jfr.JvmProfiler;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.common.NeoForgeConfig;
 import net.neoforged.neoforge.internal.versions.neoforge.NeoForgeVersion;
+import net.neoforged.neoforge.network.NetworkMetrics;
 import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
 import net.neoforged.neoforge.network.handling.IPayloadContext;
 import net.neoforged.neoforge.network.payload.SplitPacketPayload;
+import net.neoforged.neoforge.network.registration.HandlerThread;
 import net.neoforged.neoforge.network.registration.NetworkRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A generic packet splitter that can be used to split packets that are too large to be sent in one go.
@@ -55,12 +62,21 @@ public class GenericPacketSplitter extends MessageToMessageEncoder<Packet<?>> im
     private static final byte STATE_FIRST = 1;
     private static final byte STATE_LAST = 2;
 
+    private static final int MAX_VARINT_SIZE = 5;
+
+    /**
+     * Whether outbound packets are encoded once and handed downstream as bytes, instead of being encoded once to
+     * measure them and then a second time by the vanilla encoder.
+     */
+    private static final boolean SINGLE_PASS_ENCODING = !Boolean.parseBoolean(System.getProperty("neoforge.splitter.twoPassEncoding", "false"));
+
     public static final String CHANNEL_HANDLER_NAME = "neoforge:splitter";
 
     @SubscribeEvent
     private static void register(final RegisterPayloadHandlersEvent event) {
         event.registrar("1")
                 .optional()
+                .executesOn(HandlerThread.NETWORK)
                 .commonBidirectional(SplitPacketPayload.TYPE, SplitPacketPayload.STREAM_CODEC, GenericPacketSplitter::handle);
     }
 
@@ -68,6 +84,7 @@ public class GenericPacketSplitter extends MessageToMessageEncoder<Packet<?>> im
         if (context.channelHandlerContext().pipeline().get(CHANNEL_HANDLER_NAME) instanceof GenericPacketSplitter splitter) {
             splitter.receivedPacket(payload, context);
         } else {
+            payload.payload().release();
             LOGGER.error("Received split packet without a splitter");
             context.disconnect(Component.translatable("neoforge.network.packet_splitter.unknown"));
         }
@@ -75,6 +92,12 @@ public class GenericPacketSplitter extends MessageToMessageEncoder<Packet<?>> im
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Packet<?> packet, List<Object> out) throws Exception {
+        // The shared packet itself is released by MessageToMessageEncoder once it was encoded
+        SharedPayloadPacket shared = packet instanceof SharedPayloadPacket sharedPacket ? sharedPacket : null;
+        if (shared != null) {
+            packet = shared.packet();
+        }
+
         if (packet instanceof ClientboundCustomPayloadPacket clientboundCustomPayloadPacket && clientboundCustomPayloadPacket.payload() instanceof SplitPacketPayload) {
             // Don't split our own split packets
             out.add(packet);
@@ -97,17 +120,126 @@ public class GenericPacketSplitter extends MessageToMessageEncoder<Packet<?>> im
         // If there IS a compressor, use the NON-compressed limit since the compressor will compress after us!
         var sizeLimits = hasCompressor ? uncompressedSizeLimits : compressedSizeLimits;
 
+        @SuppressWarnings({ "unchecked", "rawtypes" }) // Eclipse requires the extra rawtype cast first.
+        var codec = (StreamCodec<ByteBuf, Packet<?>>) (StreamCodec) encoder.getProtocolInfo().codec();
+
+        // If the connection switched protocols since the packet was encoded, it is encoded again below
+        if (shared != null && shared.protocol() == encoder.getProtocolInfo().id()) {
+            // Every connection gets its own duplicate with its own indices, which keeps the shared buffer alive until it is written
+            writeEncoded(ctx, encoder, codec, packet, shared.encoded().retainedDuplicate(), sizeLimits, out);
+            return;
+        }
+
+        // Terminal packets have to pass through the vanilla encoder, since it swaps the protocol after writing them.
+        if (SINGLE_PASS_ENCODING && !packet.isTerminal()) {
+            encodeSinglePass(ctx, encoder, codec, packet, sizeLimits, out);
+        } else {
+            encodeTwoPass(ctx, encoder, codec, packet, sizeLimits, out);
+        }
+    }
+
+    /**
+     * Encodes the packet exactly once into a pooled buffer and hands the encoded bytes downstream.
+     * <p>
+     * The vanilla encoder passes {@link ByteBuf}s through untouched, so the compressor and frame prepender
+     * receive the bytes directly. Oversized packets are split into framed {@link SplitPacketPayload} packets
+     * whose bodies are retained slices of the encoded buffer, so the packet data itself is never copied.
+     * </p>
+     */
+    private static void encodeSinglePass(ChannelHandlerContext ctx, PacketEncoder<?> encoder, StreamCodec<ByteBuf, Packet<?>> codec, Packet<?> packet, SizeLimits sizeLimits, List<Object> out) {
+        ByteBuf buf = ctx.alloc().buffer();
+        try {
+            codec.encode(buf, packet);
+        } catch (Throwable t) {
+            // Let the vanilla encoder encode the packet again, so that it reports the error or skips the packet as it normally would
+            buf.release();
+            out.add(packet);
+            return;
+        }
+
+        writeEncoded(ctx, encoder, codec, packet, buf, sizeLimits, out);
+    }
+
+    /**
+     * Hands an encoded packet downstream, splitting it if it is too large.
+     * Ownership of the buffer is transferred to this method.
+     */
+    private static void writeEncoded(ChannelHandlerContext ctx, PacketEncoder<?> encoder, StreamCodec<ByteBuf, Packet<?>> codec, Packet<?> packet, ByteBuf buf, SizeLimits sizeLimits, List<Object> out) {
+        final int size = buf.readableBytes();
+        JvmProfiler.INSTANCE.onPacketSent(encoder.getProtocolInfo().id(), packet.type(), ctx.channel().remoteAddress(), size);
+        recordEncoded(ctx, packet, size, size > sizeLimits.packet());
+        if (size <= sizeLimits.packet()) {
+            // Ownership of the buffer is transferred downstream
+            out.add(buf);
+            return;
+        }
+
+        ByteBuf prefix = ctx.alloc().buffer();
+        try {
+            writeSplitPacketPrefix(prefix, codec, encoder.getProtocolInfo().flow());
+
+            final int parts = (size + sizeLimits.part() - 1) / sizeLimits.part();
+            for (int part = 0; part < parts; part++) {
+                final int offset = part * sizeLimits.part();
+                final int partSize = Math.min(sizeLimits.part(), size - offset);
+
+                // The split payload is the last field of the packet, so the frame is the shared prefix followed by
+                // the length of the payload array, the state byte and the slice of the original packet.
+                ByteBuf header = ctx.alloc().buffer(prefix.readableBytes() + MAX_VARINT_SIZE + 1);
+                header.writeBytes(prefix, prefix.readerIndex(), prefix.readableBytes());
+                VarInt.write(header, partSize + 1);
+                header.writeByte(part == 0 ? STATE_FIRST : part == parts - 1 ? STATE_LAST : 0);
+
+                CompositeByteBuf frame = ctx.alloc().compositeBuffer(2);
+                frame.addComponents(true, header, buf.retainedSlice(buf.readerIndex() + offset, partSize));
+                out.add(frame);
+            }
+        } finally {
+            prefix.release();
+            buf.release();
+        }
+    }
+
+    /**
+     * Records the encoded size of a custom payload for the {@linkplain NetworkMetrics network metrics}.
+     * Split parts are never recorded, the packet they were split from is.
+     */
+    private static void recordEncoded(ChannelHandlerContext ctx, Packet<?> packet, int size, boolean split) {
+        if (NetworkMetrics.isEnabled()) {
+            ResourceLocation payloadId = NetworkMetrics.getPayloadId(packet);
+            if (payloadId != null) {
+                NetworkMetrics.onEncoded(ctx.channel(), payloadId, size, split);
+            }
+        }
+    }
+
+    /**
+     * Writes everything that precedes the payload array of a {@link SplitPacketPayload} packet for the given flow.
+     */
+    private static void writeSplitPacketPrefix(ByteBuf target, StreamCodec<ByteBuf, Packet<?>> codec, PacketFlow flow) {
+        codec.encode(target, createPacket(flow, Unpooled.EMPTY_BUFFER));
+        // Drop the length of the empty payload array, which is always encoded as a single zero byte
+        target.writerIndex(target.writerIndex() - 1);
+    }
+
+    /**
+     * Encodes the packet only to measure it, passing the original packet on to the vanilla encoder if it fits.
+     * <p>
+     * Used for terminal packets and when single-pass encoding is disabled.
+     * </p>
+     */
+    private static void encodeTwoPass(ChannelHandlerContext ctx, PacketEncoder<?> encoder, StreamCodec<ByteBuf, Packet<?>> codec, Packet<?> packet, SizeLimits sizeLimits, List<Object> out) {
         FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer());
         try {
-            @SuppressWarnings({ "unchecked", "rawtypes" }) // Eclipse requires the extra rawtype cast first.
-            var codec = (StreamCodec<ByteBuf, Packet<?>>) (StreamCodec) encoder.getProtocolInfo().codec();
             codec.encode(buf, packet);
             if (buf.readableBytes() <= sizeLimits.packet()) {
+                recordEncoded(ctx, packet, buf.readableBytes(), false);
                 out.add(packet);
                 return;
             }
 
             int parts = (int) Math.ceil(((double) buf.readableBytes()) / sizeLimits.part());
+            recordEncoded(ctx, packet, buf.readableBytes(), parts > 1);
             if (parts == 1) {
                 out.add(packet);
                 return;
@@ -115,51 +247,122 @@ public class GenericPacketSplitter extends MessageToMessageEncoder<Packet<?>> im
 
             final byte[] packetData = buf.array();
             for (int part = 0; part < parts; part++) {
-                final int partSize = Math.min(sizeLimits.part(), packetData.length - (part * sizeLimits.part()));
+                final int partSize = Math.min(sizeLimits.part(), buf.readableBytes() - (part * sizeLimits.part()));
                 final byte[] payloadSlice = new byte[partSize + 1];
 
                 byte prefix = part == 0 ? STATE_FIRST : part == parts - 1 ? STATE_LAST : 0;
                 payloadSlice[0] = prefix;
-                System.arraycopy(packetData, part * sizeLimits.part(), payloadSlice, 1, partSize);
+                System.arraycopy(packetData, buf.arrayOffset() + part * sizeLimits.part(), payloadSlice, 1, partSize);
 
-                out.add(createPacket(encoder.getProtocolInfo().flow(), payloadSlice));
+                out.add(createPacket(encoder.getProtocolInfo().flow(), Unpooled.wrappedBuffer(payloadSlice)));
             }
         } finally {
             buf.release();
         }
     }
 
-    private final List<byte[]> receivedBuffers = new ArrayList<>();
+    /**
+     * The parts of the split packet currently being received, or {@code null} if no split packet is in flight.
+     * Only ever accessed from the event loop of the connection.
+     */
+    @Nullable
+    private CompositeByteBuf receivedBuffers;
+    private long reassemblyStart;
+
+    private volatile long reassembledPackets;
+    private volatile long totalReassemblyNanos;
+    private volatile long maxReassemblyNanos;
+    private volatile int peakBytesInFlight;
 
     private void receivedPacket(SplitPacketPayload payload, IPayloadContext context) {
-        byte state = payload.payload()[0];
+        // We own the payload buffer from here on, it is either added to the reassembly buffer or released
+        ByteBuf data = payload.payload();
+        byte state = data.readByte(); // We cut of the initial byte here that indicates the state
         if (state == STATE_FIRST) {
-            if (!receivedBuffers.isEmpty()) {
+            if (receivedBuffers != null) {
                 LOGGER.warn("neoforge:split received out of order - inbound buffer not empty when receiving first");
-                receivedBuffers.clear();
+                releaseReceivedBuffers();
             }
         }
 
-        int contentSize = payload.payload().length - 1;
-        byte[] buffer = new byte[contentSize];
-        System.arraycopy(payload.payload(), 1, buffer, 0, contentSize); // We cut of the initial byte here that indicates the state
-        receivedBuffers.add(buffer);
+        if (receivedBuffers == null) {
+            // Never let the composite consolidate its components, since that would copy the whole packet
+            receivedBuffers = context.channelHandlerContext().alloc().compositeBuffer(Integer.MAX_VALUE);
+            reassemblyStart = System.nanoTime();
+        }
+
+        // The maximum amount of bytes of a split packet that may be buffered before the connection is dropped
+        final int maxBytesInFlight = NeoForgeConfig.COMMON.splitPacketMaxBytesInFlight.getAsInt();
+        final int bytesInFlight = receivedBuffers.readableBytes() + data.readableBytes();
+        if (bytesInFlight > maxBytesInFlight) {
+            LOGGER.error("Split packet exceeds the maximum of {} bytes in flight; disconnecting.", maxBytesInFlight);
+            data.release();
+            releaseReceivedBuffers();
+            context.disconnect(Component.translatable("neoforge.network.packet_splitter.too_large", maxBytesInFlight));
+            return;
+        }
+
+        receivedBuffers.addComponent(true, data);
+        if (bytesInFlight > peakBytesInFlight) {
+            peakBytesInFlight = bytesInFlight;
+        }
 
         if (state == STATE_LAST) {
-            final byte[][] buffers = receivedBuffers.toArray(new byte[0][]);
-            FriendlyByteBuf full = new FriendlyByteBuf(Unpooled.wrappedBuffer(buffers));
+            final CompositeByteBuf full = receivedBuffers;
+            receivedBuffers = null;
 
             try {
                 Packet<?> packet = context.connection().getInboundProtocol().codec().decode(full);
-                context.enqueueWork(() -> context.handle(packet));
+                // The packet is handled on the main thread, so it takes the size it was decoded with along
+                context.enqueueWork(NetworkMetrics.keepDecodedSize(() -> context.handle(packet)));
             } finally {
-                receivedBuffers.clear();
                 full.release();
+
+                final long elapsed = System.nanoTime() - reassemblyStart;
+                reassembledPackets++;
+                totalReassemblyNanos += elapsed;
+                if (elapsed > maxReassemblyNanos) {
+                    maxReassemblyNanos = elapsed;
+                }
             }
         }
     }
 
-    private static Packet<?> createPacket(PacketFlow flow, byte[] payload) {
+    private void releaseReceivedBuffers() {
+        if (receivedBuffers != null) {
+            receivedBuffers.release();
+            receivedBuffers = null;
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        releaseReceivedBuffers();
+        super.handlerRemoved(ctx);
+    }
+
+    /**
+     * {@return the reassembly metrics of the given connection, or {@code null} if the connection does not use a packet splitter}
+     */
+    @Nullable
+    public static ReassemblyMetrics getReassemblyMetrics(Connection connection) {
+        if (connection.channel().pipeline().get(CHANNEL_HANDLER_NAME) instanceof GenericPacketSplitter splitter) {
+            return new ReassemblyMetrics(splitter.reassembledPackets, splitter.totalReassemblyNanos, splitter.maxReassemblyNanos, splitter.peakBytesInFlight);
+        }
+        return null;
+    }
+
+    /**
+     * Metrics about the split packets received on a single connection.
+     *
+     * @param packets           The amount of split packets that were fully reassembled.
+     * @param totalNanos        The total time spent between receiving the first and the last part of each packet.
+     * @param maxNanos          The longest time spent between receiving the first and the last part of a packet.
+     * @param peakBytesInFlight The highest amount of bytes that were buffered for a single split packet.
+     */
+    public record ReassemblyMetrics(long packets, long totalNanos, long maxNanos, int peakBytesInFlight) {}
+
+    private static Packet<?> createPacket(PacketFlow flow, ByteBuf payload) {
         return switch (flow) {
             case SERVERBOUND -> new ServerboundCustomPayloadPacket(new SplitPacketPayload(payload));
             case CLIENTBOUND -> new ClientboundCustomPayloadPacket(new SplitPacketPayload(payload));
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.filters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.PacketType;
+import net.minecraft.network.protocol.common.ClientCommonPacketListener;
+import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * A custom payload packet that was already encoded once, so that it can be sent to many connections without encoding it for each of them.
+ * <p>
+ * The {@link GenericPacketSplitter} of each connection hands a duplicate of the shared buffer downstream,
+ * so compression and encryption still happen per connection. Connections that left the protocol the bytes
+ * were encoded for encode the wrapped packet again as usual instead.
+ * </p>
+ * <p>
+ * Every connection the packet is sent to owns one reference. The splitter releases it once the packet is encoded,
+ * and Netty releases it if the write fails, so the shared buffer is released after the last recipient wrote it.
+ * The packet can only be written by connections with a splitter, see {@link net.neoforged.neoforge.network.PacketDistributor}.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class SharedPayloadPacket extends AbstractReferenceCounted implements Packet<ClientCommonPacketListener> {
+    private final ClientboundCustomPayloadPacket packet;
+    private final ConnectionProtocol protocol;
+    private final ByteBuf encoded;
+
+    /**
+     * @param packet   The packet that was encoded.
+     * @param protocol The protocol the packet was encoded for.
+     * @param encoded  The encoded packet, including its packet id. Ownership of the buffer is transferred to the new packet.
+     */
+    public SharedPayloadPacket(ClientboundCustomPayloadPacket packet, ConnectionProtocol protocol, ByteBuf encoded) {
+        this.packet = packet;
+        this.protocol = protocol;
+        this.encoded = encoded;
+    }
+
+    /**
+     * {@return the packet that was encoded}
+     */
+    public ClientboundCustomPayloadPacket packet() {
+        return packet;
+    }
+
+    /**
+     * {@return the protocol the packet was encoded for}
+     */
+    public ConnectionProtocol protocol() {
+        return protocol;
+    }
+
+    /**
+     * {@return the encoded packet, including its packet id}
+     * The buffer must not be modified, since it is shared by all recipients.
+     */
+    public ByteBuf encoded() {
+        return encoded;
+    }
+
+    @Override
+    public PacketType<? extends Packet<ClientCommonPacketListener>> type() {
+        return packet.type();
+    }
+
+    @Override
+    public void handle(ClientCommonPacketListener listener) {
+        packet.handle(listener);
+    }
+
+    @Override
+    public boolean isSkippable() {
+        return packet.isSkippable();
+    }
+
+    @Override
+    protected void deallocate() {
+        encoded.release();
+    }
+
+    @Override
+    public SharedPayloadPacket touch(Object hint) {
+        encoded.touch(hint);
+        return this;
+    }
+}
@@ -32,6 +32,7 @@ import net.neoforged.neoforge.network.payload.AdvancedAddEntityPayload;
 import net.neoforged.neoforge.network.payload.AdvancedContainerSetDataPayload;
 import net.neoforged.neoforge.network.payload.AdvancedOpenScreenPayload;
 import net.neoforged.neoforge.network.payload.AuxiliaryLightDataPayload;
+import net.neoforged.neoforge.network.payload.AuxiliaryLightDeltaPayload;
 import net.neoforged.neoforge.network.payload.ConfigFilePayload;
 import net.neoforged.neoforge.network.payload.FrozenRegistryPayload;
 import net.neoforged.neoforge.network.payload.FrozenRegistrySyncCompletedPayload;
@@ -128,7 +129,21 @@ public final class ClientPayloadHandler {
 
             AuxiliaryLightManager lightManager = mc.level.getAuxLightManager(msg.pos());
             if (lightManager instanceof LevelChunkAuxiliaryLightManager manager) {
-                manager.handleLightDataSync(msg.entries());
+                manager.handleLightDataSync(msg.sections());
+            }
+        } catch (Throwable t) {
+            context.disconnect(Component.translatable("neoforge.network.aux_light_data.failed", msg.pos().toString(), t.getMessage()));
+        }
+    }
+
+    public static void handle(AuxiliaryLightDeltaPayload msg, IPayloadContext context) {
+        try {
+            Minecraft mc = Minecraft.getInstance();
+            if (mc.level == null) return;
+
+            AuxiliaryLightManager lightManager = mc.level.getAuxLightManager(msg.pos());
+            if (lightManager instanceof LevelChunkAuxiliaryLightManager manager) {
+                manager.handleLightDataDelta(msg);
             }
         } catch (Throwable t) {
             context.disconnect(Component.translatable("neoforge.network.aux_light_data.failed", msg.pos().toString(), t.getMessage()));
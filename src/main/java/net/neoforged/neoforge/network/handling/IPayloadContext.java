@@ -69,11 +69,11 @@ public interface IPayloadContext {
     }
 
     /**
-     * For handlers running on the network thread, submits the given task to be run on the main thread of the game.
+     * For handlers running on the network thread or a payload worker, submits the given task to be run on the main thread of the game.
      * <p>
      * For handlers running on the main thread, immediately executes the task.
      * <p>
-     * On the network thread, the future will be automatically guarded against exceptions using {@link CompletableFuture#exceptionally}.
+     * Off the main thread, the future will be automatically guarded against exceptions using {@link CompletableFuture#exceptionally}.
      * If you need to catch your own exceptions, use a try/catch block within your task.
      * 
      * @param task The task to run.
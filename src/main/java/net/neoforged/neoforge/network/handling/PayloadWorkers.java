@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.handling;
+
+import com.mojang.logging.LogUtils;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.network.Connection;
+import net.minecraft.network.HandlerNames;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.common.NeoForgeConfig;
+import net.neoforged.neoforge.network.registration.HandlerThread;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+/**
+ * The pool of threads that runs payload handlers registered for {@link HandlerThread#WORKER}.
+ * <p>
+ * Each connection has its own queue of payloads, which is drained by at most one worker at a time, so that the payloads
+ * of a connection are handled in the order they were received. A worker handles a limited amount of payloads of a connection
+ * before giving other connections a turn.
+ * <p>
+ * If too many payloads of a connection are queued, reading from the connection is paused until half of them were handled.
+ * <p>
+ * Payloads of a connection that was closed are dropped, and the executor is shut down once the server stopped.
+ */
+@ApiStatus.Internal
+public final class PayloadWorkers {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final AttributeKey<ConnectionQueue> ATTRIBUTE_QUEUE = AttributeKey.valueOf("neoforge:payload_worker_queue");
+    /**
+     * The amount of payloads of a connection that a worker handles before other connections get a turn.
+     */
+    private static final int PAYLOADS_PER_TURN = 16;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    @Nullable
+    private static volatile ThreadPoolExecutor executor;
+    private static volatile int maxQueuedPayloads;
+
+    private PayloadWorkers() {}
+
+    /**
+     * Queues the handling of a payload that was received on the network thread of the given context's connection.
+     */
+    static void submit(IPayloadContext context, ResourceLocation payloadId, Runnable handler) {
+        Connection connection = context.connection();
+        if (!connection.isConnected()) {
+            return;
+        }
+
+        Channel channel = connection.channel();
+        ConnectionQueue queue = channel.attr(ATTRIBUTE_QUEUE).get();
+        if (queue == null) {
+            queue = new ConnectionQueue(connection);
+            ConnectionQueue existing = channel.attr(ATTRIBUTE_QUEUE).setIfAbsent(queue);
+            if (existing != null) {
+                queue = existing;
+            } else {
+                ConnectionQueue created = queue;
+                channel.closeFuture().addListener(future -> created.close());
+            }
+        }
+        queue.add(new Task(context, payloadId, handler));
+    }
+
+    /**
+     * Shuts down the workers, letting them finish the payloads that are already queued.
+     * Workers are started again when the next payload is submitted.
+     */
+    public static synchronized void shutdown() {
+        ThreadPoolExecutor executor = PayloadWorkers.executor;
+        if (executor == null) {
+            return;
+        }
+
+        PayloadWorkers.executor = null;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Payload workers did not finish handling payloads within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor executor = PayloadWorkers.executor;
+        return executor != null ? executor : createExecutor();
+    }
+
+    private static synchronized ThreadPoolExecutor createExecutor() {
+        if (executor == null) {
+            int threads = NeoForgeConfig.COMMON.payloadWorkerThreads.get();
+            if (threads == 0) {
+                threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+            }
+            maxQueuedPayloads = NeoForgeConfig.COMMON.payloadWorkerMaxQueuedPayloads.get();
+
+            AtomicInteger threadCount = new AtomicInteger();
+            // Every connection has at most one drain task queued, so the queue is bounded by the amount of connections.
+            ThreadPoolExecutor created = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "NeoForge Payload Worker #" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            created.allowCoreThreadTimeOut(true);
+            executor = created;
+        }
+        return executor;
+    }
+
+    private record Task(IPayloadContext context, ResourceLocation payloadId, Runnable handler) {}
+
+    private static final class ConnectionQueue implements Runnable {
+        private final Connection connection;
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * The amount of queued payloads and whether reading is paused are updated together while holding the lock of this queue,
+         * so that a worker that drains the queue while the network thread pauses reading always sees the pause and resumes reading.
+         */
+        private int queued;
+        private volatile boolean paused;
+
+        private ConnectionQueue(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Called on the network thread.
+         */
+        private void add(Task task) {
+            ThreadPoolExecutor executor = getExecutor();
+            tasks.add(task);
+            synchronized (this) {
+                if (++queued >= maxQueuedPayloads && !paused && !connection.isMemoryConnection()) {
+                    paused = true;
+                    connection.channel().config().setAutoRead(false);
+                }
+            }
+            schedule(executor);
+        }
+
+        private void schedule(ThreadPoolExecutor executor) {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The workers were shut down concurrently, the connections of the stopped server are closed anyway
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Called on the network thread once the connection is closed.
+         */
+        private void close() {
+            tasks.clear();
+            connection.channel().attr(ATTRIBUTE_QUEUE).compareAndSet(this, null);
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < PAYLOADS_PER_TURN; i++) {
+                if (!connection.isConnected()) {
+                    // Payloads of a closed connection are not handled anymore
+                    tasks.clear();
+                    break;
+                }
+
+                Task task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+
+                try {
+                    task.handler().run();
+                } catch (Throwable t) {
+                    LOGGER.error("Failed to handle payload {} on a payload worker", task.payloadId(), t);
+                    task.context().disconnect(Component.translatable("neoforge.network.payload_worker.failed", task.payloadId().toString()));
+                }
+
+                boolean resume;
+                synchronized (this) {
+                    resume = --queued <= maxQueuedPayloads / 2 && paused;
+                    if (resume) {
+                        paused = false;
+                    }
+                }
+                if (resume) {
+                    resume();
+                }
+            }
+
+            scheduled.set(false);
+            // Payloads that were added after the last poll could not schedule another run, so do it here
+            if (!tasks.isEmpty()) {
+                schedule(getExecutor());
+            }
+        }
+
+        private void resume() {
+            Channel channel = connection.channel();
+            channel.eventLoop().execute(() -> {
+                // Vanilla pauses reading while the inbound protocol is swapped, during which the decoder is absent.
+                // It resumes reading on its own afterwards.
+                if (!paused && channel.pipeline().get(HandlerNames.DECODER) != null) {
+                    channel.config().setAutoRead(true);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.handling;
+
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.neoforged.neoforge.network.registration.HandlerThread;
+
+/**
+ * Helper class that always executes the wrapped handler on the {@linkplain HandlerThread#WORKER payload workers}.
+ */
+public record WorkerPayloadHandler<T extends CustomPacketPayload>(IPayloadHandler<T> handler) implements IPayloadHandler<T> {
+    @Override
+    public void handle(T payload, IPayloadContext context) {
+        PayloadWorkers.submit(context, payload.type().id(), () -> this.handler().handle(payload, context));
+    }
+}
@@ -5,9 +5,8 @@
 
 package net.neoforged.neoforge.network.payload;
 
-import java.util.HashMap;
-import java.util.Map;
-import net.minecraft.core.BlockPos;
+import io.netty.buffer.ByteBuf;
+import java.util.List;
 import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.codec.StreamCodec;
@@ -18,18 +17,36 @@ import net.neoforged.neoforge.internal.versions.neoforge.NeoForgeVersion;
 import net.neoforged.neoforge.network.codec.NeoForgeStreamCodecs;
 import org.jetbrains.annotations.ApiStatus;
 
+/**
+ * Sends all auxiliary light values of a chunk along with the chunk, replacing the values known by the client.
+ *
+ * @param sections the light values of the sections that have any, as nibble arrays
+ */
 @ApiStatus.Internal
-public record AuxiliaryLightDataPayload(ChunkPos pos, Map<BlockPos, Byte> entries) implements CustomPacketPayload {
+public record AuxiliaryLightDataPayload(ChunkPos pos, List<Section> sections) implements CustomPacketPayload {
     public static final Type<AuxiliaryLightDataPayload> TYPE = new Type<>(ResourceLocation.fromNamespaceAndPath(NeoForgeVersion.MOD_ID, "auxiliary_light_data"));
     public static final StreamCodec<RegistryFriendlyByteBuf, AuxiliaryLightDataPayload> STREAM_CODEC = StreamCodec.composite(
             NeoForgeStreamCodecs.CHUNK_POS,
             AuxiliaryLightDataPayload::pos,
-            ByteBufCodecs.map(HashMap::new, BlockPos.STREAM_CODEC, ByteBufCodecs.BYTE),
-            AuxiliaryLightDataPayload::entries,
+            Section.STREAM_CODEC.apply(ByteBufCodecs.list()),
+            AuxiliaryLightDataPayload::sections,
             AuxiliaryLightDataPayload::new);
 
     @Override
     public Type<AuxiliaryLightDataPayload> type() {
         return TYPE;
     }
+
+    /**
+     * @param y    the section coordinate of the section
+     * @param data the light values of the section, in the layout of {@link net.minecraft.world.level.chunk.DataLayer}
+     */
+    public record Section(int y, byte[] data) {
+        public static final StreamCodec<ByteBuf, Section> STREAM_CODEC = StreamCodec.composite(
+                ByteBufCodecs.VAR_INT,
+                Section::y,
+                ByteBufCodecs.BYTE_ARRAY,
+                Section::data,
+                Section::new);
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.payload;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.ChunkPos;
+import net.neoforged.neoforge.internal.versions.neoforge.NeoForgeVersion;
+import net.neoforged.neoforge.network.codec.NeoForgeStreamCodecs;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Sends the auxiliary light values of a chunk that changed since they were last sent.
+ *
+ * @param positions the changed positions, relative to the chunk, see {@link #pack(BlockPos)}
+ * @param values    the new light values at the positions
+ */
+@ApiStatus.Internal
+public record AuxiliaryLightDeltaPayload(ChunkPos pos, int[] positions, byte[] values) implements CustomPacketPayload {
+    public static final Type<AuxiliaryLightDeltaPayload> TYPE = new Type<>(ResourceLocation.fromNamespaceAndPath(NeoForgeVersion.MOD_ID, "auxiliary_light_delta"));
+    public static final StreamCodec<FriendlyByteBuf, AuxiliaryLightDeltaPayload> STREAM_CODEC = StreamCodec.ofMember(
+            AuxiliaryLightDeltaPayload::write,
+            AuxiliaryLightDeltaPayload::read);
+
+    public AuxiliaryLightDeltaPayload {
+        if (positions.length != values.length) {
+            throw new IllegalArgumentException("Expected as many values as positions, got " + values.length + " and " + positions.length);
+        }
+    }
+
+    private static AuxiliaryLightDeltaPayload read(FriendlyByteBuf buf) {
+        ChunkPos pos = NeoForgeStreamCodecs.CHUNK_POS.decode(buf);
+        int size = buf.readVarInt();
+        int[] positions = new int[size];
+        byte[] values = new byte[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = buf.readVarInt();
+            values[i] = buf.readByte();
+        }
+        return new AuxiliaryLightDeltaPayload(pos, positions, values);
+    }
+
+    private void write(FriendlyByteBuf buf) {
+        NeoForgeStreamCodecs.CHUNK_POS.encode(buf, pos);
+        buf.writeVarInt(positions.length);
+        for (int i = 0; i < positions.length; i++) {
+            buf.writeVarInt(positions[i]);
+            buf.writeByte(values[i]);
+        }
+    }
+
+    /**
+     * {@return the given position packed relative to its chunk}
+     */
+    public static int pack(BlockPos pos) {
+        return pos.getY() << 8 | (pos.getX() & 15) << 4 | (pos.getZ() & 15);
+    }
+
+    /**
+     * {@return the block position of the given packed position in the chunk of this payload}
+     */
+    public BlockPos unpack(int packed) {
+        return new BlockPos(pos.getMinBlockX() + (packed >> 4 & 15), packed >> 8, pos.getMinBlockZ() + (packed & 15));
+    }
+
+    @Override
+    public Type<AuxiliaryLightDeltaPayload> type() {
+        return TYPE;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.payload;
+
+import java.util.List;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.internal.versions.neoforge.NeoForgeVersion;
+import net.neoforged.neoforge.network.registration.NetworkPayloadIds;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Sent by the server during the configuration phase to assign compact ids to the negotiated play channels.
+ *
+ * @param ids The negotiated play channels, indexed by their compact id.
+ * @see NetworkPayloadIds
+ */
+@ApiStatus.Internal
+public record NetworkPayloadIdsPayload(List<ResourceLocation> ids) implements CustomPacketPayload {
+    public static final ResourceLocation ID = ResourceLocation.fromNamespaceAndPath(NeoForgeVersion.MOD_ID, "payload_ids");
+    public static final Type<NetworkPayloadIdsPayload> TYPE = new Type<>(ID);
+    public static final StreamCodec<FriendlyByteBuf, NetworkPayloadIdsPayload> STREAM_CODEC = ResourceLocation.STREAM_CODEC
+            .apply(ByteBufCodecs.list())
+            .map(NetworkPayloadIdsPayload::new, NetworkPayloadIdsPayload::ids);
+
+    @Override
+    public Type<NetworkPayloadIdsPayload> type() {
+        return TYPE;
+    }
+}
@@ -5,12 +5,12 @@
 
 package net.neoforged.neoforge.network.payload;
 
+import io.netty.buffer.ByteBuf;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.codec.StreamCodec;
 import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.minecraft.resources.ResourceLocation;
 import net.neoforged.neoforge.internal.versions.neoforge.NeoForgeVersion;
-import net.neoforged.neoforge.network.codec.NeoForgeStreamCodecs;
 import org.jetbrains.annotations.ApiStatus;
 
 /**
@@ -18,16 +18,27 @@ import org.jetbrains.annotations.ApiStatus;
  * <p>
  * This single payload will contain a slice of the original packet.
  * </p>
- * 
+ * <p>
+ * When decoded, the payload holds a retained slice of the inbound buffer instead of a copy of it.
+ * Whoever handles the payload takes ownership of that slice and is responsible for releasing it.
+ * </p>
+ *
  * @param payload The slice of the original packet.
  */
 @ApiStatus.Internal
-public record SplitPacketPayload(byte[] payload) implements CustomPacketPayload {
+public record SplitPacketPayload(ByteBuf payload) implements CustomPacketPayload {
     public static final Type<SplitPacketPayload> TYPE = new Type<>(ResourceLocation.fromNamespaceAndPath(NeoForgeVersion.MOD_ID, "split"));
-    public static final StreamCodec<FriendlyByteBuf, SplitPacketPayload> STREAM_CODEC = StreamCodec.composite(
-            NeoForgeStreamCodecs.UNBOUNDED_BYTE_ARRAY,
-            SplitPacketPayload::payload,
-            SplitPacketPayload::new);
+    public static final StreamCodec<FriendlyByteBuf, SplitPacketPayload> STREAM_CODEC = CustomPacketPayload.codec(SplitPacketPayload::write, SplitPacketPayload::read);
+
+    private static SplitPacketPayload read(FriendlyByteBuf buf) {
+        // Same wire format as a byte array, but without copying the data out of the inbound buffer
+        return new SplitPacketPayload(buf.readRetainedSlice(buf.readVarInt()));
+    }
+
+    private void write(FriendlyByteBuf buf) {
+        buf.writeVarInt(payload.readableBytes());
+        buf.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+    }
 
     @Override
     public Type<SplitPacketPayload> type() {
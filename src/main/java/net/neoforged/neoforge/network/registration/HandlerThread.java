@@ -5,6 +5,7 @@
 
 package net.neoforged.neoforge.network.registration;
 
+import net.neoforged.neoforge.network.handling.IPayloadContext;
 import net.neoforged.neoforge.network.handling.IPayloadHandler;
 
 /**
@@ -23,5 +24,16 @@ public enum HandlerThread {
     /**
      * The network thread, which executes concurrently to the main thread.
      */
-    NETWORK;
+    NETWORK,
+
+    /**
+     * A shared pool of payload worker threads, which executes concurrently to both the main thread and the network thread.
+     * <p>
+     * Meant for expensive but thread-safe work, such as decompressing or validating large payloads.
+     * Payloads of a single connection are handled one at a time, in the order they were received.
+     * If too many payloads of a connection are waiting for the workers, reading from the connection is paused until they catch up.
+     * <p>
+     * Use {@link IPayloadContext#enqueueWork} to continue on the main thread.
+     */
+    WORKER;
 }
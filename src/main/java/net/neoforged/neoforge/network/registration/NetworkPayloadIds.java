@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.registration;
+
+import io.netty.handler.codec.DecoderException;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.PacketFlow;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.payload.NetworkPayloadIdsPayload;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compact ids of the negotiated play channels of a connection.
+ * <p>
+ * The server assigns the ids once the channels are negotiated and sends them to the client with a {@link NetworkPayloadIdsPayload}.
+ * Afterwards, payloads of these channels are identified on the wire by a zero byte followed by their id as a var int, instead of by their full id.
+ * A zero byte never starts a written {@link ResourceLocation}, since that would be the length of an empty string,
+ * so payloads of other channels can still be sent with their full id.
+ * </p>
+ * <p>
+ * Received payloads find their codec through an array indexed by the compact id, instead of looking up their full id.
+ * The compact id of a decoded payload is remembered until it is handled, so that it is dispatched through an array
+ * of the negotiated registrations, built when the ids are assigned.
+ * </p>
+ */
+@ApiStatus.Internal
+public final class NetworkPayloadIds {
+    private static final int COMPACT_ID_MARKER = 0;
+
+    private final List<ResourceLocation> ids;
+    private final Object2IntMap<ResourceLocation> idsByLocation;
+    /**
+     * The codecs of the payloads, indexed by flow and compact id, resolved on first use.
+     */
+    private final StreamCodec<?, ?>[][] codecs;
+    /**
+     * The play registrations of the payloads, indexed by compact id, or null for payloads whose channel was not negotiated.
+     */
+    private final PayloadRegistration<?>[] registrations;
+
+    /**
+     * The last payload decoded with a compact id, together with that id.
+     * Payloads are decoded on the network thread, but split payloads and payloads of main thread packets are handled
+     * on the main thread, so the pair is published as one immutable value.
+     */
+    private final AtomicReference<DecodedPayload> lastDecoded = new AtomicReference<>();
+
+    /**
+     * @param ids           The channels, in the order of their compact ids.
+     * @param setup         The negotiated channels of the connection.
+     * @param registrations The play payload registrations, by id.
+     */
+    NetworkPayloadIds(List<ResourceLocation> ids, NetworkPayloadSetup setup, Map<ResourceLocation, PayloadRegistration<?>> registrations) {
+        this.ids = List.copyOf(ids);
+        this.idsByLocation = new Object2IntOpenHashMap<>(this.ids.size());
+        this.idsByLocation.defaultReturnValue(-1);
+        this.registrations = new PayloadRegistration<?>[this.ids.size()];
+        for (int i = 0; i < this.ids.size(); i++) {
+            ResourceLocation id = this.ids.get(i);
+            this.idsByLocation.put(id, i);
+            if (setup.getChannel(ConnectionProtocol.PLAY, id) != null) {
+                this.registrations[i] = registrations.get(id);
+            }
+        }
+        this.codecs = new StreamCodec<?, ?>[PacketFlow.values().length][this.ids.size()];
+    }
+
+    /**
+     * Assigns compact ids to the negotiated play channels, in a stable order.
+     */
+    static NetworkPayloadIds assign(NetworkPayloadSetup setup, Map<ResourceLocation, PayloadRegistration<?>> registrations) {
+        return new NetworkPayloadIds(setup.getChannels(ConnectionProtocol.PLAY).keySet().stream().sorted().toList(), setup, registrations);
+    }
+
+    /**
+     * {@return the compact ids used by the buffer, or null if payloads written to it for the given protocol are identified by their full id}
+     */
+    @Nullable
+    public static NetworkPayloadIds get(FriendlyByteBuf buf, ConnectionProtocol protocol) {
+        return protocol == ConnectionProtocol.PLAY && buf instanceof RegistryFriendlyByteBuf registryBuf ? registryBuf.getPayloadIds() : null;
+    }
+
+    public List<ResourceLocation> ids() {
+        return ids;
+    }
+
+    /**
+     * {@return the compact id of the given channel, or -1 if it has none}
+     */
+    public int getId(ResourceLocation id) {
+        return idsByLocation.getInt(id);
+    }
+
+    /**
+     * {@return the channel with the given compact id}
+     *
+     * @throws DecoderException if no channel has the given compact id
+     */
+    public ResourceLocation getLocation(int compactId) {
+        if (compactId < 0 || compactId >= ids.size()) {
+            throw new DecoderException("Unknown compact payload id " + compactId);
+        }
+        return ids.get(compactId);
+    }
+
+    public static void writeId(FriendlyByteBuf buf, int compactId) {
+        buf.writeByte(COMPACT_ID_MARKER);
+        VarInt.write(buf, compactId);
+    }
+
+    /**
+     * Reads a compact id if the buffer starts with one.
+     *
+     * @return the compact id, or -1 if the payload is identified by its full id, which is left unread
+     */
+    public int readId(FriendlyByteBuf buf) {
+        if (buf.getByte(buf.readerIndex()) != COMPACT_ID_MARKER) {
+            return -1;
+        }
+        buf.skipBytes(1);
+        int compactId = VarInt.read(buf);
+        getLocation(compactId); // Validate the id
+        return compactId;
+    }
+
+    /**
+     * Remembers the compact id of a payload that was just decoded, until it is {@linkplain #getDecodedId(CustomPacketPayload) handled}.
+     */
+    public void onDecoded(CustomPacketPayload payload, int compactId) {
+        lastDecoded.set(new DecodedPayload(payload, compactId));
+    }
+
+    /**
+     * {@return the compact id the payload was decoded with, or -1 if it was not the last payload decoded with a compact id}
+     * Payloads that were not sent over the network, or decoded together with others in a bundle, are identified by their full id.
+     */
+    int getDecodedId(CustomPacketPayload payload) {
+        DecodedPayload decoded = lastDecoded.get();
+        if (decoded == null || decoded.payload() != payload) {
+            return -1;
+        }
+        // Don't keep the payload alive, unless another payload was decoded in the meantime
+        lastDecoded.compareAndSet(decoded, null);
+        return decoded.compactId();
+    }
+
+    /**
+     * {@return the play registration of the payload with the given compact id, or null if its channel was not negotiated}
+     */
+    @Nullable
+    PayloadRegistration<?> getRegistration(int compactId) {
+        return registrations[compactId];
+    }
+
+    /**
+     * {@return the codec of the payload with the given compact id}
+     *
+     * @param compactId The compact id of the payload.
+     * @param flow      The flow of the codec that the payload is written to or read from.
+     * @param lookup    The lookup of the codec by full id, used the first time the codec is requested.
+     */
+    @SuppressWarnings("unchecked")
+    public <B extends FriendlyByteBuf> StreamCodec<? super B, ? extends CustomPacketPayload> getCodec(int compactId, PacketFlow flow, Function<ResourceLocation, StreamCodec<? super B, ? extends CustomPacketPayload>> lookup) {
+        StreamCodec<?, ?>[] byId = codecs[flow.ordinal()];
+        StreamCodec<?, ?> codec = byId[compactId];
+        if (codec == null) {
+            // Racing lookups resolve the same codec, so no synchronization is needed
+            codec = lookup.apply(ids.get(compactId));
+            byId[compactId] = codec;
+        }
+        return (StreamCodec<? super B, ? extends CustomPacketPayload>) codec;
+    }
+
+    private record DecodedPayload(CustomPacketPayload payload, int compactId) {}
+}
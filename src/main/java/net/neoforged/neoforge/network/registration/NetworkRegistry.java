@@ -49,9 +49,11 @@ import net.neoforged.fml.ModLoader;
 import net.neoforged.fml.config.ConfigTracker;
 import net.neoforged.neoforge.common.extensions.ICommonPacketListener;
 import net.neoforged.neoforge.internal.versions.neoforge.NeoForgeVersion;
+import net.neoforged.neoforge.network.NetworkMetrics;
 import net.neoforged.neoforge.network.connection.ConnectionType;
 import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
 import net.neoforged.neoforge.network.filters.NetworkFilters;
+import net.neoforged.neoforge.network.filters.SharedPayloadPacket;
 import net.neoforged.neoforge.network.handling.ClientPayloadContext;
 import net.neoforged.neoforge.network.handling.IPayloadContext;
 import net.neoforged.neoforge.network.handling.IPayloadHandler;
@@ -65,6 +67,8 @@ import net.neoforged.neoforge.network.payload.ModdedNetworkPayload;
 import net.neoforged.neoforge.network.payload.ModdedNetworkQueryComponent;
 import net.neoforged.neoforge.network.payload.ModdedNetworkQueryPayload;
 import net.neoforged.neoforge.network.payload.ModdedNetworkSetupFailedPayload;
+import net.neoforged.neoforge.network.payload.NetworkPayloadIdsPayload;
+import net.neoforged.neoforge.network.payload.SplitPacketPayload;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
@@ -88,6 +92,7 @@ public class NetworkRegistry {
     private static final AttributeKey<Set<ResourceLocation>> ATTRIBUTE_ADHOC_CHANNELS = AttributeKey.valueOf("neoforge:adhoc_channels");
     private static final AttributeKey<ConnectionType> ATTRIBUTE_CONNECTION_TYPE = AttributeKey.valueOf("neoforge:connection_type");
     private static final AttributeKey<PacketFlow> ATTRIBUTE_FLOW = AttributeKey.valueOf("neoforge:flow");
+    private static final AttributeKey<NetworkPayloadIds> ATTRIBUTE_PAYLOAD_IDS = AttributeKey.valueOf("neoforge:payload_ids");
 
     /**
      * Map of NeoForge payloads that may be sent before channel negotiation.
@@ -248,9 +253,27 @@ public class NetworkRegistry {
         if (payloadSetup == null) {
             LOGGER.warn("Received a modded payload before channel negotiation; disconnecting.");
             listener.disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (No Payload Setup)".formatted(NeoForgeVersion.getVersion())));
+            releaseRejectedPayload(packet.payload());
             return;
         }
 
+        if (listener.protocol() == ConnectionProtocol.PLAY) {
+            NetworkPayloadIds payloadIds = getPayloadIds(listener.getConnection());
+            int compactId = payloadIds != null ? payloadIds.getDecodedId(packet.payload()) : -1;
+            PayloadRegistration registration = compactId >= 0 ? payloadIds.getRegistration(compactId) : null;
+            if (registration != null) {
+                // Decoded with the compact id of a negotiated channel, so the payload is dispatched without looking up its id
+                ServerPayloadContext context = new ServerPayloadContext(listener, payloadIds.getLocation(compactId));
+                if (NetworkMetrics.isEnabled()) {
+                    NetworkMetrics.onReceived(listener.getConnection(), context.payloadId(), packet.payload());
+                    NetworkMetrics.handle(registration.handler(), packet.payload(), context);
+                } else {
+                    registration.handler().handle(packet.payload(), context);
+                }
+                return;
+            }
+        }
+
         ServerPayloadContext context = new ServerPayloadContext(listener, packet.payload().type().id());
 
         if (PAYLOAD_REGISTRATIONS.containsKey(listener.protocol())) {
@@ -261,6 +284,7 @@ public class NetworkRegistry {
             if (channel == null && !hasAdhocChannel(listener.protocol(), context.payloadId(), PacketFlow.SERVERBOUND)) {
                 LOGGER.warn("Received a modded payload {} with an unknown or unaccepted channel; disconnecting.", context.payloadId());
                 listener.disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (No Channel for %s)".formatted(NeoForgeVersion.getVersion(), context.payloadId().toString())));
+                releaseRejectedPayload(packet.payload());
                 return;
             }
 
@@ -268,14 +292,21 @@ public class NetworkRegistry {
             if (registration == null) {
                 LOGGER.error("Received a modded payload {} with no registration; disconnecting.", context.payloadId());
                 listener.disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (No Handler for %s)".formatted(NeoForgeVersion.getVersion(), context.payloadId().toString())));
+                releaseRejectedPayload(packet.payload());
                 dumpStackToLog(); // This case is only likely when handling packets without serialization, i.e. from a compound listener, so this can help debug why.
                 return;
             }
 
-            registration.handler().handle(packet.payload(), context);
+            if (NetworkMetrics.isEnabled()) {
+                NetworkMetrics.onReceived(listener.getConnection(), context.payloadId(), packet.payload());
+                NetworkMetrics.handle(registration.handler(), packet.payload(), context);
+            } else {
+                registration.handler().handle(packet.payload(), context);
+            }
         } else {
             LOGGER.error("Received a modded payload {} while not in the configuration or play phase; disconnecting.", context.payloadId());
             listener.disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (Invalid Protocol %s)".formatted(NeoForgeVersion.getVersion(), listener.protocol().name())));
+            releaseRejectedPayload(packet.payload());
         }
     }
 
@@ -294,9 +325,27 @@ public class NetworkRegistry {
         if (payloadSetup == null) {
             LOGGER.warn("Received a modded payload before channel negotiation; disconnecting.");
             listener.getConnection().disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (No Payload Setup)".formatted(NeoForgeVersion.getVersion())));
+            releaseRejectedPayload(packet.payload());
             return;
         }
 
+        if (listener.protocol() == ConnectionProtocol.PLAY) {
+            NetworkPayloadIds payloadIds = getPayloadIds(listener.getConnection());
+            int compactId = payloadIds != null ? payloadIds.getDecodedId(packet.payload()) : -1;
+            PayloadRegistration registration = compactId >= 0 ? payloadIds.getRegistration(compactId) : null;
+            if (registration != null) {
+                // Decoded with the compact id of a negotiated channel, so the payload is dispatched without looking up its id
+                ClientPayloadContext context = new ClientPayloadContext(listener, payloadIds.getLocation(compactId));
+                if (NetworkMetrics.isEnabled()) {
+                    NetworkMetrics.onReceived(listener.getConnection(), context.payloadId(), packet.payload());
+                    NetworkMetrics.handle(registration.handler(), packet.payload(), context);
+                } else {
+                    registration.handler().handle(packet.payload(), context);
+                }
+                return;
+            }
+        }
+
         ClientPayloadContext context = new ClientPayloadContext(listener, packet.payload().type().id());
 
         if (PAYLOAD_REGISTRATIONS.containsKey(listener.protocol())) {
@@ -307,6 +356,7 @@ public class NetworkRegistry {
             if (channel == null && !hasAdhocChannel(listener.protocol(), packet.payload().type().id(), PacketFlow.CLIENTBOUND)) {
                 LOGGER.warn("Received a modded payload with an unknown or unaccepted channel; disconnecting.");
                 listener.getConnection().disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (No Channel for %s)".formatted(NeoForgeVersion.getVersion(), context.payloadId().toString())));
+                releaseRejectedPayload(packet.payload());
                 return;
             }
 
@@ -314,14 +364,31 @@ public class NetworkRegistry {
             if (registration == null) {
                 LOGGER.error("Received a modded payload with no registration; disconnecting.");
                 listener.getConnection().disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (No Handler for %s)".formatted(NeoForgeVersion.getVersion(), context.payloadId().toString())));
+                releaseRejectedPayload(packet.payload());
                 dumpStackToLog(); // This case is only likely when handling packets without serialization, i.e. from a compound listener, so this can help debug why.
                 return;
             }
 
-            registration.handler().handle(packet.payload(), context);
+            if (NetworkMetrics.isEnabled()) {
+                NetworkMetrics.onReceived(listener.getConnection(), context.payloadId(), packet.payload());
+                NetworkMetrics.handle(registration.handler(), packet.payload(), context);
+            } else {
+                registration.handler().handle(packet.payload(), context);
+            }
         } else {
             LOGGER.error("Received a modded payload while not in the configuration or play phase. Disconnecting.");
             listener.getConnection().disconnect(Component.translatable("multiplayer.disconnect.incompatible", "NeoForge %s (Invalid Protocol %s)".formatted(NeoForgeVersion.getVersion(), listener.protocol().name())));
+            releaseRejectedPayload(packet.payload());
+        }
+    }
+
+    /**
+     * Releases the buffers held by a payload that is rejected before it reaches its handler.
+     * Only {@link SplitPacketPayload}s hold buffers, all other payloads are left to the garbage collector.
+     */
+    private static void releaseRejectedPayload(CustomPacketPayload payload) {
+        if (payload instanceof SplitPacketPayload splitPacketPayload) {
+            splitPacketPayload.payload().release();
         }
     }
 
@@ -372,6 +439,12 @@ public class NetworkRegistry {
         NetworkFilters.injectIfNecessary(listener.getConnection());
 
         listener.send(new ModdedNetworkPayload(setup));
+        if (setup.getChannel(ConnectionProtocol.CONFIGURATION, NetworkPayloadIdsPayload.ID) != null) {
+            // The client understands compact payload ids, assign them to the play channels
+            NetworkPayloadIds payloadIds = NetworkPayloadIds.assign(setup, PAYLOAD_REGISTRATIONS.get(ConnectionProtocol.PLAY));
+            listener.getConnection().channel().attr(ATTRIBUTE_PAYLOAD_IDS).set(payloadIds);
+            listener.send(new NetworkPayloadIdsPayload(payloadIds.ids()));
+        }
         ImmutableSet.Builder<ResourceLocation> nowListeningOn = ImmutableSet.builder();
         nowListeningOn.addAll(getInitialListeningChannels(listener.flow()));
         nowListeningOn.addAll(setup.getChannels(ConnectionProtocol.CONFIGURATION).keySet());
@@ -421,13 +494,17 @@ public class NetworkRegistry {
     }
 
     /**
-     * Validates that a {@link ClientboundCustomPayloadPacket} may be sent to the client.
+     * Validates that a {@link ClientboundCustomPayloadPacket}, or the packet wrapped by a {@link SharedPayloadPacket}, may be sent to the client.
      *
      * @param packet   The packet that is about to be sent.
      * @param listener The listener that wants to send the packet.
      * @throws UnsupportedOperationException if the packet may not be sent.
      */
     public static void checkPacket(Packet<?> packet, ServerCommonPacketListener listener) {
+        if (packet instanceof SharedPayloadPacket sharedPayloadPacket) {
+            packet = sharedPayloadPacket.packet();
+        }
+
         if (packet instanceof ClientboundCustomPayloadPacket customPayloadPacket) {
             ResourceLocation id = customPayloadPacket.payload().type().id();
             if (BUILTIN_PAYLOADS.containsKey(id) || "minecraft".equals(id.getNamespace())) {
@@ -529,6 +606,32 @@ public class NetworkRegistry {
         listener.send(new MinecraftRegisterPayload(nowListeningOn.build()));
     }
 
+    /**
+     * Invoked by the client when it receives the compact ids of the play channels from the server.
+     * The ids are used once the connection enters the play phase.
+     * <p>
+     * Invoked on the network thread.
+     *
+     * @param payload The payload that contains the ids.
+     * @param context The context of the payload.
+     */
+    public static void handlePayloadIds(NetworkPayloadIdsPayload payload, IPayloadContext context) {
+        NetworkPayloadSetup setup = context.connection().channel().attr(ATTRIBUTE_PAYLOAD_SETUP).get();
+        if (setup == null) {
+            // The server still identifies payloads by these ids, but none of them can be dispatched directly
+            setup = NetworkPayloadSetup.empty();
+        }
+        context.connection().channel().attr(ATTRIBUTE_PAYLOAD_IDS).set(new NetworkPayloadIds(payload.ids(), setup, PAYLOAD_REGISTRATIONS.get(ConnectionProtocol.PLAY)));
+    }
+
+    /**
+     * {@return the compact ids of the play channels of the connection, or null if payloads are identified by their full id}
+     */
+    @Nullable
+    public static NetworkPayloadIds getPayloadIds(Connection connection) {
+        return connection.channel().attr(ATTRIBUTE_PAYLOAD_IDS).get();
+    }
+
     /**
      * Invoked by the client when no {@link ModdedNetworkQueryPayload} has been received, but instead a {@link BrandPayload} has been received as the first packet during negotiation in the configuration phase.
      * <p>
@@ -613,6 +716,19 @@ public class NetworkRegistry {
         return getKnownAdHocChannelsOfOtherEnd(connection).contains(payloadId);
     }
 
+    /**
+     * {@return the channel that was negotiated for the given payload id and protocol, or null if it was not negotiated}
+     *
+     * @param connection The connection to check.
+     * @param protocol   The protocol to check.
+     * @param payloadId  The payload id to check.
+     */
+    @Nullable
+    public static NetworkChannel getNegotiatedChannel(Connection connection, ConnectionProtocol protocol, ResourceLocation payloadId) {
+        NetworkPayloadSetup payloadSetup = connection.channel().attr(ATTRIBUTE_PAYLOAD_SETUP).get();
+        return payloadSetup == null ? null : payloadSetup.getChannel(protocol, payloadId);
+    }
+
     /**
      * Filters the given packets for a bundle packet in the game phase of the connection.
      *
@@ -16,6 +16,7 @@ import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.neoforged.neoforge.network.handling.DirectionalPayloadHandler;
 import net.neoforged.neoforge.network.handling.IPayloadHandler;
 import net.neoforged.neoforge.network.handling.MainThreadPayloadHandler;
+import net.neoforged.neoforge.network.handling.WorkerPayloadHandler;
 
 /**
  * Builder-style helper for registering {@link CustomPacketPayload}s, used for modded networking.
@@ -119,6 +120,7 @@ public class PayloadRegistrar {
      * Creates a copy of this registrar with a different default handling thread.
      * <p>
      * When the handling thread is set to {@link HandlerThread#MAIN}, all registered handlers will be wrapped in {@link MainThreadPayloadHandler}.
+     * When it is set to {@link HandlerThread#WORKER}, they will be wrapped in {@link WorkerPayloadHandler}.
      * <p>
      * The initial handling thread is {@link HandlerThread#MAIN}.
      * 
@@ -164,6 +166,8 @@ public class PayloadRegistrar {
             List<ConnectionProtocol> protocols, Optional<PacketFlow> flow, String version, boolean optional) {
         if (this.thread == HandlerThread.MAIN) {
             handler = new MainThreadPayloadHandler<>(handler);
+        } else if (this.thread == HandlerThread.WORKER) {
+            handler = new WorkerPayloadHandler<>(handler);
         }
         NetworkRegistry.register(type, codec, handler, protocols, flow, version, optional);
     }
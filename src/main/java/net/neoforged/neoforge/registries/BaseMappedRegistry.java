@@ -6,10 +6,12 @@
 package net.neoforged.neoforge.registries;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import net.minecraft.core.Holder;
 import net.minecraft.core.Registry;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
@@ -27,10 +29,14 @@ public abstract class BaseMappedRegistry<T> implements Registry<T> {
     protected final List<BakeCallback<T>> bakeCallbacks = new ArrayList<>();
     protected final List<ClearCallback<T>> clearCallbacks = new ArrayList<>();
     final Map<ResourceLocation, ResourceLocation> aliases = new HashMap<>();
-    final Map<DataMapType<T, ?>, Map<ResourceKey<T>, ?>> dataMaps = new IdentityHashMap<>();
+    final Map<DataMapType<T, ?>, DataMapStorage<T, ?>> dataMaps = new IdentityHashMap<>();
 
     private int maxId = Integer.MAX_VALUE - 1;
     private boolean sync;
+    /**
+     * Incremented whenever the ids of the registry are reassigned, to invalidate the data maps indexed by id.
+     */
+    private volatile int idVersion;
 
     void setSync(boolean sync) {
         this.sync = sync;
@@ -107,11 +113,28 @@ public abstract class BaseMappedRegistry<T> implements Registry<T> {
 
     protected void clear(boolean full) {
         this.aliases.clear();
+        this.idVersion++;
         if (full) {
             this.dataMaps.clear();
         }
     }
 
+    int getIdVersion() {
+        return this.idVersion;
+    }
+
+    /**
+     * Replaces the data maps of this registry, and indexes their values by id.
+     */
+    void setDataMaps(Map<DataMapType<T, ?>, ? extends Map<ResourceKey<T>, ?>> dataMaps) {
+        this.dataMaps.clear();
+        dataMaps.forEach((type, values) -> {
+            var storage = new DataMapStorage<>(values);
+            storage.byId(this);
+            this.dataMaps.put(type, storage);
+        });
+    }
+
     /**
      * Register a key <-> ID mapping.
      * <b>The IDs must be registered in increasing order.</b>
@@ -122,12 +145,38 @@ public abstract class BaseMappedRegistry<T> implements Registry<T> {
 
     @Override
     public <A> @Nullable A getData(DataMapType<T, A> type, ResourceKey<T> key) {
-        final var innerMap = dataMaps.get(type);
-        return innerMap == null ? null : (A) innerMap.get(key);
+        final var storage = dataMaps.get(type);
+        return storage == null ? null : (A) storage.get(key);
+    }
+
+    @Override
+    public <A> @Nullable A getData(DataMapType<T, A> type, Holder<T> holder) {
+        final var storage = (DataMapStorage<T, A>) dataMaps.get(type);
+        return storage == null ? null : storage.get(this, holder);
     }
 
     @Override
     public <A> Map<ResourceKey<T>, A> getDataMap(DataMapType<T, A> type) {
-        return (Map<ResourceKey<T>, A>) dataMaps.getOrDefault(type, Map.of());
+        final var storage = dataMaps.get(type);
+        return storage == null ? Map.of() : (Map<ResourceKey<T>, A>) storage.values();
     }
+
+    /**
+     * {@return the memory used by each data map of this registry}
+     */
+    public List<DataMapMemoryUsage<T>> getDataMapMemoryUsage() {
+        final List<DataMapMemoryUsage<T>> usages = new ArrayList<>(dataMaps.size());
+        dataMaps.forEach((type, storage) -> usages.add(new DataMapMemoryUsage<>(type, storage.values().size(), storage.byIdLength(), storage.estimateBytes())));
+        return Collections.unmodifiableList(usages);
+    }
+
+    /**
+     * The memory used by a data map.
+     *
+     * @param type           the type of the data map
+     * @param entries        the number of objects that have a value
+     * @param idLength       the length of the array of values indexed by registry id
+     * @param estimatedBytes an estimate of the heap used to store the data map, excluding the values themselves
+     */
+    public record DataMapMemoryUsage<T>(DataMapType<T, ?> type, int entries, int idLength, long estimatedBytes) {}
 }
@@ -9,17 +9,21 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.mojang.datafixers.util.Either;
 import com.mojang.logging.LogUtils;
+import com.mojang.serialization.Codec;
 import com.mojang.serialization.JsonOps;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import net.minecraft.Util;
 import net.minecraft.core.Holder;
 import net.minecraft.core.Registry;
 import net.minecraft.core.RegistryAccess;
@@ -27,10 +31,12 @@ import net.minecraft.resources.FileToIdConverter;
 import net.minecraft.resources.RegistryOps;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.packs.resources.PreparableReloadListener;
 import net.minecraft.server.packs.resources.Resource;
 import net.minecraft.server.packs.resources.ResourceManager;
 import net.minecraft.tags.TagKey;
+import net.minecraft.util.profiling.InactiveProfiler;
 import net.minecraft.util.profiling.ProfilerFiller;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.common.conditions.ConditionalOps;
@@ -40,6 +46,8 @@ import net.neoforged.neoforge.registries.datamaps.DataMapFile;
 import net.neoforged.neoforge.registries.datamaps.DataMapType;
 import net.neoforged.neoforge.registries.datamaps.DataMapValueMerger;
 import net.neoforged.neoforge.registries.datamaps.DataMapsUpdatedEvent;
+import net.neoforged.neoforge.server.ServerLifecycleHooks;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -63,17 +71,52 @@ public class DataMapLoader implements PreparableReloadListener {
     }
 
     public void apply() {
-        results.forEach((key, result) -> this.apply((BaseMappedRegistry) registryAccess.registryOrThrow(key), result));
+        final MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        final ProfilerFiller profiler = server == null ? InactiveProfiler.INSTANCE : server.getProfiler();
+        profiler.push("data_maps");
+
+        // Tags are only bound once all reload listeners have run, so the data maps can only be merged now.
+        // The data maps are merged on the background executor, and only swapped in on the game thread.
+        final List<CompletableFuture<MergeResult<?>>> merges = new ArrayList<>(results.size());
+        results.forEach((key, result) -> merges.add(this.merge((BaseMappedRegistry) registryAccess.registryOrThrow(key), result)));
+        for (final CompletableFuture<MergeResult<?>> merge : merges) {
+            this.apply(merge.join(), profiler);
+        }
+        profiler.pop();
 
         // Clear the intermediary maps and objects
         results = null;
     }
 
-    private <T> void apply(BaseMappedRegistry<T> registry, LoadResult<T> result) {
-        registry.dataMaps.clear();
-        result.results().forEach((key, entries) -> registry.dataMaps.put(
-                key, this.buildDataMap(registry, key, (List) entries)));
+    private <T> CompletableFuture<MergeResult<?>> merge(BaseMappedRegistry<T> registry, LoadResult<T> result) {
+        final LongAdder mergeNanos = new LongAdder();
+        final Map<DataMapType<T, ?>, CompletableFuture<Map<ResourceKey<T>, ?>>> futures = new IdentityHashMap<>();
+        result.results().forEach((key, entries) -> futures.put(key, CompletableFuture.supplyAsync(() -> {
+            final long start = System.nanoTime();
+            final Map<ResourceKey<T>, ?> dataMap = this.buildDataMap(registry, key, (List) entries);
+            mergeNanos.add(System.nanoTime() - start);
+            return dataMap;
+        }, Util.backgroundExecutor())));
+
+        return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).thenApply(v -> {
+            final Map<DataMapType<T, ?>, Map<ResourceKey<T>, ?>> dataMaps = new IdentityHashMap<>();
+            futures.forEach((key, future) -> dataMaps.put(key, future.join()));
+            return new MergeResult<>(registry, dataMaps, mergeNanos.sum());
+        });
+    }
+
+    private <T> void apply(MergeResult<T> result, ProfilerFiller profiler) {
+        final BaseMappedRegistry<T> registry = result.registry();
+        profiler.push(registry.key().location().toString());
+        profiler.incrementCounter("merge_micros", (int) TimeUnit.NANOSECONDS.toMicros(result.mergeNanos()));
+        registry.setDataMaps(result.dataMaps());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Merged {} data maps of registry {} in {} ms", result.dataMaps().size(), registry.key().location(), TimeUnit.NANOSECONDS.toMillis(result.mergeNanos()));
+            registry.getDataMapMemoryUsage().forEach(usage -> LOGGER.debug("Loaded data map {} of registry {}: {} entries, {} ids, ~{} bytes",
+                    usage.type().id(), registry.key().location(), usage.entries(), usage.idLength(), usage.estimatedBytes()));
+        }
         NeoForge.EVENT_BUS.post(new DataMapsUpdatedEvent(registryAccess, registry, DataMapsUpdatedEvent.UpdateCause.SERVER_RELOAD));
+        profiler.pop();
     }
 
     private <T, R> Map<ResourceKey<R>, T> buildDataMap(Registry<R> registry, DataMapType<R, T> attachment, List<DataMapFile<T, R>> entries) {
@@ -125,13 +168,12 @@ public class DataMapLoader implements PreparableReloadListener {
     }
 
     private CompletableFuture<Map<ResourceKey<? extends Registry<?>>, LoadResult<?>>> load(ResourceManager manager, Executor executor, ProfilerFiller profiler) {
-        return CompletableFuture.supplyAsync(() -> load(manager, profiler, registryAccess, conditionContext), executor);
+        return CompletableFuture.supplyAsync(() -> locate(manager, profiler, registryAccess), executor)
+                .thenCompose(located -> decode(located, profiler, registryAccess, conditionContext, executor));
     }
 
-    private static Map<ResourceKey<? extends Registry<?>>, LoadResult<?>> load(ResourceManager manager, ProfilerFiller profiler, RegistryAccess access, ICondition.IContext context) {
-        final RegistryOps<JsonElement> ops = new ConditionalOps<>(RegistryOps.create(JsonOps.INSTANCE, access), context);
-
-        final Map<ResourceKey<? extends Registry<?>>, LoadResult<?>> values = new HashMap<>();
+    private static Map<ResourceKey<? extends Registry<?>>, List<LocatedDataMap>> locate(ResourceManager manager, ProfilerFiller profiler, RegistryAccess access) {
+        final Map<ResourceKey<? extends Registry<?>>, List<LocatedDataMap>> located = new HashMap<>();
         access.registries().forEach(registryEntry -> {
             final var registryKey = registryEntry.key();
             profiler.push("registry_data_maps/" + registryKey.location() + "/locating");
@@ -144,33 +186,87 @@ public class DataMapLoader implements PreparableReloadListener {
                     LOGGER.warn("Found data map file for non-existent data map type '{}' on registry '{}'.", attachmentId, registryKey.location());
                     continue;
                 }
-                profiler.popPush("registry_data_maps/" + registryKey.location() + "/" + attachmentId + "/loading");
-                values.computeIfAbsent(registryKey, k -> new LoadResult<>(new HashMap<>())).results.put(attachment, readData(
-                        ops, attachment, (ResourceKey) registryKey, entry.getValue()));
+                located.computeIfAbsent(registryKey, k -> new ArrayList<>()).add(new LocatedDataMap(attachment, entry.getValue()));
             }
             profiler.pop();
         });
+        return located;
+    }
+
+    /**
+     * Decodes every located file on its own task, and collects the files of each registry once all are decoded.
+     */
+    private static CompletableFuture<Map<ResourceKey<? extends Registry<?>>, LoadResult<?>>> decode(Map<ResourceKey<? extends Registry<?>>, List<LocatedDataMap>> located, ProfilerFiller profiler, RegistryAccess access, ICondition.IContext context, Executor executor) {
+        final Map<ResourceKey<? extends Registry<?>>, RegistryDecoding> decodings = new HashMap<>();
+        final List<CompletableFuture<?>> all = new ArrayList<>();
+        located.forEach((registryKey, dataMaps) -> {
+            final RegistryDecoding decoding = new RegistryDecoding(new HashMap<>(), new LongAdder());
+            for (final LocatedDataMap dataMap : dataMaps) {
+                final var codec = DataMapFile.codec((ResourceKey) registryKey, dataMap.type());
+                final List<CompletableFuture<DataMapFile<?, ?>>> files = new ArrayList<>(dataMap.resources().size());
+                for (final Resource resource : dataMap.resources()) {
+                    files.add(CompletableFuture.supplyAsync(() -> {
+                        final long start = System.nanoTime();
+                        // Ops are created per file, as they cache the registry lookups they resolve
+                        final RegistryOps<JsonElement> ops = new ConditionalOps<>(RegistryOps.create(JsonOps.INSTANCE, access), context);
+                        final DataMapFile<?, ?> file = readFile(ops, codec, dataMap.type(), registryKey, resource);
+                        decoding.decodeNanos().add(System.nanoTime() - start);
+                        return file;
+                    }, executor));
+                }
+                decoding.files().put(dataMap.type(), files);
+                all.addAll(files);
+            }
+            decodings.put(registryKey, decoding);
+        });
 
-        return values;
+        return CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).thenApply(v -> {
+            final Map<ResourceKey<? extends Registry<?>>, LoadResult<?>> values = new HashMap<>();
+            decodings.forEach((registryKey, decoding) -> {
+                profiler.push("registry_data_maps/" + registryKey.location() + "/loading");
+                final Map<DataMapType<?, ?>, List<DataMapFile<?, ?>>> results = new HashMap<>();
+                int fileCount = 0;
+                for (final var entry : decoding.files().entrySet()) {
+                    // Keep the files in the order of the pack stack, skipping those that failed to decode
+                    final List<DataMapFile<?, ?>> files = new ArrayList<>(entry.getValue().size());
+                    for (final CompletableFuture<DataMapFile<?, ?>> file : entry.getValue()) {
+                        final DataMapFile<?, ?> decoded = file.join();
+                        if (decoded != null) {
+                            files.add(decoded);
+                        }
+                    }
+                    fileCount += entry.getValue().size();
+                    results.put(entry.getKey(), files);
+                }
+                profiler.incrementCounter("files", fileCount);
+                profiler.incrementCounter("decode_micros", (int) TimeUnit.NANOSECONDS.toMicros(decoding.decodeNanos().sum()));
+                profiler.pop();
+                values.put(registryKey, new LoadResult(results));
+            });
+            return values;
+        });
     }
 
     public static String getFolderLocation(ResourceLocation registryId) {
         return (registryId.getNamespace().equals(ResourceLocation.DEFAULT_NAMESPACE) ? "" : registryId.getNamespace() + "/") + registryId.getPath();
     }
 
-    private static <A, T> List<DataMapFile<A, T>> readData(RegistryOps<JsonElement> ops, DataMapType<T, A> attachmentType, ResourceKey<Registry<T>> registryKey, List<Resource> resources) {
-        final var codec = DataMapFile.codec(registryKey, attachmentType);
-        final List<DataMapFile<A, T>> entries = new LinkedList<>();
-        for (final Resource resource : resources) {
-            try (Reader reader = resource.openAsReader()) {
-                JsonElement jsonelement = JsonParser.parseReader(reader);
-                entries.add(codec.decode(ops, jsonelement).getOrThrow().getFirst());
-            } catch (Exception exception) {
-                LOGGER.error("Could not read data map of type {} for registry {}", attachmentType.id(), registryKey, exception);
-            }
+    @Nullable
+    private static DataMapFile<?, ?> readFile(RegistryOps<JsonElement> ops, Codec<? extends DataMapFile<?, ?>> codec, DataMapType<?, ?> attachmentType, ResourceKey<? extends Registry<?>> registryKey, Resource resource) {
+        try (Reader reader = resource.openAsReader()) {
+            JsonElement jsonelement = JsonParser.parseReader(reader);
+            return codec.decode(ops, jsonelement).getOrThrow().getFirst();
+        } catch (Exception exception) {
+            LOGGER.error("Could not read data map of type {} for registry {}", attachmentType.id(), registryKey, exception);
+            return null;
         }
-        return entries;
     }
 
+    private record LocatedDataMap(DataMapType<?, ?> type, List<Resource> resources) {}
+
+    private record RegistryDecoding(Map<DataMapType<?, ?>, List<CompletableFuture<DataMapFile<?, ?>>>> files, LongAdder decodeNanos) {}
+
     private record LoadResult<T>(Map<DataMapType<T, ?>, List<DataMapFile<?, T>>> results) {}
+
+    private record MergeResult<T>(BaseMappedRegistry<T> registry, Map<DataMapType<T, ?>, Map<ResourceKey<T>, ?>> dataMaps, long mergeNanos) {}
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.registries;
+
+import java.util.Collections;
+import java.util.Map;
+import net.minecraft.core.Holder;
+import net.minecraft.resources.ResourceKey;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The values of one data map of a registry.
+ * <p>
+ * Besides the map by key, the values are kept in an array indexed by the int id of the objects in the registry,
+ * so that queries by holder do not need to hash the key or the value, using the id cached on {@link Holder.Reference}.
+ * The array is built when the data map is set, and rebuilt on the next query after the ids of the registry changed.
+ */
+final class DataMapStorage<T, A> {
+    /**
+     * Rough size of an entry of the map by key, that is two references in a hash table at a load factor of about two thirds.
+     */
+    private static final int BYTES_PER_MAP_ENTRY = 2 * 4 * 3 / 2;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private final Map<ResourceKey<T>, A> values;
+    @Nullable
+    private volatile ValuesById byId;
+
+    DataMapStorage(Map<ResourceKey<T>, A> values) {
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    Map<ResourceKey<T>, A> values() {
+        return values;
+    }
+
+    @Nullable
+    A get(ResourceKey<T> key) {
+        return values.get(key);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    A get(BaseMappedRegistry<T> registry, Holder<T> holder) {
+        if (holder instanceof Holder.Reference<T> reference && reference.isBound()) {
+            // The id is cached on the holder, so that it does not need to be looked up by value
+            int id = reference.getRegistryId();
+            Object[] valuesById = byId(registry);
+            if (id >= 0 && id < valuesById.length && registry.byId(id) == reference.value()) {
+                return (A) valuesById[id];
+            }
+        }
+        // Direct holders, objects that were not registered when the array was built, or holders of another registry
+        return holder.unwrapKey().map(values::get).orElse(null);
+    }
+
+    /**
+     * {@return the values indexed by registry id, rebuilding them if the ids of the registry changed since they were built}
+     */
+    Object[] byId(BaseMappedRegistry<T> registry) {
+        int version = registry.getIdVersion();
+        int size = registry.size();
+        ValuesById byId = this.byId;
+        if (byId == null || byId.version != version || byId.values.length != size) {
+            Object[] valuesById = new Object[size];
+            values.forEach((key, value) -> {
+                int id = registry.getId(key);
+                if (id >= 0 && id < size) {
+                    valuesById[id] = value;
+                }
+            });
+            this.byId = byId = new ValuesById(version, valuesById);
+        }
+        return byId.values;
+    }
+
+    /**
+     * {@return an estimate of the heap used by the map by key and by the array indexed by id, in bytes, excluding the values themselves}
+     */
+    long estimateBytes() {
+        ValuesById byId = this.byId;
+        long arrayBytes = byId == null ? 0 : ARRAY_HEADER_BYTES + (long) byId.values.length * REFERENCE_BYTES;
+        return (long) values.size() * BYTES_PER_MAP_ENTRY + arrayBytes;
+    }
+
+    int byIdLength() {
+        ValuesById byId = this.byId;
+        return byId == null ? 0 : byId.values.length;
+    }
+
+    private record ValuesById(int version, Object[] values) {}
+}
@@ -6,6 +6,7 @@
 package net.neoforged.neoforge.registries;
 
 import java.util.Map;
+import net.minecraft.core.Holder;
 import net.minecraft.core.Registry;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
@@ -129,6 +130,18 @@ public interface IRegistryExtension<T> {
     @Nullable
     <A> A getData(DataMapType<T, A> type, ResourceKey<T> key);
 
+    /**
+     * {@return the data map value attached with the object of the holder, or {@code null} if there's no attached value}
+     * <p>
+     * Unlike {@link #getData(DataMapType, ResourceKey)}, this looks the value up by the id of the object in this registry.
+     *
+     * @param type   the type of the data map
+     * @param holder the holder of the object to get the value for
+     * @param <A>    the data type
+     */
+    @Nullable
+    <A> A getData(DataMapType<T, A> type, Holder<T> holder);
+
     /**
      * {@return the data map of the given {@code type}}
      *
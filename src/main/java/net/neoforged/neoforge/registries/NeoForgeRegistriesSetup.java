@@ -79,5 +79,6 @@ public class NeoForgeRegistriesSetup {
         BuiltInRegistries.ITEM.addCallback(NeoForgeRegistryCallbacks.ItemCallbacks.INSTANCE);
         BuiltInRegistries.ATTRIBUTE.addCallback(NeoForgeRegistryCallbacks.AttributeCallbacks.INSTANCE);
         BuiltInRegistries.POINT_OF_INTEREST_TYPE.addCallback(NeoForgeRegistryCallbacks.PoiTypeCallbacks.INSTANCE);
+        NeoForgeRegistries.ATTACHMENT_TYPES.addCallback(NeoForgeRegistryCallbacks.AttachmentTypeCallbacks.INSTANCE);
     }
 }
@@ -23,6 +23,8 @@ import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.state.BlockBehaviour;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.levelgen.DebugLevelSource;
+import net.neoforged.neoforge.attachment.AttachmentInternals;
+import net.neoforged.neoforge.attachment.AttachmentType;
 import net.neoforged.neoforge.registries.callback.AddCallback;
 import net.neoforged.neoforge.registries.callback.BakeCallback;
 import net.neoforged.neoforge.registries.callback.ClearCallback;
@@ -101,6 +103,15 @@ class NeoForgeRegistryCallbacks {
         }
     }
 
+    static class AttachmentTypeCallbacks implements BakeCallback<AttachmentType<?>> {
+        static final AttachmentTypeCallbacks INSTANCE = new AttachmentTypeCallbacks();
+
+        @Override
+        public void onBake(Registry<AttachmentType<?>> registry) {
+            AttachmentInternals.assignIndices(registry);
+        }
+    }
+
     static class PoiTypeCallbacks implements AddCallback<PoiType>, ClearCallback<PoiType> {
         static final PoiTypeCallbacks INSTANCE = new PoiTypeCallbacks();
         static final Map<BlockState, Holder<PoiType>> BLOCKSTATE_TO_POI_TYPE_MAP = new HashMap<>();
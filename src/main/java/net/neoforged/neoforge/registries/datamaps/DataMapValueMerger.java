@@ -20,6 +20,9 @@ import net.minecraft.tags.TagKey;
  * An interface used to merge two conflicting registry data map values attached to the same object. <br>
  * Using a merger you can, for example, merge list data maps that come from different sources, when
  * otherwise the newest entry would win and override the older one.
+ * <p>
+ * Data maps are merged on a background thread after a reload, and data maps of different types may be merged at the same time.
+ * Implementations must therefore not modify shared state.
  *
  * @param <T> the data type
  * @param <R> the type of the registry this merger is for
@@ -15,6 +15,9 @@ import net.minecraft.tags.TagKey;
 /**
  * An interface used to remove values from registry data maps. This allows "decomposing" the data
  * and removing only a specific part of it (like a specific key in the case of {@linkplain java.util.Map map-based} data).
+ * <p>
+ * Data maps are merged on a background thread after a reload, and data maps of different types may be merged at the same time.
+ * Implementations must therefore not modify shared state.
  *
  * @param <T> the data type
  * @param <R> the type of the registry this remover is for
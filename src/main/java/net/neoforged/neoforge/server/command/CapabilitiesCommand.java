@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.server.command;
+
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
+
+class CapabilitiesCommand {
+    static ArgumentBuilder<CommandSourceStack, ?> register() {
+        return Commands.literal("capabilities")
+                .requires(cs -> cs.hasPermission(2)) //permission
+                .executes(ctx -> {
+                    int listeners = 0;
+                    for (ServerLevel level : ctx.getSource().getServer().getAllLevels()) {
+                        var holder = level.getCapabilityListenerHolder();
+                        listeners += holder.getListenerCount();
+                        ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.capabilities.level", level.dimension().location().toString(),
+                                holder.getListenerCount(), holder.getLastTickInvalidationRequests(), holder.getLastTickNotifiedListeners(),
+                                holder.getStaleReferenceSweeps(), holder.getCacheHits(), holder.getCacheMisses()), false);
+                    }
+                    return listeners;
+                });
+    }
+}
@@ -5,18 +5,17 @@
 
 package net.neoforged.neoforge.server.command;
 
-import com.google.common.collect.Maps;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.builder.ArgumentBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.SharedSuggestionProvider;
@@ -26,15 +25,16 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.level.Level;
-import org.apache.commons.lang3.tuple.MutablePair;
+import net.neoforged.neoforge.common.world.EntityCensus;
 import org.apache.commons.lang3.tuple.Pair;
 
 class EntityCommand {
     static ArgumentBuilder<CommandSourceStack, ?> register() {
         return Commands.literal("entity")
-                .then(EntityListCommand.register()); //TODO: //Kill, spawn, etc..
+                .then(EntityListCommand.register())
+                .then(EntityHotspotsCommand.register()); //TODO: //Kill, spawn, etc..
     }
 
     private static class EntityListCommand {
@@ -54,71 +54,74 @@ class EntityCommand {
         }
 
         private static int execute(CommandSourceStack sender, String filter, ResourceKey<Level> dim) throws CommandSyntaxException {
-            final String cleanFilter = filter.replace("?", ".?").replace("*", ".*?");
-
-            Set<ResourceLocation> names = BuiltInRegistries.ENTITY_TYPE.keySet().stream().filter(n -> n.toString().matches(cleanFilter)).collect(Collectors.toSet());
-
-            if (names.isEmpty())
-                throw INVALID_FILTER.create();
-
             ServerLevel level = sender.getServer().getLevel(dim); //TODO: DimensionManager so we can hotload? DimensionManager.getWorld(sender.getServer(), dim, false, false);
             if (level == null)
                 throw INVALID_DIMENSION.create(dim);
 
-            Map<ResourceLocation, MutablePair<Integer, Map<ChunkPos, Integer>>> list = Maps.newHashMap();
-            level.getEntities().getAll().forEach(e -> {
-                MutablePair<Integer, Map<ChunkPos, Integer>> info = list.computeIfAbsent(BuiltInRegistries.ENTITY_TYPE.getKey(e.getType()), k -> MutablePair.of(0, Maps.newHashMap()));
-                ChunkPos chunk = new ChunkPos(e.blockPosition());
-                info.left++;
-                info.right.put(chunk, info.right.getOrDefault(chunk, 0) + 1);
-            });
-
-            if (names.size() == 1) {
-                ResourceLocation name = names.iterator().next();
-                Pair<Integer, Map<ChunkPos, Integer>> info = list.get(name);
-                if (info == null)
+            EntityCensus census = level.getEntityCensus();
+            ResourceLocation exactName = filter.contains("*") || filter.contains("?") ? null : ResourceLocation.tryParse(filter);
+            if (exactName != null) {
+                EntityType<?> type = BuiltInRegistries.ENTITY_TYPE.getOptional(exactName).orElseThrow(INVALID_FILTER::create);
+                int total = census.getCount(type);
+                if (total == 0)
                     throw NO_ENTITIES.create();
 
-                sender.sendSuccess(() -> Component.translatable("commands.neoforge.entity.list.single.header", name.toString(), info.getLeft()), false);
-                List<Map.Entry<ChunkPos, Integer>> toSort = new ArrayList<>();
-                toSort.addAll(info.getRight().entrySet());
-                toSort.sort((a, b) -> {
-                    if (Objects.equals(a.getValue(), b.getValue()))
-                        return a.getKey().toString().compareTo(b.getKey().toString());
-                    else
-                        return b.getValue() - a.getValue();
-                });
+                sender.sendSuccess(() -> Component.translatable("commands.neoforge.entity.list.single.header", exactName.toString(), total), false);
+                sendChunks(sender, census.getTopChunks(type, 10));
+                return census.getChunkCount(type);
+            }
 
-                long limit = 10;
-                for (Map.Entry<ChunkPos, Integer> e : toSort) {
-                    if (limit-- == 0) break;
-                    sender.sendSuccess(() -> Component.literal("  " + e.getValue() + ": " + e.getKey().x + ", " + e.getKey().z), false);
-                }
-                return toSort.size();
-            } else {
+            // Only the types of the entities in the level are matched, the registry is only checked to report invalid filters
+            Pattern pattern = Pattern.compile(filter.replace("?", ".?").replace("*", ".*?"));
+            List<Pair<ResourceLocation, Integer>> info = new ArrayList<>();
+            for (Reference2IntMap.Entry<EntityType<?>> entry : census.getCountsByType().reference2IntEntrySet()) {
+                ResourceLocation name = BuiltInRegistries.ENTITY_TYPE.getKey(entry.getKey());
+                if (pattern.matcher(name.toString()).matches())
+                    info.add(Pair.of(name, entry.getIntValue()));
+            }
 
-                List<Pair<ResourceLocation, Integer>> info = new ArrayList<>();
-                list.forEach((key, value) -> {
-                    if (names.contains(key)) {
-                        Pair<ResourceLocation, Integer> of = Pair.of(key, value.left);
-                        info.add(of);
-                    }
-                });
-                info.sort((a, b) -> {
-                    if (Objects.equals(a.getRight(), b.getRight()))
-                        return a.getKey().toString().compareTo(b.getKey().toString());
-                    else
-                        return b.getRight() - a.getRight();
-                });
+            if (info.isEmpty()) {
+                if (BuiltInRegistries.ENTITY_TYPE.keySet().stream().noneMatch(n -> pattern.matcher(n.toString()).matches()))
+                    throw INVALID_FILTER.create();
+                throw NO_ENTITIES.create();
+            }
 
-                if (info.size() == 0)
-                    throw NO_ENTITIES.create();
+            info.sort((a, b) -> {
+                if (Objects.equals(a.getRight(), b.getRight()))
+                    return a.getKey().toString().compareTo(b.getKey().toString());
+                else
+                    return b.getRight() - a.getRight();
+            });
 
-                int count = info.stream().mapToInt(Pair::getRight).sum();
-                sender.sendSuccess(() -> Component.translatable("commands.neoforge.entity.list.multiple.header", count), false);
-                info.forEach(e -> sender.sendSuccess(() -> Component.literal("  " + e.getValue() + ": " + e.getKey()), false));
-                return info.size();
-            }
+            int count = info.stream().mapToInt(Pair::getRight).sum();
+            sender.sendSuccess(() -> Component.translatable("commands.neoforge.entity.list.multiple.header", count), false);
+            info.forEach(e -> sender.sendSuccess(() -> Component.literal("  " + e.getValue() + ": " + e.getKey()), false));
+            return info.size();
         }
     }
+
+    private static class EntityHotspotsCommand {
+        static ArgumentBuilder<CommandSourceStack, ?> register() {
+            return Commands.literal("hotspots")
+                    .requires(cs -> cs.hasPermission(2)) //permission
+                    .then(Commands.argument("limit", IntegerArgumentType.integer(1, 100))
+                            .then(Commands.argument("dim", DimensionArgument.dimension())
+                                    .executes(ctx -> execute(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "limit"), DimensionArgument.getDimension(ctx, "dim"))))
+                            .executes(ctx -> execute(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "limit"), ctx.getSource().getLevel())))
+                    .executes(ctx -> execute(ctx.getSource(), 10, ctx.getSource().getLevel()));
+        }
+
+        private static int execute(CommandSourceStack sender, int limit, ServerLevel level) {
+            EntityCensus census = level.getEntityCensus();
+            sender.sendSuccess(() -> Component.translatable("commands.neoforge.entity.hotspots.header", level.dimension().location().toString(), census.getTotal(), census.getChunkCount()), false);
+            List<EntityCensus.ChunkCount> chunks = census.getTopChunks(limit);
+            sendChunks(sender, chunks);
+            return chunks.size();
+        }
+    }
+
+    private static void sendChunks(CommandSourceStack sender, List<EntityCensus.ChunkCount> chunks) {
+        for (EntityCensus.ChunkCount chunk : chunks)
+            sender.sendSuccess(() -> Component.literal("  " + chunk.count() + ": " + chunk.pos().x + ", " + chunk.pos().z), false);
+    }
 }
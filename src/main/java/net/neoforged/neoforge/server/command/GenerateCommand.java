@@ -11,6 +11,8 @@ import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.builder.ArgumentBuilder;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
+import java.text.DecimalFormat;
+import java.util.Locale;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
@@ -19,6 +21,7 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.level.ChunkPos;
 import net.neoforged.neoforge.server.command.generation.GenerationBar;
+import net.neoforged.neoforge.server.command.generation.GenerationProgress;
 import net.neoforged.neoforge.server.command.generation.GenerationTask;
 
 /**
@@ -26,6 +29,8 @@ import net.neoforged.neoforge.server.command.generation.GenerationTask;
  * Original code: <a href="https://github.com/jaskarth/fabric-chunkpregenerator">https://github.com/jaskarth/fabric-chunkpregenerator</a>
  */
 class GenerateCommand {
+    private static final DecimalFormat RATE_FORMAT = new DecimalFormat("0.0");
+
     private static GenerationTask activeTask;
     private static GenerationBar generationBar;
 
@@ -45,6 +50,9 @@ class GenerateCommand {
         builder.then(Commands.literal("status")
                 .executes(ctx -> getGenerationStatus(ctx.getSource())));
 
+        builder.then(Commands.literal("reset")
+                .executes(ctx -> resetGenerationProgress(ctx.getSource())));
+
         builder.then(Commands.literal("help")
                 .executes(ctx -> getGenerationHelp(ctx.getSource())));
 
@@ -113,6 +121,14 @@ class GenerateCommand {
 
             double percent = (double) count / total * 100.0;
             source.sendSuccess(() -> Component.translatable("commands.neoforge.chunkgen.status", count, total, percent), true);
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.chunkgen.rate",
+                    RATE_FORMAT.format(activeTask.getChunksPerSecond()), RATE_FORMAT.format(activeTask.getAverageChunksPerSecond()), activeTask.getWindow()), false);
+
+            long eta = activeTask.getEstimatedSecondsRemaining();
+            if (eta >= 0) {
+                String formattedEta = String.format(Locale.ROOT, "%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60);
+                source.sendSuccess(() -> Component.translatable("commands.neoforge.chunkgen.eta", formattedEta), false);
+            }
         } else {
             source.sendSuccess(() -> Component.translatable("commands.neoforge.chunkgen.not_running"), false);
         }
@@ -120,6 +136,17 @@ class GenerateCommand {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int resetGenerationProgress(CommandSourceStack source) {
+        if (activeTask != null) {
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.chunkgen.already_running"), true);
+            return Command.SINGLE_SUCCESS;
+        }
+
+        GenerationProgress.get(source.getLevel()).clear();
+        source.sendSuccess(() -> Component.translatable("commands.neoforge.chunkgen.progress_reset", source.getLevel().dimension().location().toString()), true);
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static int getGenerationHelp(CommandSourceStack source) {
         source.sendSuccess(() -> Component.translatable("commands.neoforge.chunkgen.help_line"), false);
         return Command.SINGLE_SUCCESS;
@@ -19,6 +19,9 @@ public class NeoForgeCommand {
                         .then(TrackCommand.register())
                         .then(EntityCommand.register())
                         .then(GenerateCommand.register())
+                        .then(WorkersCommand.register())
+                        .then(NetworkCommand.register())
+                        .then(CapabilitiesCommand.register())
                         .then(DimensionsCommand.register())
                         .then(ModListCommand.register())
                         .then(TagsCommand.register())
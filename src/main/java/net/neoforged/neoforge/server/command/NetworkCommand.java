@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.server.command;
+
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import java.text.DecimalFormat;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.arguments.EntityArgument;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.neoforge.network.NetworkMetrics;
+
+class NetworkCommand {
+    private static final DecimalFormat TIME_FORMATTER = new DecimalFormat("########0.0");
+    private static final int MAX_ENTRIES = 10;
+
+    static ArgumentBuilder<CommandSourceStack, ?> register() {
+        return Commands.literal("network")
+                .requires(cs -> cs.hasPermission(2)) //permission
+                .then(Commands.literal("stats")
+                        .executes(ctx -> showChannels(ctx.getSource()))
+                        .then(Commands.literal("enable").executes(ctx -> setEnabled(ctx.getSource(), true)))
+                        .then(Commands.literal("disable").executes(ctx -> setEnabled(ctx.getSource(), false)))
+                        .then(Commands.literal("reset").executes(ctx -> {
+                            NetworkMetrics.reset();
+                            ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.reset"), true);
+                            return 0;
+                        }))
+                        .then(Commands.literal("player")
+                                .then(Commands.argument("player", EntityArgument.player())
+                                        .executes(ctx -> showPlayer(ctx.getSource(), EntityArgument.getPlayer(ctx, "player"))))));
+    }
+
+    private static int setEnabled(CommandSourceStack source, boolean enabled) {
+        NetworkMetrics.setEnabled(enabled);
+        source.sendSuccess(() -> Component.translatable(enabled ? "commands.neoforge.network.stats.enabled" : "commands.neoforge.network.stats.disabled"), true);
+        return 0;
+    }
+
+    private static int showChannels(CommandSourceStack source) {
+        if (!NetworkMetrics.isEnabled()) {
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.not_enabled"), false);
+        }
+
+        List<Map.Entry<ResourceLocation, NetworkMetrics.ChannelMetrics>> channels = topByBytes(NetworkMetrics.getChannels());
+        source.sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.summary", NetworkMetrics.getChannels().size(), channels.size()), false);
+        for (var entry : channels) {
+            var metrics = entry.getValue();
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.channel", entry.getKey().toString(),
+                    metrics.packetsIn(), metrics.bytesIn(), metrics.packetsOut(), metrics.bytesOut(), metrics.splitPackets()), false);
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.latency",
+                    format(metrics.encodeNanos()), format(metrics.decodeNanos()), format(metrics.handleNanos())), false);
+        }
+        return channels.size();
+    }
+
+    private static int showPlayer(CommandSourceStack source, ServerPlayer player) {
+        if (!NetworkMetrics.isEnabled()) {
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.not_enabled"), false);
+        }
+
+        Map<ResourceLocation, NetworkMetrics.Counters> metrics = NetworkMetrics.getConnection(player.connection.getConnection());
+        List<Map.Entry<ResourceLocation, NetworkMetrics.Counters>> channels = topByBytes(metrics);
+        source.sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.player", player.getDisplayName(), metrics.size(), channels.size()), false);
+        for (var entry : channels) {
+            var counters = entry.getValue();
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.network.stats.player_channel", entry.getKey().toString(),
+                    counters.packetsIn(), counters.bytesIn(), counters.packetsOut(), counters.bytesOut()), false);
+        }
+        return channels.size();
+    }
+
+    private static <T extends NetworkMetrics.Counters> List<Map.Entry<ResourceLocation, T>> topByBytes(Map<ResourceLocation, T> metrics) {
+        return metrics.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<ResourceLocation, T> entry) -> entry.getValue().totalBytes()).reversed())
+                .limit(MAX_ENTRIES)
+                .toList();
+    }
+
+    private static String format(NetworkMetrics.LatencyHistogram histogram) {
+        if (histogram.count() == 0) {
+            return "-";
+        }
+        return formatMicros(histogram.meanNanos()) + "/" + formatMicros(histogram.percentileNanos(0.99)) + "/" + formatMicros(histogram.maxNanos());
+    }
+
+    private static String formatMicros(long nanos) {
+        return TIME_FORMATTER.format(nanos * 1.0E-3D);
+    }
+}
@@ -5,9 +5,13 @@
 
 package net.neoforged.neoforge.server.command;
 
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.builder.ArgumentBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import java.text.DecimalFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.arguments.DimensionArgument;
@@ -17,6 +21,9 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.TimeUtil;
 import net.minecraft.world.level.dimension.DimensionType;
+import net.neoforged.neoforge.server.timings.TickPhaseProfiler;
+import net.neoforged.neoforge.server.timings.TimingHistogram;
+import org.jetbrains.annotations.Nullable;
 
 class TPSCommand {
     private static final DecimalFormat TIME_FORMATTER = new DecimalFormat("########0.000");
@@ -25,8 +32,27 @@ class TPSCommand {
     static ArgumentBuilder<CommandSourceStack, ?> register() {
         return Commands.literal("tps")
                 .requires(cs -> cs.hasPermission(0)) //permission
+                .then(Commands.literal("spikes")
+                        .requires(cs -> cs.hasPermission(2))
+                        .executes(ctx -> sendSpikes(ctx.getSource()))
+                        .then(Commands.literal("threshold")
+                                .requires(cs -> cs.hasPermission(2))
+                                .then(Commands.argument("millis", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> {
+                                            int millis = IntegerArgumentType.getInteger(ctx, "millis");
+                                            TickPhaseProfiler.setSpikeThresholdNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+                                            ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tps.spikes.threshold", millis), true);
+                                            return 1;
+                                        })))
+                        .then(Commands.literal("clear")
+                                .requires(cs -> cs.hasPermission(2))
+                                .executes(ctx -> {
+                                    TickPhaseProfiler.clearLagSpikes();
+                                    ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tps.spikes.cleared"), true);
+                                    return 1;
+                                })))
                 .then(Commands.argument("dim", DimensionArgument.dimension())
-                        .executes(ctx -> sendTime(ctx.getSource(), DimensionArgument.getDimension(ctx, "dim"))))
+                        .executes(ctx -> sendTimeWithPhases(ctx.getSource(), DimensionArgument.getDimension(ctx, "dim"))))
                 .executes(ctx -> {
                     for (ServerLevel dim : ctx.getSource().getServer().getAllLevels())
                         sendTime(ctx.getSource(), dim);
@@ -35,6 +61,11 @@ class TPSCommand {
                     double meanTickTime = mean(times) * 1.0E-6D;
                     double meanTPS = TimeUtil.MILLISECONDS_PER_SECOND / Math.max(meanTickTime, ctx.getSource().getServer().tickRateManager().millisecondsPerTick());
                     ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tps.summary.all", TIME_FORMATTER.format(meanTickTime), TIME_FORMATTER.format(meanTPS)), false);
+                    sendPercentiles(ctx.getSource(), TickPhaseProfiler.getTickTimes());
+                    for (TickPhaseProfiler.Phase phase : TickPhaseProfiler.Phase.values()) {
+                        if (!phase.isPerLevel())
+                            sendPhase(ctx.getSource(), phase, TickPhaseProfiler.getPhaseTimes(null, phase));
+                    }
 
                     return 0;
                 });
@@ -54,6 +85,59 @@ class TPSCommand {
         return 1;
     }
 
+    private static int sendTimeWithPhases(CommandSourceStack cs, ServerLevel dim) throws CommandSyntaxException {
+        sendTime(cs, dim);
+        TimingHistogram tickTimes = TickPhaseProfiler.getLevelTickTimes(dim.dimension());
+        if (tickTimes == null)
+            return 1;
+
+        sendPercentiles(cs, tickTimes);
+        for (TickPhaseProfiler.Phase phase : TickPhaseProfiler.Phase.values()) {
+            if (phase.isPerLevel())
+                sendPhase(cs, phase, TickPhaseProfiler.getPhaseTimes(dim.dimension(), phase));
+        }
+        return 1;
+    }
+
+    private static void sendPercentiles(CommandSourceStack cs, TimingHistogram histogram) {
+        cs.sendSuccess(() -> Component.translatable("commands.neoforge.tps.percentiles", histogram.count(),
+                millis(histogram.percentileNanos(0.5)), millis(histogram.percentileNanos(0.95)), millis(histogram.percentileNanos(0.99)), millis(histogram.maxNanos())), false);
+    }
+
+    private static void sendPhase(CommandSourceStack cs, TickPhaseProfiler.Phase phase, @Nullable TimingHistogram histogram) {
+        if (histogram == null || histogram.count() == 0)
+            return;
+
+        cs.sendSuccess(() -> Component.translatable("commands.neoforge.tps.phase", phase.getSerializedName(), millis(histogram.meanNanos()),
+                millis(histogram.percentileNanos(0.5)), millis(histogram.percentileNanos(0.95)), millis(histogram.percentileNanos(0.99)), millis(histogram.maxNanos())), false);
+    }
+
+    private static int sendSpikes(CommandSourceStack cs) {
+        List<TickPhaseProfiler.LagSpike> spikes = TickPhaseProfiler.getLagSpikes();
+        if (spikes.isEmpty()) {
+            cs.sendSuccess(() -> Component.translatable("commands.neoforge.tps.spikes.none", millis(TickPhaseProfiler.getSpikeThresholdNanos())), false);
+            return 0;
+        }
+
+        for (TickPhaseProfiler.LagSpike spike : spikes) {
+            Map.Entry<String, Long> slowest = spike.slowestPhase();
+            cs.sendSuccess(() -> Component.translatable("commands.neoforge.tps.spikes.entry", spike.tickCount(), millis(spike.nanos()),
+                    slowest != null ? slowest.getKey() : "-", millis(slowest != null ? slowest.getValue() : 0)), false);
+            if (spike.offenders().isEmpty()) {
+                cs.sendSuccess(() -> Component.translatable("commands.neoforge.tps.spikes.no_offenders"), false);
+            }
+            for (TickPhaseProfiler.Offender offender : spike.offenders()) {
+                cs.sendSuccess(() -> Component.translatable("commands.neoforge.tps.spikes.offender", offender.type().toString(), offender.dimension().toString(),
+                        offender.chunk().toString(), millis(offender.nanos())), false);
+            }
+        }
+        return spikes.size();
+    }
+
+    private static String millis(long nanos) {
+        return TIME_FORMATTER.format(nanos * 1.0E-6D);
+    }
+
     private static long mean(long[] values) {
         long sum = 0L;
         for (long v : values)
@@ -5,58 +5,71 @@
 
 package net.neoforged.neoforge.server.command;
 
+import com.google.gson.stream.JsonWriter;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.logging.LogUtils;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.function.Function;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
-import net.minecraft.core.BlockPos;
-import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.network.chat.Component;
-import net.minecraft.world.entity.Entity;
-import net.minecraft.world.level.block.entity.BlockEntity;
-import net.neoforged.neoforge.server.timings.ObjectTimings;
+import net.neoforged.fml.loading.FMLLoader;
 import net.neoforged.neoforge.server.timings.TimeTracker;
+import org.slf4j.Logger;
 
 class TrackCommand {
+    private static final Logger LOGGER = LogUtils.getLogger();
     private static final DecimalFormat TIME_FORMAT = new DecimalFormat("#####0.00");
+    private static final int MAX_ENTRIES = 10;
 
     static ArgumentBuilder<CommandSourceStack, ?> register() {
         return Commands.literal("track")
                 .then(StartTrackingCommand.register())
                 .then(ResetTrackingCommand.register())
-                .then(TrackResultsEntity.register())
-                .then(TrackResultsBlockEntity.register())
-                .then(StartTrackingCommand.register());
+                .then(TrackResults.register("entity", TimeTracker.ENTITY_UPDATE))
+                .then(TrackResults.register("blockentity", TimeTracker.BLOCK_ENTITY_UPDATE))
+                .then(ExportTrackingCommand.register());
     }
 
     private static class StartTrackingCommand {
         static ArgumentBuilder<CommandSourceStack, ?> register() {
             return Commands.literal("start")
                     .requires(cs -> cs.hasPermission(2)) //permission
-                    .then(Commands.literal("blockentity")
-                            .then(Commands.argument("duration", IntegerArgumentType.integer(1))
-                                    .executes(ctx -> {
-                                        int duration = IntegerArgumentType.getInteger(ctx, "duration");
-                                        TimeTracker.BLOCK_ENTITY_UPDATE.reset();
-                                        TimeTracker.BLOCK_ENTITY_UPDATE.enable(duration);
-                                        ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tracking.be.enabled", duration), true);
-                                        return 0;
-                                    })))
-                    .then(Commands.literal("entity")
-                            .then(Commands.argument("duration", IntegerArgumentType.integer(1))
-                                    .executes(ctx -> {
-                                        int duration = IntegerArgumentType.getInteger(ctx, "duration");
-                                        TimeTracker.ENTITY_UPDATE.reset();
-                                        TimeTracker.ENTITY_UPDATE.enable(duration);
-                                        ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tracking.entity.enabled", duration), true);
-                                        return 0;
-                                    })));
+                    .then(start("blockentity", TimeTracker.BLOCK_ENTITY_UPDATE, "commands.neoforge.tracking.be.enabled"))
+                    .then(start("entity", TimeTracker.ENTITY_UPDATE, "commands.neoforge.tracking.entity.enabled"));
+        }
+
+        /**
+         * {@code start <type> <duration> [sampleInterval]}, where a duration of 0 tracks until the tracker is reset
+         */
+        private static ArgumentBuilder<CommandSourceStack, ?> start(String name, TimeTracker<?> tracker, String enabledKey) {
+            return Commands.literal(name)
+                    .then(Commands.argument("duration", IntegerArgumentType.integer(0))
+                            .executes(ctx -> enable(ctx, tracker, enabledKey, 1))
+                            .then(Commands.argument("sampleInterval", IntegerArgumentType.integer(1))
+                                    .executes(ctx -> enable(ctx, tracker, enabledKey, IntegerArgumentType.getInteger(ctx, "sampleInterval")))));
+        }
+
+        private static int enable(CommandContext<CommandSourceStack> ctx, TimeTracker<?> tracker, String enabledKey, int sampleInterval) {
+            int duration = IntegerArgumentType.getInteger(ctx, "duration");
+            tracker.reset();
+            tracker.enable(duration, sampleInterval);
+            if (duration > 0) {
+                ctx.getSource().sendSuccess(() -> Component.translatable(enabledKey, duration), true);
+            } else {
+                ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tracking.enabled_until_reset", tracker.getName()), true);
+            }
+            if (sampleInterval > 1) {
+                ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tracking.sampling", sampleInterval), true);
+            }
+            return 0;
         }
     }
 
@@ -81,63 +94,68 @@ class TrackCommand {
 
     private static class TrackResults {
         /**
-         * Returns the time objects recorded by the time tracker sorted by average time
-         *
-         * @return A list of time objects
+         * {@code <type> [type|mod|chunk|dimension]}, grouping by type by default
          */
-        private static <T> List<ObjectTimings<T>> getSortedTimings(TimeTracker<T> tracker) {
-            ArrayList<ObjectTimings<T>> list = new ArrayList<>();
-
-            list.addAll(tracker.getTimingData());
-            list.sort(Comparator.comparingDouble(ObjectTimings::getAverageTimings));
-            Collections.reverse(list);
-
-            return list;
+        static ArgumentBuilder<CommandSourceStack, ?> register(String name, TimeTracker<?> tracker) {
+            LiteralArgumentBuilder<CommandSourceStack> builder = Commands.literal(name)
+                    .executes(ctx -> execute(ctx.getSource(), tracker, TimeTracker.Grouping.TYPE));
+            for (TimeTracker.Grouping grouping : TimeTracker.Grouping.values()) {
+                builder.then(Commands.literal(grouping.getSerializedName())
+                        .executes(ctx -> execute(ctx.getSource(), tracker, grouping)));
+            }
+            return builder;
         }
 
-        private static <T> int execute(CommandSourceStack source, TimeTracker<T> tracker, Function<ObjectTimings<T>, Component> toString) {
-            List<ObjectTimings<T>> timingsList = getSortedTimings(tracker);
+        private static int execute(CommandSourceStack source, TimeTracker<?> tracker, TimeTracker.Grouping grouping) {
+            List<TimeTracker.Timings> timingsList = tracker.getTimingData(grouping);
             if (timingsList.isEmpty()) {
                 source.sendSuccess(() -> Component.translatable("commands.neoforge.tracking.no_data"), true);
-            } else {
-                timingsList.stream()
-                        .filter(timings -> timings.getObject().get() != null)
-                        .limit(10)
-                        .forEach(timings -> source.sendSuccess(() -> toString.apply(timings), true));
+                return 0;
             }
+
+            source.sendSuccess(() -> Component.translatable("commands.neoforge.tracking.summary",
+                    tracker.getSampleCount(), tracker.getSampleInterval(), Math.min(timingsList.size(), MAX_ENTRIES)), true);
+            timingsList.stream()
+                    .limit(MAX_ENTRIES)
+                    .forEach(timings -> source.sendSuccess(() -> Component.translatable("commands.neoforge.tracking.grouped_entry",
+                            timings.key(), timings.count(), formatTime(timings.totalNanos()), formatTime(timings.meanNanos()),
+                            formatTime(timings.percentileNanos(0.5)), formatTime(timings.percentileNanos(0.99)), formatTime(timings.maxNanos())), true));
             return 0;
         }
-    }
 
-    private static class TrackResultsEntity {
-        static ArgumentBuilder<CommandSourceStack, ?> register() {
-            return Commands.literal("entity").executes(ctx -> TrackResults.execute(ctx.getSource(), TimeTracker.ENTITY_UPDATE, data -> {
-                Entity entity = data.getObject().get();
-                if (entity == null)
-                    return Component.translatable("commands.neoforge.tracking.invalid");
-
-                BlockPos pos = entity.blockPosition();
-                double averageTimings = data.getAverageTimings();
-                String tickTime = (averageTimings > 1000 ? TIME_FORMAT.format(averageTimings / 1000) : TIME_FORMAT.format(averageTimings)) + (averageTimings < 1000 ? "\u03bcs" : "ms");
-
-                return Component.translatable("commands.neoforge.tracking.timing_entry", BuiltInRegistries.ENTITY_TYPE.getKey(entity.getType()).toString(), entity.level().dimension().location().toString(), pos.getX(), pos.getY(), pos.getZ(), tickTime);
-            }));
+        private static String formatTime(long nanos) {
+            if (nanos < 0)
+                return "-";
+            double micros = nanos / 1000.0;
+            return (micros > 1000 ? TIME_FORMAT.format(micros / 1000) : TIME_FORMAT.format(micros)) + (micros > 1000 ? "ms" : "μs");
         }
     }
 
-    private static class TrackResultsBlockEntity {
+    private static class ExportTrackingCommand {
         static ArgumentBuilder<CommandSourceStack, ?> register() {
-            return Commands.literal("blockentity").executes(ctx -> TrackResults.execute(ctx.getSource(), TimeTracker.BLOCK_ENTITY_UPDATE, data -> {
-                BlockEntity be = data.getObject().get();
-                if (be == null)
-                    return Component.translatable("commands.neoforge.tracking.invalid");
-
-                BlockPos pos = be.getBlockPos();
-
-                double averageTimings = data.getAverageTimings();
-                String tickTime = (averageTimings > 1000 ? TIME_FORMAT.format(averageTimings / 1000) : TIME_FORMAT.format(averageTimings)) + (averageTimings < 1000 ? "\u03bcs" : "ms");
-                return Component.translatable("commands.neoforge.tracking.timing_entry", BuiltInRegistries.BLOCK_ENTITY_TYPE.getKey(be.getType()).toString(), be.getLevel().dimension().location().toString(), pos.getX(), pos.getY(), pos.getZ(), tickTime);
-            }));
+            return Commands.literal("export")
+                    .requires(cs -> cs.hasPermission(2)) //permission
+                    .executes(ctx -> {
+                        Path directory = FMLLoader.getGamePath().resolve("dumps").resolve("timings");
+                        try {
+                            Files.createDirectories(directory);
+                            for (TimeTracker<?> tracker : List.of(TimeTracker.ENTITY_UPDATE, TimeTracker.BLOCK_ENTITY_UPDATE)) {
+                                try (Writer writer = Files.newBufferedWriter(directory.resolve(tracker.getName() + ".csv"))) {
+                                    tracker.writeCsv(writer);
+                                }
+                                try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(directory.resolve(tracker.getName() + ".json")))) {
+                                    writer.setIndent("  ");
+                                    tracker.writeJson(writer);
+                                }
+                            }
+                        } catch (IOException e) {
+                            LOGGER.error("Failed to export timings to {}", directory, e);
+                            ctx.getSource().sendFailure(Component.translatable("commands.neoforge.tracking.export.failure", directory.toString()));
+                            return 0;
+                        }
+                        ctx.getSource().sendSuccess(() -> Component.translatable("commands.neoforge.tracking.export.success", FMLLoader.getGamePath().relativize(directory).toString()), true);
+                        return 0;
+                    });
         }
     }
 }
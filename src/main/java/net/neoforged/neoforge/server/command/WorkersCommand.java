@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.server.command;
+
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import java.text.DecimalFormat;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.neoforged.neoforge.common.WorldWorkerManager;
+
+class WorkersCommand {
+    private static final DecimalFormat TIME_FORMATTER = new DecimalFormat("########0.000");
+
+    static ArgumentBuilder<CommandSourceStack, ?> register() {
+        return Commands.literal("workers")
+                .requires(cs -> cs.hasPermission(2)) //permission
+                .executes(ctx -> {
+                    var source = ctx.getSource();
+                    var metrics = WorldWorkerManager.getMetrics();
+                    source.sendSuccess(() -> Component.translatable("commands.neoforge.workers.summary", metrics.size(),
+                            formatMillis(WorldWorkerManager.getLastUsedNanos()), formatMillis(WorldWorkerManager.getLastBudgetNanos())), false);
+
+                    for (var worker : metrics) {
+                        source.sendSuccess(() -> Component.translatable("commands.neoforge.workers.entry", worker.name(), worker.priority().name(), worker.invocations(),
+                                formatMillis(worker.totalNanos()), formatMillis(worker.maxNanos()), formatMillis(worker.lastTickNanos()), formatMillis(worker.offloadedNanos())), false);
+                    }
+
+                    return metrics.size();
+                });
+    }
+
+    private static String formatMillis(long nanos) {
+        return TIME_FORMATTER.format(nanos * 1.0E-6D);
+    }
+}
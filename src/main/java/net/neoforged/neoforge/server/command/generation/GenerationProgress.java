@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.server.command.generation;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.util.Arrays;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.level.ChunkDataEvent;
+import net.neoforged.neoforge.event.level.LevelEvent;
+import net.neoforged.neoforge.internal.versions.neoforge.NeoForgeVersion;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Records which chunks of a level are known to be fully generated, stored in the {@linkplain ServerLevel#getDataStorage() data storage} of the level.
+ *
+ * <p>Progress is kept as one bitset of {@value #CHUNKS_PER_REGION} bits per region file.
+ * Regions whose chunks are all generated are stored as a single position.
+ * Since the recorded chunks do not depend on the task that generated them,
+ * any later {@link GenerationTask} skips them without reading their region file.
+ *
+ * <p>The progress is only written when the level is saved, so that recording it never blocks the generation.
+ * A chunk is only written to the progress once its fully generated data is known to be in its region file:
+ * freshly generated chunks first wait for their {@linkplain ChunkDataEvent.Save save}, and saved chunks then wait for the
+ * chunk storage to finish the writes that were pending at the next level save.
+ * Until then, chunks are only recorded in memory, so that a crash never leaves chunks recorded that were not written.
+ * If region files are deleted, the progress of the level must be {@linkplain #clear() cleared}.
+ */
+@EventBusSubscriber(modid = NeoForgeVersion.MOD_ID)
+public class GenerationProgress extends SavedData {
+    private static final String NAME = "neoforge_generation_progress";
+    static final int REGION_SHIFT = 5;
+    static final int REGION_SIZE = 1 << REGION_SHIFT;
+    static final int CHUNKS_PER_REGION = REGION_SIZE * REGION_SIZE;
+    private static final int WORDS_PER_REGION = CHUNKS_PER_REGION / Long.SIZE;
+    private static final long[] COMPLETE = filledBits();
+    private static final long[] EMPTY = new long[WORDS_PER_REGION];
+
+    /**
+     * Regions of which all chunks are generated.
+     */
+    private final LongSet completeRegions = new LongOpenHashSet();
+    /**
+     * Map of region pos -> bitset of the generated chunks, indexed by {@link #localIndex(int, int)}.
+     */
+    private final Long2ObjectMap<long[]> partialRegions = new Long2ObjectOpenHashMap<>();
+
+    // The following state is not persisted.
+    /**
+     * Map of region pos -> bitset of the generated chunks that are not yet known to be written, indexed like {@link #partialRegions}.
+     */
+    private final Long2ObjectMap<long[]> unconfirmedRegions = new Long2ObjectOpenHashMap<>();
+    /**
+     * Chunks that were generated, but whose fully generated data was not saved yet.
+     */
+    private final LongSet awaitingSave = new LongOpenHashSet();
+    /**
+     * Chunks whose fully generated data was handed to the chunk storage, but may not have been written yet.
+     */
+    private final LongSet awaitingWrite = new LongOpenHashSet();
+
+    public static GenerationProgress get(ServerLevel level) {
+        return level.getDataStorage().computeIfAbsent(new Factory<>(GenerationProgress::new, GenerationProgress::load), NAME);
+    }
+
+    private GenerationProgress() {}
+
+    private static GenerationProgress load(CompoundTag tag, HolderLookup.Provider provider) {
+        var progress = new GenerationProgress();
+        for (long region : tag.getLongArray("complete_regions")) {
+            progress.completeRegions.add(region);
+        }
+        long[] partialPositions = tag.getLongArray("partial_regions");
+        long[] partialBits = tag.getLongArray("partial_bits");
+        for (int i = 0; i < partialPositions.length && (i + 1) * WORDS_PER_REGION <= partialBits.length; i++) {
+            progress.partialRegions.put(partialPositions[i], Arrays.copyOfRange(partialBits, i * WORDS_PER_REGION, (i + 1) * WORDS_PER_REGION));
+        }
+        return progress;
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag, HolderLookup.Provider provider) {
+        tag.putLongArray("complete_regions", this.completeRegions.toLongArray());
+
+        long[] partialPositions = new long[this.partialRegions.size()];
+        long[] partialBits = new long[this.partialRegions.size() * WORDS_PER_REGION];
+        int i = 0;
+        for (var entry : this.partialRegions.long2ObjectEntrySet()) {
+            partialPositions[i] = entry.getLongKey();
+            System.arraycopy(entry.getValue(), 0, partialBits, i * WORDS_PER_REGION, WORDS_PER_REGION);
+            i++;
+        }
+        tag.putLongArray("partial_regions", partialPositions);
+        tag.putLongArray("partial_bits", partialBits);
+        return tag;
+    }
+
+    static int localIndex(int chunkX, int chunkZ) {
+        return (chunkX & (REGION_SIZE - 1)) + (chunkZ & (REGION_SIZE - 1)) * REGION_SIZE;
+    }
+
+    /**
+     * {@return whether the chunk is known to be fully generated}
+     */
+    public boolean isGenerated(int chunkX, int chunkZ) {
+        long region = ChunkPos.asLong(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+        if (this.completeRegions.contains(region)) {
+            return true;
+        }
+        int index = localIndex(chunkX, chunkZ);
+        return isSet(this.partialRegions.get(region), index) || isSet(this.unconfirmedRegions.get(region), index);
+    }
+
+    private static boolean isSet(@Nullable long[] bits, int index) {
+        return bits != null && (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * {@return whether all chunks of the region are known to be fully generated}
+     */
+    public boolean isRegionComplete(int regionX, int regionZ) {
+        return this.completeRegions.contains(ChunkPos.asLong(regionX, regionZ));
+    }
+
+    /**
+     * {@return the bitset of the generated chunks of a region, indexed by local chunk index, or {@code null} if no chunk of the region is known to be generated}
+     * The returned array must not be modified.
+     */
+    @Nullable
+    long[] getGenerated(int regionX, int regionZ) {
+        long region = ChunkPos.asLong(regionX, regionZ);
+        if (this.completeRegions.contains(region)) {
+            return COMPLETE;
+        }
+        long[] confirmed = this.partialRegions.get(region);
+        long[] unconfirmed = this.unconfirmedRegions.get(region);
+        if (confirmed == null || unconfirmed == null) {
+            return confirmed != null ? confirmed : unconfirmed;
+        }
+        long[] merged = confirmed.clone();
+        for (int i = 0; i < WORDS_PER_REGION; i++) {
+            merged[i] |= unconfirmed[i];
+        }
+        return merged;
+    }
+
+    private static long[] filledBits() {
+        long[] bits = new long[WORDS_PER_REGION];
+        Arrays.fill(bits, -1L);
+        return bits;
+    }
+
+    /**
+     * Marks a chunk as fully generated, once its generated data has been saved and written.
+     * Until then, the chunk is only known to be generated until the server stops.
+     */
+    public void markGenerated(int chunkX, int chunkZ) {
+        if (this.markUnconfirmed(chunkX, chunkZ)) {
+            this.awaitingSave.add(ChunkPos.asLong(chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * Marks a chunk whose saved data was found to be fully generated as fully generated, once all pending chunk writes are done.
+     * The saved data may have been read from a write that is still pending.
+     */
+    public void markFoundGenerated(int chunkX, int chunkZ) {
+        if (this.markUnconfirmed(chunkX, chunkZ)) {
+            this.awaitingWrite.add(ChunkPos.asLong(chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * Records a chunk as generated in memory only.
+     *
+     * @return {@code true} if the chunk was not known to be generated yet
+     */
+    private boolean markUnconfirmed(int chunkX, int chunkZ) {
+        if (this.isGenerated(chunkX, chunkZ)) {
+            return false;
+        }
+        long region = ChunkPos.asLong(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+        int index = localIndex(chunkX, chunkZ);
+        this.unconfirmedRegions.computeIfAbsent(region, k -> new long[WORDS_PER_REGION])[index >>> 6] |= 1L << index;
+        return true;
+    }
+
+    private void onChunkSaved(long chunk) {
+        if (this.awaitingSave.remove(chunk)) {
+            this.awaitingWrite.add(chunk);
+        }
+    }
+
+    /**
+     * Waits for the chunk storage to finish all writes that are pending now, and then records the chunks that were awaiting these writes.
+     */
+    private void confirmAfterPendingWrites(ServerLevel level) {
+        if (this.awaitingWrite.isEmpty()) {
+            return;
+        }
+        long[] chunks = this.awaitingWrite.toLongArray();
+        this.awaitingWrite.clear();
+        level.getChunkSource().chunkMap.synchronize(false).thenRun(() -> level.getServer().execute(() -> {
+            for (long chunk : chunks) {
+                this.confirm(ChunkPos.getX(chunk), ChunkPos.getZ(chunk));
+            }
+        }));
+    }
+
+    private void confirm(int chunkX, int chunkZ) {
+        long region = ChunkPos.asLong(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+        int index = localIndex(chunkX, chunkZ);
+        long mask = 1L << index;
+        long[] unconfirmed = this.unconfirmedRegions.get(region);
+        if (unconfirmed == null || (unconfirmed[index >>> 6] & mask) == 0) {
+            // The progress was cleared in the meantime
+            return;
+        }
+        unconfirmed[index >>> 6] &= ~mask;
+        if (Arrays.equals(unconfirmed, EMPTY)) {
+            this.unconfirmedRegions.remove(region);
+        }
+
+        if (this.completeRegions.contains(region)) {
+            return;
+        }
+        long[] bits = this.partialRegions.computeIfAbsent(region, k -> new long[WORDS_PER_REGION]);
+        if ((bits[index >>> 6] & mask) != 0) {
+            return;
+        }
+        bits[index >>> 6] |= mask;
+        if (Arrays.equals(bits, COMPLETE)) {
+            this.partialRegions.remove(region);
+            this.completeRegions.add(region);
+        }
+        this.setDirty();
+    }
+
+    /**
+     * Forgets all recorded progress.
+     */
+    public void clear() {
+        this.completeRegions.clear();
+        this.partialRegions.clear();
+        this.unconfirmedRegions.clear();
+        this.awaitingSave.clear();
+        this.awaitingWrite.clear();
+        this.setDirty();
+    }
+
+    @SubscribeEvent
+    private static void onChunkDataSave(ChunkDataEvent.Save event) {
+        if (event.getLevel() instanceof ServerLevel level && event.getChunk().getPersistedStatus() == ChunkStatus.FULL) {
+            get(level).onChunkSaved(event.getChunk().getPos().toLong());
+        }
+    }
+
+    @SubscribeEvent
+    private static void onLevelSave(LevelEvent.Save event) {
+        // Fired after the level handed its chunks to the chunk storage
+        if (event.getLevel() instanceof ServerLevel level) {
+            get(level).confirmAfterPendingWrites(level);
+        }
+    }
+}
@@ -5,12 +5,19 @@
 
 package net.neoforged.neoforge.server.command.generation;
 
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicInteger;
 import net.minecraft.Util;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.StringTag;
@@ -27,36 +34,77 @@ import net.minecraft.server.level.TicketType;
 import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.chunk.ChunkAccess;
 import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.storage.LevelResource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * Special thanks to Jasmine and Gegy for allowing us to use their pregenerator mod as a model to use in NeoForge!
+ * Generates all chunks in a square area of a level.
+ *
+ * <p>The area is processed region file by region file, starting from the region of the center and spiraling outwards,
+ * so that each region file is written by a contiguous stretch of work.
+ * Before a region is generated, its header is read once to find the chunks that were never saved,
+ * and only the saved chunks are scanned for their generation status, all at once and off the server thread.
+ *
+ * <p>The number of chunks in flight is adapted to how fast the server keeps up:
+ * it grows while the chunk system's main thread queue stays short and the server is not lagging, and shrinks otherwise.
+ *
+ * <p>Generated chunks are recorded in the {@link GenerationProgress} of the level.
+ * Chunks that are recorded there are skipped without reading their region file, which allows resuming an interrupted task cheaply.
+ *
+ * <p>Special thanks to Jasmine and Gegy for allowing us to use their pregenerator mod as a model to use in NeoForge!
  * Original code: <a href="https://github.com/jaskarth/fabric-chunkpregenerator">https://github.com/jaskarth/fabric-chunkpregenerator</a>
  */
 public class GenerationTask {
     private static final Logger LOGGER = LogManager.getLogger();
-    private static final int BATCH_SIZE = 32;
-    private static final int QUEUE_THRESHOLD = 8;
-    private static final int COARSE_CELL_SIZE = 4;
+    private static final int REGION_SHIFT = GenerationProgress.REGION_SHIFT;
+    private static final int REGION_SIZE = GenerationProgress.REGION_SIZE;
+    private static final int REGION_HEADER_SIZE = GenerationProgress.CHUNKS_PER_REGION * Integer.BYTES;
+    private static final int MIN_WINDOW = 16;
+    private static final int MAX_WINDOW = 1024;
+    private static final int INITIAL_WINDOW = 32;
+    private static final int WINDOW_STEP = 8;
+    /**
+     * Number of region scans that may run ahead of the generation.
+     */
+    private static final int MAX_SCANS_IN_FLIGHT = 2;
+    private static final long RATE_WINDOW_NANOS = 5_000_000_000L;
 
     private final MinecraftServer server;
     private final ServerChunkCache chunkSource;
-    private final ServerLevel serverLevel;
+    private final Path regionFolder;
 
-    private final Iterator<ChunkPos> iterator;
     private final int x;
     private final int z;
     private final int radius;
 
     private final int totalCount;
 
-    private final Object queueLock = new Object();
-
-    private final AtomicInteger queuedCount = new AtomicInteger();
-    private final AtomicInteger okCount = new AtomicInteger();
-    private final AtomicInteger errorCount = new AtomicInteger();
-    private final AtomicInteger skippedCount = new AtomicInteger();
+    /**
+     * Regions overlapping the area, in generation order.
+     */
+    private final List<ChunkPos> regions;
+    private final GenerationProgress progress;
+
+    // The following state is only accessed on the server thread.
+    private final LongArrayFIFOQueue pendingChunks = new LongArrayFIFOQueue();
+    private int nextRegionIndex;
+    private int scansInFlight;
+    private int inFlightCount;
+    private int window = INITIAL_WINDOW;
+    private int lastWindowUpdateTick = -1;
+    private boolean pumpScheduled;
+
+    private int okCount;
+    private int errorCount;
+    private int skippedCount;
+
+    private long startNanos;
+    private long rateWindowStart;
+    private int rateWindowCount;
+    private volatile double chunksPerSecond;
 
     private volatile Listener listener;
     private volatile boolean stopped;
@@ -66,73 +114,189 @@ public class GenerationTask {
     public GenerationTask(ServerLevel serverLevel, int x, int z, int radius) {
         this.server = serverLevel.getServer();
         this.chunkSource = serverLevel.getChunkSource();
-        this.serverLevel = serverLevel;
+        this.regionFolder = DimensionType.getStorageFolder(serverLevel.dimension(), this.server.getWorldPath(LevelResource.ROOT)).resolve("region");
 
-        this.iterator = new CoarseOnionIterator(radius, COARSE_CELL_SIZE);
         this.x = x;
         this.z = z;
         this.radius = radius;
 
         int diameter = radius * 2 + 1;
         this.totalCount = diameter * diameter;
+
+        this.regions = this.createRegionOrder();
+        this.progress = GenerationProgress.get(serverLevel);
     }
 
     public int getOkCount() {
-        return this.okCount.get();
+        return this.okCount;
     }
 
     public int getErrorCount() {
-        return this.errorCount.get();
+        return this.errorCount;
     }
 
     public int getSkippedCount() {
-        return this.skippedCount.get();
+        return this.skippedCount;
     }
 
     public int getTotalCount() {
         return this.totalCount;
     }
 
+    /**
+     * {@return the number of chunks that were generated per second, measured over the last few seconds}
+     */
+    public double getChunksPerSecond() {
+        return this.chunksPerSecond;
+    }
+
+    /**
+     * {@return the number of chunks that were generated per second since the task was started}
+     */
+    public double getAverageChunksPerSecond() {
+        long elapsed = Util.getNanos() - this.startNanos;
+        return elapsed <= 0 ? 0 : (this.okCount + this.errorCount) * 1.0E9D / elapsed;
+    }
+
+    /**
+     * {@return the estimated number of seconds until the task completes, based on the observed throughput, or {@code -1} if unknown}
+     */
+    public long getEstimatedSecondsRemaining() {
+        double rate = this.chunksPerSecond > 0 ? this.chunksPerSecond : this.getAverageChunksPerSecond();
+        if (rate <= 0) {
+            return -1;
+        }
+        int remaining = this.totalCount - this.okCount - this.errorCount - this.skippedCount;
+        return (long) Math.ceil(remaining / rate);
+    }
+
+    /**
+     * {@return the maximum number of chunks that are currently allowed to be generating at once}
+     */
+    public int getWindow() {
+        return this.window;
+    }
+
     public void run(Listener listener) {
         if (this.listener != null) {
             throw new IllegalStateException("already running!");
         }
 
         this.listener = listener;
-
-        // Off thread chunk scanning to skip already generated chunks
-        CompletableFuture.runAsync(this::tryEnqueueTasks, Util.backgroundExecutor());
+        this.startNanos = this.rateWindowStart = Util.getNanos();
+        this.schedulePump();
     }
 
     public void stop() {
-        synchronized (this.queueLock) {
-            this.stopped = true;
-            this.listener = null;
+        this.stopped = true;
+        this.listener = null;
+    }
+
+    private void schedulePump() {
+        if (!this.pumpScheduled) {
+            this.pumpScheduled = true;
+            // Keep on server thread as chunk acquiring and releasing (tickets) is not thread safe.
+            this.server.execute(this::pump);
         }
     }
 
-    private void tryEnqueueTasks() {
-        synchronized (this.queueLock) {
-            if (this.stopped) {
-                return;
-            }
+    private void pump() {
+        this.pumpScheduled = false;
+        Listener listener = this.listener;
+        if (this.stopped || listener == null) {
+            return;
+        }
+
+        this.updateWindow();
 
-            int enqueueCount = BATCH_SIZE - this.queuedCount.get();
-            if (enqueueCount <= 0) {
-                return;
+        // Scan ahead so that there are always chunks ready to be generated.
+        while (this.scansInFlight < MAX_SCANS_IN_FLIGHT && this.pendingChunks.size() < this.window && this.nextRegionIndex < this.regions.size()) {
+            this.startScan(this.nextRegionIndex++);
+        }
+
+        int enqueueCount = Math.min(this.window - this.inFlightCount, this.pendingChunks.size());
+        if (enqueueCount > 0) {
+            LongList chunks = new LongArrayList(enqueueCount);
+            for (int i = 0; i < enqueueCount; i++) {
+                chunks.add(this.pendingChunks.dequeueLong());
             }
+            this.inFlightCount += enqueueCount;
+            this.enqueueChunks(chunks);
+        }
+
+        if (this.inFlightCount == 0 && this.pendingChunks.isEmpty() && this.scansInFlight == 0 && this.nextRegionIndex >= this.regions.size()) {
+            this.stopped = true;
+            listener.complete(this.errorCount);
+        }
+    }
+
+    /**
+     * Grows the window additively while the server keeps up, and halves it when the chunk system's main thread queue
+     * grows longer than the window or the server is lagging.
+     */
+    private void updateWindow() {
+        int tick = this.server.getTickCount();
+        if (tick == this.lastWindowUpdateTick) {
+            return;
+        }
+        this.lastWindowUpdateTick = tick;
+
+        int backlog = this.chunkSource.getPendingTasksCount();
+        boolean lagging = this.server.getAverageTickTimeNanos() > this.server.tickRateManager().nanosecondsPerTick();
+        if (backlog > this.window || lagging) {
+            this.window = Math.max(MIN_WINDOW, this.window / 2);
+        } else if (backlog < this.window / 4 && this.inFlightCount >= this.window - WINDOW_STEP) {
+            // Only grow when the window is actually the limiting factor.
+            this.window = Math.min(MAX_WINDOW, this.window + WINDOW_STEP);
+        }
+    }
 
-            LongList chunks = this.collectChunks(enqueueCount);
-            if (chunks.isEmpty()) {
-                this.listener.complete(this.errorCount.get());
-                this.stopped = true;
-                return;
+    /**
+     * Starts scanning the chunks of a region that are not recorded as generated in the {@link GenerationProgress}.
+     * Regions without such chunks are skipped immediately, without reading the region file.
+     */
+    private void startScan(int regionIndex) {
+        ChunkPos region = this.regions.get(regionIndex);
+        LongList chunks = this.progress.isRegionComplete(region.x, region.z) ? LongList.of() : this.listUnknownChunksInArea(region);
+        this.skippedCount += this.countChunksInArea(region) - chunks.size();
+        if (chunks.isEmpty()) {
+            this.notifyListener();
+            return;
+        }
+
+        this.scansInFlight++;
+        CompletableFuture.supplyAsync(() -> this.readRegionHeader(region), Util.backgroundExecutor())
+                .thenCompose(saved -> this.scanChunks(chunks, saved))
+                .whenComplete((generated, throwable) -> this.server.execute(() -> {
+                    this.scansInFlight--;
+                    if (throwable != null) {
+                        LOGGER.warn("Encountered unexpected error while scanning region {}", region, throwable);
+                        this.acceptScannedChunks(chunks, new boolean[chunks.size()]);
+                    } else {
+                        this.acceptScannedChunks(chunks, generated);
+                    }
+                }));
+    }
+
+    private void acceptScannedChunks(LongList chunks, boolean[] generated) {
+        for (int i = 0; i < chunks.size(); i++) {
+            long chunk = chunks.getLong(i);
+            if (generated[i]) {
+                this.skippedCount++;
+                this.progress.markFoundGenerated(ChunkPos.getX(chunk), ChunkPos.getZ(chunk));
+            } else {
+                this.pendingChunks.enqueue(chunk);
             }
+        }
 
-            this.queuedCount.getAndAdd(chunks.size());
+        this.notifyListener();
+        this.schedulePump();
+    }
 
-            // Keep on server thread as chunk acquiring and releasing (tickets) is not thread safe.
-            this.server.submit(() -> this.enqueueChunks(chunks));
+    private void notifyListener() {
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.update(this.okCount, this.errorCount, this.skippedCount, this.totalCount);
         }
     }
 
@@ -169,47 +333,30 @@ public class GenerationTask {
     }
 
     private void acceptChunkResult(long chunk, ChunkResult<ChunkAccess> result) {
-        this.server.submit(() -> this.releaseChunk(chunk));
+        this.server.execute(() -> this.releaseChunk(chunk));
 
         if (result.isSuccess()) {
-            this.okCount.getAndIncrement();
+            this.okCount++;
+            this.progress.markGenerated(ChunkPos.getX(chunk), ChunkPos.getZ(chunk));
         } else {
-            this.errorCount.getAndIncrement();
-        }
-
-        this.listener.update(this.okCount.get(), this.errorCount.get(), this.skippedCount.get(), this.totalCount);
-
-        int queuedCount = this.queuedCount.decrementAndGet();
-        if (queuedCount <= QUEUE_THRESHOLD) {
-            this.tryEnqueueTasks();
+            this.errorCount++;
         }
+        this.inFlightCount--;
+        this.recordRate();
 
-        // Help make sure pregen progress does not get completely lost if game crashes/shuts down before pregen is finished.
-        if (((this.okCount.get() + this.errorCount.get()) % 1000) == 999) {
-            this.server.submit(() -> {
-                this.serverLevel.save(null, false, true);
-            });
-        }
+        this.notifyListener();
+        this.schedulePump();
     }
 
-    private LongList collectChunks(int count) {
-        LongList chunks = new LongArrayList(count);
-
-        Iterator<ChunkPos> iterator = this.iterator;
-        int i = 0;
-        while (i < count && iterator.hasNext()) {
-            ChunkPos chunkPosInLocalSpace = iterator.next();
-            if (isChunkFullyGenerated(chunkPosInLocalSpace)) {
-                this.skippedCount.incrementAndGet();
-                this.listener.update(this.okCount.get(), this.errorCount.get(), this.skippedCount.get(), this.totalCount);
-                continue;
-            }
-
-            chunks.add(ChunkPos.asLong(chunkPosInLocalSpace.x + this.x, chunkPosInLocalSpace.z + this.z));
-            i++;
+    private void recordRate() {
+        this.rateWindowCount++;
+        long now = Util.getNanos();
+        long elapsed = now - this.rateWindowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            this.chunksPerSecond = this.rateWindowCount * 1.0E9D / elapsed;
+            this.rateWindowStart = now;
+            this.rateWindowCount = 0;
         }
-
-        return chunks;
     }
 
     private void acquireChunk(long chunk) {
@@ -222,16 +369,118 @@ public class GenerationTask {
         this.chunkSource.removeRegionTicket(NEOFORGE_GENERATE_FORCED, pos, 0, pos);
     }
 
-    private boolean isChunkFullyGenerated(ChunkPos chunkPosInLocalSpace) {
-        ChunkPos chunkPosInWorldSpace = new ChunkPos(chunkPosInLocalSpace.x + this.x, chunkPosInLocalSpace.z + this.z);
-        CollectFields collectFields = new CollectFields(new FieldSelector(StringTag.TYPE, "Status"));
-        this.chunkSource.chunkMap.chunkScanner().scanChunk(chunkPosInWorldSpace, collectFields).join();
+    /**
+     * Lists the regions overlapping the area, starting from the region of the center and spiraling outwards.
+     */
+    private List<ChunkPos> createRegionOrder() {
+        int minRegionX = (this.x - this.radius) >> REGION_SHIFT;
+        int minRegionZ = (this.z - this.radius) >> REGION_SHIFT;
+        int maxRegionX = (this.x + this.radius) >> REGION_SHIFT;
+        int maxRegionZ = (this.z + this.radius) >> REGION_SHIFT;
+        int centerRegionX = this.x >> REGION_SHIFT;
+        int centerRegionZ = this.z >> REGION_SHIFT;
+        int regionRadius = Math.max(Math.max(centerRegionX - minRegionX, maxRegionX - centerRegionX), Math.max(centerRegionZ - minRegionZ, maxRegionZ - centerRegionZ));
+
+        List<ChunkPos> order = new ArrayList<>((maxRegionX - minRegionX + 1) * (maxRegionZ - minRegionZ + 1));
+        OnionIterator iterator = new OnionIterator(regionRadius);
+        while (iterator.hasNext()) {
+            ChunkPos offset = iterator.next();
+            int regionX = centerRegionX + offset.x;
+            int regionZ = centerRegionZ + offset.z;
+            if (regionX >= minRegionX && regionX <= maxRegionX && regionZ >= minRegionZ && regionZ <= maxRegionZ) {
+                order.add(new ChunkPos(regionX, regionZ));
+            }
+        }
+        return order;
+    }
+
+    private int countChunksInArea(ChunkPos region) {
+        int minX = Math.max(region.x << REGION_SHIFT, this.x - this.radius);
+        int minZ = Math.max(region.z << REGION_SHIFT, this.z - this.radius);
+        int maxX = Math.min((region.x << REGION_SHIFT) + REGION_SIZE - 1, this.x + this.radius);
+        int maxZ = Math.min((region.z << REGION_SHIFT) + REGION_SIZE - 1, this.z + this.radius);
+        return (maxX - minX + 1) * (maxZ - minZ + 1);
+    }
 
-        if (collectFields.getResult() instanceof CompoundTag compoundTag) {
-            return compoundTag.getString("Status").equals("minecraft:full");
+    /**
+     * Lists the chunks of a region that are in the area, but not recorded as generated.
+     */
+    private LongList listUnknownChunksInArea(ChunkPos region) {
+        long[] known = this.progress.getGenerated(region.x, region.z);
+        int minX = Math.max(region.x << REGION_SHIFT, this.x - this.radius);
+        int minZ = Math.max(region.z << REGION_SHIFT, this.z - this.radius);
+        int maxX = Math.min((region.x << REGION_SHIFT) + REGION_SIZE - 1, this.x + this.radius);
+        int maxZ = Math.min((region.z << REGION_SHIFT) + REGION_SIZE - 1, this.z + this.radius);
+
+        // Iterate in the order of the region file.
+        LongList chunks = new LongArrayList(known == null ? (maxX - minX + 1) * (maxZ - minZ + 1) : 0);
+        for (int chunkZ = minZ; chunkZ <= maxZ; chunkZ++) {
+            for (int chunkX = minX; chunkX <= maxX; chunkX++) {
+                int localIndex = GenerationProgress.localIndex(chunkX, chunkZ);
+                if (known == null || (known[localIndex >>> 6] & (1L << localIndex)) == 0) {
+                    chunks.add(ChunkPos.asLong(chunkX, chunkZ));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Reads the offset table of a region file, to find the chunks that were saved to it.
+     *
+     * @return a bitset indexed by the local chunk index within the region, or {@code null} if the header could not be read,
+     *         in which case all chunks must be assumed to be saved
+     */
+    @Nullable
+    private long[] readRegionHeader(ChunkPos region) {
+        long[] saved = new long[GenerationProgress.CHUNKS_PER_REGION / Long.SIZE];
+        Path file = this.regionFolder.resolve("r." + region.x + "." + region.z + ".mca");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(REGION_HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {}
+            header.flip();
+            for (int i = 0; i < GenerationProgress.CHUNKS_PER_REGION && header.remaining() >= Integer.BYTES; i++) {
+                if (header.getInt() != 0) {
+                    saved[i >>> 6] |= 1L << i;
+                }
+            }
+            return saved;
+        } catch (NoSuchFileException e) {
+            return saved;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read header of region file {}, scanning all of its chunks", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Determines which of the given chunks of a region are fully generated.
+     * Chunks that were never saved need generation, and the other chunks are scanned for their status concurrently.
+     */
+    private CompletableFuture<boolean[]> scanChunks(LongList chunks, @Nullable long[] saved) {
+        boolean[] generated = new boolean[chunks.size()];
+        List<CompletableFuture<?>> scans = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            long chunk = chunks.getLong(i);
+            int localIndex = GenerationProgress.localIndex(ChunkPos.getX(chunk), ChunkPos.getZ(chunk));
+            if (saved == null || (saved[localIndex >>> 6] & (1L << localIndex)) != 0) {
+                int index = i;
+                scans.add(this.isChunkFullyGenerated(new ChunkPos(chunk)).thenAccept(full -> generated[index] = full));
+            }
         }
 
-        return false;
+        return CompletableFuture.allOf(scans.toArray(CompletableFuture[]::new)).thenApply(ignored -> generated);
+    }
+
+    private CompletableFuture<Boolean> isChunkFullyGenerated(ChunkPos chunkPosInWorldSpace) {
+        CollectFields collectFields = new CollectFields(new FieldSelector(StringTag.TYPE, "Status"));
+        return this.chunkSource.chunkMap.chunkScanner().scanChunk(chunkPosInWorldSpace, collectFields).thenApply(ignored -> {
+            if (collectFields.getResult() instanceof CompoundTag compoundTag) {
+                return compoundTag.getString("Status").equals("minecraft:full");
+            }
+
+            return false;
+        });
     }
 
     public interface Listener {
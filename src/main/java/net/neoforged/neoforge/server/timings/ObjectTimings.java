@@ -12,7 +12,10 @@ import java.lang.ref.WeakReference;
  * and performs operations for interpretation of the data.
  *
  * @param <T>
+ * @deprecated {@link TimeTracker} aggregates timings by type, chunk and dimension instead of by object,
+ *             use {@link TimeTracker#getTimingData(TimeTracker.Grouping)} instead.
  */
+@Deprecated(forRemoval = true, since = "1.21")
 public class ObjectTimings<T> {
     private WeakReference<T> object;
 
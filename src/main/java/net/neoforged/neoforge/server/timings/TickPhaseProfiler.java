@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.server.timings;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Breaks the server tick time down into phases, per level for the phases that run per level.
+ * <p>
+ * The time of each phase in each tick is recorded into rolling {@linkplain TimingHistogram histograms}
+ * that cover the last 30 to 60 seconds. Ticks that take longer than the {@linkplain #getSpikeThresholdNanos() spike threshold}
+ * are captured with their phase breakdown and the slowest entity and block entity updates measured by the {@link TimeTracker}s during the tick.
+ * <p>
+ * Recording only reads the clock at phase boundaries, so the profiler is always enabled.
+ * The default spike threshold is read from the system property {@code neoforge.tps.spikeThresholdMillis}.
+ * All methods must be called on the server thread.
+ */
+@ApiStatus.Internal
+public final class TickPhaseProfiler {
+    private static final int WINDOW_TICKS = 600;
+    private static final int MAX_SPIKES = 10;
+    private static final int MAX_OFFENDERS = 5;
+    private static final Phase[] PHASES = Phase.values();
+
+    private static final Reference2ObjectMap<ResourceKey<Level>, LevelPhases> LEVELS = new Reference2ObjectOpenHashMap<>();
+    private static final long[] SERVER_PHASE_NANOS = new long[PHASES.length];
+    private static final RollingHistogram[] SERVER_PHASES = RollingHistogram.array(PHASES.length);
+    private static final RollingHistogram TICKS = new RollingHistogram();
+    private static final Deque<LagSpike> SPIKES = new ArrayDeque<>();
+
+    // The slowest measured updates of the current tick, sorted by descending duration
+    private static final ResourceLocation[] OFFENDER_TYPES = new ResourceLocation[MAX_OFFENDERS];
+    private static final ResourceKey<?>[] OFFENDER_LEVELS = new ResourceKey<?>[MAX_OFFENDERS];
+    private static final long[] OFFENDER_CHUNKS = new long[MAX_OFFENDERS];
+    private static final long[] OFFENDER_NANOS = new long[MAX_OFFENDERS];
+    private static int offenders;
+
+    private static long spikeThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("neoforge.tps.spikeThresholdMillis", 100));
+    private static int ticks;
+
+    private TickPhaseProfiler() {}
+
+    public enum Phase {
+        SCHEDULED_TICKS(true),
+        CHUNKS(true),
+        ENTITIES(true),
+        BLOCK_ENTITIES(true),
+        NETWORK(false),
+        WORLD_WORKERS(false),
+        AUTOSAVE(false);
+
+        private final boolean perLevel;
+
+        Phase(boolean perLevel) {
+            this.perLevel = perLevel;
+        }
+
+        public boolean isPerLevel() {
+            return perLevel;
+        }
+
+        public String getSerializedName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Starts a phase of the tick of the given level, ending the phase that was running.
+     * Ignored for client levels.
+     */
+    public static void beginPhase(Level level, Phase phase) {
+        if (level instanceof ServerLevel) {
+            phases(level.dimension()).begin(phase, System.nanoTime());
+        }
+    }
+
+    /**
+     * Ends the running phase of the tick of the given level.
+     * Ignored for client levels.
+     */
+    public static void endPhase(Level level) {
+        if (level instanceof ServerLevel) {
+            phases(level.dimension()).end(System.nanoTime());
+        }
+    }
+
+    /**
+     * Records the time of a phase that runs once per server tick.
+     */
+    public static void recordServerPhase(Phase phase, long nanos) {
+        SERVER_PHASE_NANOS[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Records a measured entity or block entity update, to report the slowest updates of lag spikes.
+     */
+    public static void recordUpdate(ResourceLocation type, ResourceKey<Level> level, long chunk, long nanos) {
+        if (offenders == MAX_OFFENDERS && OFFENDER_NANOS[MAX_OFFENDERS - 1] >= nanos) {
+            return;
+        }
+        int i = Math.min(offenders, MAX_OFFENDERS - 1);
+        while (i > 0 && OFFENDER_NANOS[i - 1] < nanos) {
+            OFFENDER_TYPES[i] = OFFENDER_TYPES[i - 1];
+            OFFENDER_LEVELS[i] = OFFENDER_LEVELS[i - 1];
+            OFFENDER_CHUNKS[i] = OFFENDER_CHUNKS[i - 1];
+            OFFENDER_NANOS[i] = OFFENDER_NANOS[i - 1];
+            i--;
+        }
+        OFFENDER_TYPES[i] = type;
+        OFFENDER_LEVELS[i] = level;
+        OFFENDER_CHUNKS[i] = chunk;
+        OFFENDER_NANOS[i] = nanos;
+        offenders = Math.min(offenders + 1, MAX_OFFENDERS);
+    }
+
+    /**
+     * Ends the tick of the given level, recording the time of its phases.
+     */
+    public static void endLevelTick(ServerLevel level, long nanos) {
+        phases(level.dimension()).endTick(System.nanoTime(), nanos);
+    }
+
+    /**
+     * Ends the server tick, recording the time of the server phases and capturing a lag spike if the tick was too long.
+     */
+    public static void endServerTick(int tickCount, long nanos) {
+        TICKS.record(nanos);
+        for (Phase phase : PHASES) {
+            if (!phase.perLevel) {
+                SERVER_PHASES[phase.ordinal()].record(SERVER_PHASE_NANOS[phase.ordinal()]);
+            }
+        }
+
+        if (nanos > spikeThresholdNanos) {
+            captureSpike(tickCount, nanos);
+        }
+
+        for (LevelPhases phases : LEVELS.values()) {
+            phases.clearLastTick();
+        }
+        Arrays.fill(SERVER_PHASE_NANOS, 0);
+        Arrays.fill(OFFENDER_TYPES, null);
+        Arrays.fill(OFFENDER_LEVELS, null);
+        offenders = 0;
+
+        if (++ticks % WINDOW_TICKS == 0) {
+            TICKS.rotate();
+            for (RollingHistogram histogram : SERVER_PHASES) {
+                histogram.rotate();
+            }
+            for (LevelPhases phases : LEVELS.values()) {
+                phases.rotate();
+            }
+        }
+    }
+
+    private static void captureSpike(int tickCount, long nanos) {
+        Map<String, Long> phaseNanos = new LinkedHashMap<>();
+        for (var entry : LEVELS.reference2ObjectEntrySet()) {
+            for (Phase phase : PHASES) {
+                long phaseTime = entry.getValue().lastTick[phase.ordinal()];
+                if (phase.perLevel && phaseTime > 0) {
+                    phaseNanos.put(entry.getKey().location() + " " + phase.getSerializedName(), phaseTime);
+                }
+            }
+        }
+        for (Phase phase : PHASES) {
+            if (!phase.perLevel && SERVER_PHASE_NANOS[phase.ordinal()] > 0) {
+                phaseNanos.put(phase.getSerializedName(), SERVER_PHASE_NANOS[phase.ordinal()]);
+            }
+        }
+
+        List<Offender> offenderList = new ArrayList<>(offenders);
+        for (int i = 0; i < offenders; i++) {
+            offenderList.add(new Offender(OFFENDER_TYPES[i], OFFENDER_LEVELS[i].location(), new ChunkPos(OFFENDER_CHUNKS[i]), OFFENDER_NANOS[i]));
+        }
+
+        if (SPIKES.size() == MAX_SPIKES) {
+            SPIKES.removeFirst();
+        }
+        SPIKES.addLast(new LagSpike(tickCount, nanos, phaseNanos, offenderList));
+    }
+
+    private static LevelPhases phases(ResourceKey<Level> level) {
+        LevelPhases phases = LEVELS.get(level);
+        if (phases == null) {
+            phases = new LevelPhases();
+            LEVELS.put(level, phases);
+        }
+        return phases;
+    }
+
+    /**
+     * {@return the distribution of the tick times of the server over the last 30 to 60 seconds}
+     */
+    public static TimingHistogram getTickTimes() {
+        return TICKS.snapshot();
+    }
+
+    /**
+     * {@return the distribution of the tick times of the given level over the last 30 to 60 seconds, or {@code null} if it did not tick}
+     */
+    @Nullable
+    public static TimingHistogram getLevelTickTimes(ResourceKey<Level> level) {
+        LevelPhases phases = LEVELS.get(level);
+        return phases != null ? phases.total.snapshot() : null;
+    }
+
+    /**
+     * {@return the distribution of the time per tick of the given phase over the last 30 to 60 seconds}
+     *
+     * @param level The level of the phase, ignored for phases that do not run per level
+     */
+    @Nullable
+    public static TimingHistogram getPhaseTimes(@Nullable ResourceKey<Level> level, Phase phase) {
+        if (!phase.perLevel) {
+            return SERVER_PHASES[phase.ordinal()].snapshot();
+        }
+        LevelPhases phases = level != null ? LEVELS.get(level) : null;
+        return phases != null ? phases.histograms[phase.ordinal()].snapshot() : null;
+    }
+
+    /**
+     * {@return the most recent lag spikes, oldest first}
+     */
+    public static List<LagSpike> getLagSpikes() {
+        return List.copyOf(SPIKES);
+    }
+
+    public static void clearLagSpikes() {
+        SPIKES.clear();
+    }
+
+    /**
+     * Forgets the phase times of the given level. Called when the level is unloaded.
+     */
+    public static void unloadLevel(ResourceKey<Level> level) {
+        LEVELS.remove(level);
+    }
+
+    /**
+     * Clears all recorded tick times and lag spikes. Called when the server stops, so that they do not carry over to the next server.
+     * The spike threshold is kept.
+     */
+    public static void reset() {
+        LEVELS.clear();
+        Arrays.fill(SERVER_PHASE_NANOS, 0);
+        for (RollingHistogram histogram : SERVER_PHASES) {
+            histogram.reset();
+        }
+        TICKS.reset();
+        SPIKES.clear();
+        Arrays.fill(OFFENDER_TYPES, null);
+        Arrays.fill(OFFENDER_LEVELS, null);
+        offenders = 0;
+        ticks = 0;
+    }
+
+    public static long getSpikeThresholdNanos() {
+        return spikeThresholdNanos;
+    }
+
+    public static void setSpikeThresholdNanos(long nanos) {
+        spikeThresholdNanos = nanos;
+    }
+
+    /**
+     * A tick that took longer than the spike threshold.
+     *
+     * @param tickCount  The tick count of the server at the tick
+     * @param nanos      The duration of the tick
+     * @param phaseNanos The time of each phase that ran during the tick, keyed by level and phase
+     * @param offenders  The slowest updates measured during the tick, only known while the {@link TimeTracker}s are enabled
+     */
+    public record LagSpike(int tickCount, long nanos, Map<String, Long> phaseNanos, List<Offender> offenders) {
+        /**
+         * {@return the phase that took the longest during the tick, or {@code null} if no phase ran}
+         */
+        @Nullable
+        public Map.Entry<String, Long> slowestPhase() {
+            return phaseNanos.entrySet().stream().max(Map.Entry.comparingByValue()).orElse(null);
+        }
+    }
+
+    public record Offender(ResourceLocation type, ResourceLocation dimension, ChunkPos chunk, long nanos) {}
+
+    private static final class LevelPhases {
+        private final RollingHistogram[] histograms = RollingHistogram.array(PHASES.length);
+        private final RollingHistogram total = new RollingHistogram();
+        private final long[] currentTick = new long[PHASES.length];
+        /**
+         * The phase times of the last tick of the level, kept until the end of the server tick to capture lag spikes.
+         */
+        private final long[] lastTick = new long[PHASES.length];
+        @Nullable
+        private Phase openPhase;
+        private long openSince;
+
+        private void begin(Phase phase, long now) {
+            end(now);
+            openPhase = phase;
+            openSince = now;
+        }
+
+        private void end(long now) {
+            if (openPhase != null) {
+                currentTick[openPhase.ordinal()] += now - openSince;
+                openPhase = null;
+            }
+        }
+
+        private void endTick(long now, long nanos) {
+            end(now);
+            total.record(nanos);
+            for (Phase phase : PHASES) {
+                if (phase.perLevel) {
+                    histograms[phase.ordinal()].record(currentTick[phase.ordinal()]);
+                }
+            }
+            System.arraycopy(currentTick, 0, lastTick, 0, currentTick.length);
+            Arrays.fill(currentTick, 0);
+        }
+
+        private void clearLastTick() {
+            Arrays.fill(lastTick, 0);
+        }
+
+        private void rotate() {
+            total.rotate();
+            for (RollingHistogram histogram : histograms) {
+                histogram.rotate();
+            }
+        }
+    }
+
+    /**
+     * A histogram over a rolling window, made of the histograms of the current and the previous {@link #WINDOW_TICKS} ticks.
+     */
+    private static final class RollingHistogram {
+        private TimingHistogram current = new TimingHistogram();
+        private TimingHistogram previous = new TimingHistogram();
+
+        private static RollingHistogram[] array(int length) {
+            RollingHistogram[] array = new RollingHistogram[length];
+            for (int i = 0; i < length; i++) {
+                array[i] = new RollingHistogram();
+            }
+            return array;
+        }
+
+        private void record(long nanos) {
+            current.record(nanos);
+        }
+
+        private void rotate() {
+            TimingHistogram oldest = previous;
+            previous = current;
+            oldest.reset();
+            current = oldest;
+        }
+
+        private void reset() {
+            current.reset();
+            previous.reset();
+        }
+
+        private TimingHistogram snapshot() {
+            TimingHistogram snapshot = previous.copy();
+            snapshot.add(current);
+            return snapshot;
+        }
+    }
+}
@@ -6,46 +6,183 @@
 package net.neoforged.neoforge.server.timings;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.MapMaker;
+import com.google.gson.stream.JsonWriter;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.ref.WeakReference;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntity;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A class to assist in the collection of data to measure the update times of ticking objects {currently Tile Entities and Entities}
+ * <p>
+ * Update times are aggregated by the type of the object, and by the chunk and dimension the object ticks in.
+ * Aggregates by type are kept in {@linkplain TimingHistogram histograms} and can be merged per mod when reported.
+ * Aggregates by chunk only cover the last 30 to 60 seconds, the others cover the whole time the tracker is enabled.
+ * Only one in every {@linkplain #enable(int, int) sample interval} updates is measured, and measuring does not allocate
+ * once the types and chunks have been seen, so that a tracker can be left enabled with a large interval.
+ * <p>
+ * While enabled, measured updates are also reported as the JFR event {@code neoforge.ObjectTick}.
+ * Only updates on the server are tracked.
+ * <p>
+ * Both trackers start enabled without a time limit if the system property {@code neoforge.timings.sampleInterval}
+ * is set to a positive sample interval.
  *
  * @param <T>
  */
 public class TimeTracker<T> {
+    /**
+     * The time after which the timings per chunk start a new window, so that they cover the last 30 to 60 seconds.
+     */
+    private static final long CHUNK_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
     /**
      * A tracker for timing tile entity update
      */
-    public static final TimeTracker<BlockEntity> BLOCK_ENTITY_UPDATE = new TimeTracker<>();
+    public static final TimeTracker<BlockEntity> BLOCK_ENTITY_UPDATE = new TimeTracker<>("block_entity", BlockEntity::getType,
+            be -> BuiltInRegistries.BLOCK_ENTITY_TYPE.getKey(be.getType()), BlockEntity::getLevel, BlockEntity::getBlockPos);
     /**
      * A tracker for timing entity updates
      */
-    public static final TimeTracker<Entity> ENTITY_UPDATE = new TimeTracker<>();
+    public static final TimeTracker<Entity> ENTITY_UPDATE = new TimeTracker<>("entity", Entity::getType,
+            entity -> BuiltInRegistries.ENTITY_TYPE.getKey(entity.getType()), Entity::level, Entity::blockPosition);
+
+    static {
+        int sampleInterval = Integer.getInteger("neoforge.timings.sampleInterval", 0);
+        if (sampleInterval > 0) {
+            BLOCK_ENTITY_UPDATE.enable(0, sampleInterval);
+            ENTITY_UPDATE.enable(0, sampleInterval);
+        }
+    }
+
+    private final String name;
+    private final Function<T, ?> typeGetter;
+    private final Function<T, ResourceLocation> typeNameGetter;
+    private final Function<T, Level> levelGetter;
+    private final Function<T, BlockPos> posGetter;
 
+    private final Reference2ObjectMap<Object, TypeTimings> byType = new Reference2ObjectOpenHashMap<>();
+    private final Reference2ObjectMap<ResourceKey<Level>, DimensionTimings> byDimension = new Reference2ObjectOpenHashMap<>();
+
+    private long chunkWindowStartNanos;
     private boolean enabled;
-    private int trackingDuration;
-    private Map<T, int[]> timings = new MapMaker().weakKeys().makeMap();
-    private WeakReference<T> currentlyTracking;
-    private long trackTime;
+    private int sampleInterval = 1;
+    private int untilNextSample;
+    private long startNanos;
+    private long durationNanos;
+    @Nullable
+    private T currentlyTracking;
     private long timing;
 
+    private TimeTracker(String name, Function<T, ?> typeGetter, Function<T, ResourceLocation> typeNameGetter, Function<T, Level> levelGetter, Function<T, BlockPos> posGetter) {
+        this.name = name;
+        this.typeGetter = typeGetter;
+        this.typeNameGetter = typeNameGetter;
+        this.levelGetter = levelGetter;
+        this.posGetter = posGetter;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
     /**
-     * Returns the timings data recorded by the tracker
+     * {@return the number of measured updates since the last reset}
+     */
+    public long getSampleCount() {
+        long count = 0;
+        for (TypeTimings timings : byType.values()) {
+            count += timings.histogram.count();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the timings data recorded by the tracker, aggregated by the given grouping
+     *
+     * @return The aggregated timings, sorted by descending total time
+     */
+    public List<Timings> getTimingData(Grouping grouping) {
+        List<Timings> result = new ArrayList<>();
+        switch (grouping) {
+            case TYPE -> {
+                for (TypeTimings timings : byType.values()) {
+                    result.add(new Timings(timings.name.toString(), timings.histogram.copy()));
+                }
+            }
+            case MOD -> {
+                Map<String, TimingHistogram> byMod = new HashMap<>();
+                for (TypeTimings timings : byType.values()) {
+                    byMod.computeIfAbsent(timings.name.getNamespace(), k -> new TimingHistogram()).add(timings.histogram);
+                }
+                byMod.forEach((mod, histogram) -> result.add(new Timings(mod, histogram)));
+            }
+            case DIMENSION -> {
+                for (var entry : byDimension.reference2ObjectEntrySet()) {
+                    result.add(new Timings(entry.getKey().location().toString(), entry.getValue().histogram.copy()));
+                }
+            }
+            case CHUNK -> {
+                for (var entry : byDimension.reference2ObjectEntrySet()) {
+                    ChunkTimings timings = entry.getValue().snapshot();
+                    for (Long2LongMap.Entry chunk : timings.nanos.long2LongEntrySet()) {
+                        ChunkPos pos = new ChunkPos(chunk.getLongKey());
+                        long count = timings.counts.get(chunk.getLongKey());
+                        result.add(new Timings(entry.getKey().location() + " " + pos.x + ", " + pos.z, count, chunk.getLongValue(), null));
+                    }
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(Timings::totalNanos).reversed());
+        return result;
+    }
+
+    /**
+     * Returns the timings data recorded by the tracker, with one entry per type of tracked object.
+     * The object of each entry is one of the measured objects of its type,
+     * and its raw timing data is the mean update time of the type in nanoseconds.
      *
      * @return An immutable list of timings data collected by this tracker
+     * @deprecated The tracker no longer keeps timings per object, use {@link #getTimingData(Grouping)} instead.
      */
+    @Deprecated(forRemoval = true, since = "1.21")
+    @SuppressWarnings("unchecked")
     public ImmutableList<ObjectTimings<T>> getTimingData() {
         ImmutableList.Builder<ObjectTimings<T>> builder = ImmutableList.builder();
-
-        for (Map.Entry<T, int[]> entry : timings.entrySet()) {
-            builder.add(new ObjectTimings<>(entry.getKey(), Arrays.copyOfRange(entry.getValue(), 0, 99)));
+        for (TypeTimings timings : byType.values()) {
+            T sample = timings.sample != null ? (T) timings.sample.get() : null;
+            long meanNanos = timings.histogram.count() == 0 ? 0 : timings.histogram.totalNanos() / timings.histogram.count();
+            builder.add(new ObjectTimings<>(sample, new int[] { (int) Math.min(meanNanos, Integer.MAX_VALUE) }));
         }
         return builder.build();
     }
@@ -55,28 +192,39 @@ public class TimeTracker<T> {
      */
     public void reset() {
         enabled = false;
-        trackTime = 0;
-        timings.clear();
+        currentlyTracking = null;
+        byType.clear();
+        byDimension.clear();
+    }
+
+    private void rotateChunkWindows(long nanoTime) {
+        chunkWindowStartNanos = nanoTime;
+        for (DimensionTimings timings : byDimension.values()) {
+            timings.rotate();
+        }
     }
 
     /**
-     * Ends the timing of the currently tracking object
+     * Starts recording tracking data for the given duration in seconds, measuring every update
      *
-     * @param tracking The object to stop timing
+     * @param duration The duration for the time to track
      */
-    public void trackEnd(T tracking) {
-        if (!enabled)
-            return;
-        this.trackEnd(tracking, System.nanoTime());
+    public void enable(int duration) {
+        enable(duration, 1);
     }
 
     /**
      * Starts recording tracking data for the given duration in seconds
      *
-     * @param duration The duration for the time to track
+     * @param duration       The duration for the time to track, or {@code 0} to track until the tracker is reset
+     * @param sampleInterval The number of updates per measured update
      */
-    public void enable(int duration) {
-        this.trackingDuration = duration;
+    public void enable(int duration, int sampleInterval) {
+        this.startNanos = System.nanoTime();
+        this.chunkWindowStartNanos = this.startNanos;
+        this.durationNanos = duration > 0 ? TimeUnit.SECONDS.toNanos(duration) : Long.MAX_VALUE;
+        this.sampleInterval = Math.max(sampleInterval, 1);
+        this.untilNextSample = 0;
         this.enabled = true;
     }
 
@@ -88,28 +236,253 @@ public class TimeTracker<T> {
     public void trackStart(T toTrack) {
         if (!enabled)
             return;
-        this.trackStart(toTrack, System.nanoTime());
+        // Client updates must not count towards the sample interval, or they would skip server updates
+        Level level = levelGetter.apply(toTrack);
+        if (level == null || level.isClientSide())
+            return;
+        if (untilNextSample > 0) {
+            untilNextSample--;
+            return;
+        }
+
+        long nanoTime = System.nanoTime();
+        if (nanoTime - startNanos > durationNanos) {
+            enabled = false;
+            return;
+        }
+        untilNextSample = sampleInterval - 1;
+        currentlyTracking = toTrack;
+        timing = nanoTime;
     }
 
-    private void trackEnd(T object, long nanoTime) {
-        if (currentlyTracking == null || currentlyTracking.get() != object) {
-            currentlyTracking = null;
+    /**
+     * Ends the timing of the currently tracking object
+     *
+     * @param tracking The object to stop timing
+     */
+    public void trackEnd(T tracking) {
+        if (currentlyTracking != tracking || tracking == null)
             return;
+        long nanoTime = System.nanoTime();
+        long nanos = nanoTime - timing;
+        currentlyTracking = null;
+        if (!enabled)
+            return;
+        if (nanoTime - chunkWindowStartNanos > CHUNK_WINDOW_NANOS) {
+            rotateChunkWindows(nanoTime);
+        }
+
+        TypeTimings typeTimings = byType.get(typeGetter.apply(tracking));
+        if (typeTimings == null) {
+            ResourceLocation typeName = typeNameGetter.apply(tracking);
+            typeTimings = new TypeTimings(typeName != null ? typeName : ResourceLocation.withDefaultNamespace("unknown"));
+            byType.put(typeGetter.apply(tracking), typeTimings);
+        }
+        typeTimings.histogram.record(nanos);
+        if (typeTimings.sample == null || typeTimings.sample.get() == null) {
+            typeTimings.sample = new WeakReference<>(tracking);
+        }
+
+        Level level = levelGetter.apply(tracking);
+        BlockPos pos = posGetter.apply(tracking);
+        long chunk = ChunkPos.asLong(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getZ()));
+        if (level != null) {
+            DimensionTimings dimensionTimings = byDimension.get(level.dimension());
+            if (dimensionTimings == null) {
+                dimensionTimings = new DimensionTimings();
+                byDimension.put(level.dimension(), dimensionTimings);
+            }
+            dimensionTimings.histogram.record(nanos);
+            dimensionTimings.current.record(chunk, nanos);
+            TickPhaseProfiler.recordUpdate(typeTimings.name, level.dimension(), chunk, nanos);
+        }
+
+        ObjectTickEvent event = new ObjectTickEvent();
+        if (event.shouldCommit()) {
+            event.tracker = name;
+            event.type = typeTimings.name.toString();
+            event.dimension = level != null ? level.dimension().location().toString() : null;
+            event.chunkX = ChunkPos.getX(chunk);
+            event.chunkZ = ChunkPos.getZ(chunk);
+            event.updateNanos = nanos;
+            event.commit();
         }
-        int[] timings = this.timings.computeIfAbsent(object, k -> new int[101]);
-        int idx = timings[100] = (timings[100] + 1) % 100;
-        timings[idx] = (int) (nanoTime - timing);
     }
 
-    private void trackStart(T toTrack, long nanoTime) {
-        if (trackTime == 0) {
-            trackTime = nanoTime;
-        } else if (trackTime + TimeUnit.NANOSECONDS.convert(trackingDuration, TimeUnit.SECONDS) < nanoTime) {
-            enabled = false;
-            trackTime = 0;
+    /**
+     * Writes the timings of all groupings as CSV, one row per group.
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("tracker,grouping,key,samples,total_ns,mean_ns,p50_ns,p99_ns,max_ns\n");
+        for (Grouping grouping : Grouping.values()) {
+            for (Timings timings : getTimingData(grouping)) {
+                writer.write(String.join(",", name, grouping.getSerializedName(), '"' + timings.key().replace("\"", "\"\"") + '"',
+                        Long.toString(timings.count()), Long.toString(timings.totalNanos()), Long.toString(timings.meanNanos()),
+                        Long.toString(timings.percentileNanos(0.5)), Long.toString(timings.percentileNanos(0.99)), Long.toString(timings.maxNanos())));
+                writer.write('\n');
+            }
         }
+    }
 
-        currentlyTracking = new WeakReference<>(toTrack);
-        timing = nanoTime;
+    /**
+     * Writes the timings of all groupings as a JSON object with one array per grouping.
+     * Percentiles are {@code -1} for groupings that do not keep histograms.
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("tracker").value(name);
+        writer.name("sample_interval").value(sampleInterval);
+        for (Grouping grouping : Grouping.values()) {
+            writer.name(grouping.getSerializedName()).beginArray();
+            for (Timings timings : getTimingData(grouping)) {
+                writer.beginObject();
+                writer.name("key").value(timings.key());
+                writer.name("samples").value(timings.count());
+                writer.name("total_ns").value(timings.totalNanos());
+                writer.name("mean_ns").value(timings.meanNanos());
+                writer.name("p50_ns").value(timings.percentileNanos(0.5));
+                writer.name("p99_ns").value(timings.percentileNanos(0.99));
+                writer.name("max_ns").value(timings.maxNanos());
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public enum Grouping {
+        TYPE,
+        MOD,
+        CHUNK,
+        DIMENSION;
+
+        public String getSerializedName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * The aggregated timings of a group.
+     *
+     * @param key        The name of the group, such as the type, mod id, chunk or dimension
+     * @param count      The number of measured updates
+     * @param totalNanos The total time of the measured updates
+     * @param histogram  The distribution of the measured updates, or {@code null} if the grouping does not keep one
+     */
+    public record Timings(String key, long count, long totalNanos, @Nullable TimingHistogram histogram) {
+        private Timings(String key, TimingHistogram histogram) {
+            this(key, histogram.count(), histogram.totalNanos(), histogram);
+        }
+
+        public long meanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * {@return an upper bound of the given percentile in nanoseconds, or {@code -1} if there is no histogram}
+         */
+        public long percentileNanos(double percentile) {
+            return histogram != null ? histogram.percentileNanos(percentile) : -1;
+        }
+
+        /**
+         * {@return the longest measured update in nanoseconds, or {@code -1} if there is no histogram}
+         */
+        public long maxNanos() {
+            return histogram != null ? histogram.maxNanos() : -1;
+        }
+    }
+
+    private static final class TypeTimings {
+        private final ResourceLocation name;
+        private final TimingHistogram histogram = new TimingHistogram();
+        /**
+         * One of the measured objects of the type, for {@link TimeTracker#getTimingData()}.
+         * Only replaced once collected, so that measuring does not allocate.
+         */
+        @Nullable
+        private WeakReference<Object> sample;
+
+        private TypeTimings(ResourceLocation name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The timings of a dimension.
+     * The timings per chunk only cover the last one or two {@linkplain #CHUNK_WINDOW_NANOS windows},
+     * so that they do not grow with every chunk that ever ticked while the tracker runs.
+     */
+    private static final class DimensionTimings {
+        private final TimingHistogram histogram = new TimingHistogram();
+        private ChunkTimings current = new ChunkTimings();
+        private ChunkTimings previous = new ChunkTimings();
+
+        private void rotate() {
+            ChunkTimings oldest = previous;
+            previous = current;
+            oldest.reset();
+            current = oldest;
+        }
+
+        private ChunkTimings snapshot() {
+            ChunkTimings snapshot = new ChunkTimings();
+            snapshot.add(previous);
+            snapshot.add(current);
+            return snapshot;
+        }
+    }
+
+    /**
+     * The total time and count per chunk, without histograms to keep the memory per chunk small.
+     */
+    private static final class ChunkTimings {
+        private final Long2LongOpenHashMap nanos = new Long2LongOpenHashMap();
+        private final Long2LongOpenHashMap counts = new Long2LongOpenHashMap();
+
+        private void record(long chunk, long nanos) {
+            this.nanos.addTo(chunk, nanos);
+            this.counts.addTo(chunk, 1);
+        }
+
+        private void add(ChunkTimings other) {
+            for (Long2LongMap.Entry entry : other.nanos.long2LongEntrySet()) {
+                nanos.addTo(entry.getLongKey(), entry.getLongValue());
+            }
+            for (Long2LongMap.Entry entry : other.counts.long2LongEntrySet()) {
+                counts.addTo(entry.getLongKey(), entry.getLongValue());
+            }
+        }
+
+        private void reset() {
+            // Keeps the capacity, which is bounded by the chunks that ticked within one window
+            nanos.clear();
+            counts.clear();
+        }
+    }
+
+    @Name("neoforge.ObjectTick")
+    @Label("Object Tick")
+    @Category({ "NeoForge", "Ticking" })
+    @StackTrace(false)
+    static final class ObjectTickEvent extends Event {
+        @Label("Tracker")
+        String tracker;
+        @Label("Type")
+        String type;
+        @Label("Dimension")
+        String dimension;
+        @Label("Chunk X")
+        int chunkX;
+        @Label("Chunk Z")
+        int chunkZ;
+        // Not named duration, which is a field of every event
+        @Label("Update Time")
+        @Timespan
+        long updateNanos;
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.server.timings;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations in nanoseconds, with eight buckets per power of two,
+ * so that percentiles are reported with a relative error of at most 12.5%.
+ * <p>
+ * Recording never allocates. Histograms are not thread-safe, they are meant to be written and read on the server thread.
+ */
+public final class TimingHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        buckets[bucketOf(nanos)]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Adds all durations recorded by the other histogram to this histogram.
+     */
+    public void add(TimingHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        totalNanos += other.totalNanos;
+        maxNanos = Math.max(maxNanos, other.maxNanos);
+    }
+
+    public void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    public TimingHistogram copy() {
+        TimingHistogram copy = new TimingHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    public long meanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    public long maxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * {@return an upper bound of the given percentile, in nanoseconds}
+     *
+     * @param percentile The percentile, between 0 and 1.
+     */
+    public long percentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        if (shift > Long.SIZE - 2 - SUB_BUCKET_BITS) {
+            return Long.MAX_VALUE;
+        }
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge;
+
+import java.io.File;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this source set from the {@code jmh} run, which is a unit test run in the FML environment.
+ * <p>
+ * The benchmarks run in the JVM of the test instead of forked JVMs, since forked JVMs would not be launched through FML
+ * and could not bootstrap the game. The benchmarks to run and the result file are passed as system properties by the run.
+ */
+public class BenchmarkRunner {
+    @Test
+    @EnabledIfSystemProperty(named = "neoforge.jmh.includes", matches = ".+")
+    void runBenchmarks() throws RunnerException {
+        File results = new File(System.getProperty("neoforge.jmh.results", "jmh-results.json"));
+        results.getAbsoluteFile().getParentFile().mkdirs();
+        new Runner(new OptionsBuilder()
+                .include(System.getProperty("neoforge.jmh.includes"))
+                .forks(0)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results.getAbsolutePath())
+                .build()).run();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.attachment;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the index-keyed attachment storage of {@link AttachmentHolder} against the {@link IdentityHashMap} it replaced.
+ * <p>
+ * {@link #types} attachment types are registered, as in a large modpack, and every holder carries {@link #attached} of them,
+ * spread over the whole index range. The {@code populate} benchmarks create a fresh holder per operation, so running them with
+ * {@code -prof gc} reports the per-holder footprint as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttachmentHolderBenchmark {
+    @Param({ "64" })
+    public int types;
+
+    @Param({ "2", "8" })
+    public int attached;
+
+    private AttachmentType<Object>[] allTypes;
+    private AttachmentType<Object>[] attachedTypes;
+    private AttachmentType<Object> missingType;
+
+    private AttachmentHolder arrayHolder;
+    private MapHolder mapHolder;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        allTypes = new AttachmentType[types];
+        for (int i = 0; i < types; i++) {
+            allTypes[i] = AttachmentType.builder(Object::new).build();
+            // Normally assigned when the registry is baked
+            allTypes[i].index = i;
+        }
+
+        attachedTypes = new AttachmentType[attached];
+        for (int i = 0; i < attached; i++) {
+            attachedTypes[i] = allTypes[(int) ((long) i * types / attached)];
+        }
+        // Never attached, but registered
+        missingType = allTypes[types - 1];
+
+        arrayHolder = populateArray();
+        mapHolder = populateMap();
+    }
+
+    @Benchmark
+    public void getDataArray(Blackhole blackhole) {
+        for (var type : attachedTypes) {
+            blackhole.consume(arrayHolder.getData(type));
+        }
+    }
+
+    @Benchmark
+    public void getDataMap(Blackhole blackhole) {
+        for (var type : attachedTypes) {
+            blackhole.consume(mapHolder.getData(type));
+        }
+    }
+
+    @Benchmark
+    public boolean hasDataMissArray() {
+        return arrayHolder.hasData(missingType);
+    }
+
+    @Benchmark
+    public boolean hasDataMissMap() {
+        return mapHolder.hasData(missingType);
+    }
+
+    @Benchmark
+    public AttachmentHolder populateArray() {
+        var holder = new AttachmentHolder.AsField(null);
+        for (var type : attachedTypes) {
+            holder.getData(type);
+        }
+        return holder;
+    }
+
+    @Benchmark
+    public MapHolder populateMap() {
+        var holder = new MapHolder();
+        for (var type : attachedTypes) {
+            holder.getData(type);
+        }
+        return holder;
+    }
+
+    /**
+     * The storage of {@link AttachmentHolder} before it was keyed by index, without the dev-only registry check.
+     */
+    public static class MapHolder {
+        @Nullable
+        private Map<AttachmentType<?>, Object> attachments = null;
+
+        private Map<AttachmentType<?>, Object> getAttachmentMap() {
+            if (attachments == null) {
+                attachments = new IdentityHashMap<>(4);
+            }
+            return attachments;
+        }
+
+        public boolean hasData(AttachmentType<?> type) {
+            return attachments != null && attachments.containsKey(type);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T getData(AttachmentType<T> type) {
+            T ret = (T) getAttachmentMap().get(type);
+            if (ret == null) {
+                ret = type.defaultValueSupplier.apply(null);
+                attachments.put(type, ret);
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.capabilities;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the frozen, id-indexed provider lookup of {@link BlockCapability} against the map-and-list lookup it replaced.
+ * <p>
+ * Every query goes through a {@link BlockPos.MutableBlockPos}, as pipe and cable networks do. Half of the queried states
+ * belong to blocks without providers, a quarter to blocks with one provider and a quarter to blocks with two providers where
+ * the first one declines. Only blocks without block entities are used, so neither path needs a level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockCapabilityBenchmark {
+    private static final int QUERIES = 1024;
+
+    private final Object capability = new Object();
+    private final Map<Block, List<IBlockCapabilityProvider<Object, Void>>> legacyProviders = new IdentityHashMap<>();
+    private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+    private BlockCapability<Object, Void> blockCapability;
+    private BlockState[] states;
+
+    @Setup
+    public void setup() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+
+        blockCapability = BlockCapability.createVoid(ResourceLocation.fromNamespaceAndPath("neoforge", "benchmark"), Object.class);
+
+        List<Block> blocks = new ArrayList<>();
+        for (Block block : BuiltInRegistries.BLOCK) {
+            if (!block.defaultBlockState().hasBlockEntity()) {
+                blocks.add(block);
+            }
+        }
+
+        IBlockCapabilityProvider<Object, Void> decline = (level, pos, state, blockEntity, context) -> null;
+        IBlockCapabilityProvider<Object, Void> provide = (level, pos, state, blockEntity, context) -> capability;
+        states = new BlockState[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Block block = blocks.get(i % blocks.size());
+            states[i] = block.defaultBlockState();
+            List<IBlockCapabilityProvider<Object, Void>> providers = switch (i % 4) {
+                case 0 -> List.of(provide);
+                case 1 -> List.of(decline, provide);
+                default -> List.of();
+            };
+            if (!providers.isEmpty()) {
+                blockCapability.providers.put(block, new ArrayList<>(providers));
+                legacyProviders.put(block, providers);
+            }
+        }
+        BlockCapability.freezeAll();
+    }
+
+    @Benchmark
+    public void frozen(Blackhole blackhole) {
+        for (int i = 0; i < QUERIES; i++) {
+            pos.set(i, 64, i);
+            blackhole.consume(blockCapability.getCapability(null, pos, states[i], null, null));
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (int i = 0; i < QUERIES; i++) {
+            pos.set(i, 64, i);
+            blackhole.consume(getLegacy(pos, states[i]));
+        }
+    }
+
+    /**
+     * The lookup of {@link BlockCapability#getCapability} before providers were frozen, for states without block entities.
+     */
+    @Nullable
+    private Object getLegacy(BlockPos pos, BlockState state) {
+        pos = pos.immutable();
+        for (var provider : legacyProviders.getOrDefault(state.getBlock(), List.of())) {
+            var ret = provider.getCapability(null, pos, state, null, null);
+            if (ret != null)
+                return ret;
+        }
+        return null;
+    }
+}
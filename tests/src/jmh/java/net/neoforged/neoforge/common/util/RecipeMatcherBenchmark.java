@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.common.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the Hopcroft-Karp matching of {@link RecipeMatcher} against the backtracking matcher it replaced, on worst-case inputs.
+ * <p>
+ * In the {@code unmatchable} shape, all tests but the last three accept every input, and the last three share two inputs.
+ * No match exists, but no test has a single candidate either, so the backtracking matcher tries every assignment of the
+ * first tests before giving up. In the {@code overlapping} shape, every test accepts every input except its own,
+ * as with wildcard tag ingredients, and a match exists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecipeMatcherBenchmark {
+    @Param({ "6", "9", "11" })
+    public int elements;
+
+    @Param({ "unmatchable", "overlapping" })
+    public String shape;
+
+    private List<Integer> inputs;
+    private List<Predicate<Integer>> tests;
+
+    @Setup
+    public void setup() {
+        inputs = IntStream.range(0, elements).boxed().toList();
+        tests = new ArrayList<>(elements);
+        for (int test = 0; test < elements; test++) {
+            int self = test;
+            if (shape.equals("unmatchable")) {
+                tests.add(test < elements - 3 ? input -> true : input -> input < 2);
+            } else {
+                tests.add(input -> input != self);
+            }
+        }
+    }
+
+    @Benchmark
+    public int @Nullable [] hopcroftKarp() {
+        return RecipeMatcher.findMatches(inputs, tests);
+    }
+
+    @Benchmark
+    public int @Nullable [] backtracking() {
+        return BacktrackingRecipeMatcher.findMatches(inputs, tests);
+    }
+
+    /**
+     * The implementation of {@link RecipeMatcher} before it used Hopcroft-Karp.
+     */
+    public static class BacktrackingRecipeMatcher {
+        public static <T> int @Nullable [] findMatches(List<T> inputs, List<? extends Predicate<T>> tests) {
+            int elements = inputs.size();
+            if (elements != tests.size())
+                return null;
+
+            int[] ret = new int[elements];
+            Arrays.fill(ret, -1);
+
+            // [UnusedInputs] [UnusedIngredients] [IngredientMatchMask]...
+            BitSet data = new BitSet((elements + 2) * elements);
+            for (int x = 0; x < elements; x++) {
+                int matched = 0;
+                int offset = (x + 2) * elements;
+                Predicate<T> test = tests.get(x);
+
+                for (int y = 0; y < elements; y++) {
+                    if (data.get(y))
+                        continue;
+
+                    if (test.test(inputs.get(y))) {
+                        data.set(offset + y);
+                        matched++;
+                    }
+                }
+
+                if (matched == 0)
+                    return null;
+
+                if (matched == 1) {
+                    if (!claim(ret, data, x, elements))
+                        return null;
+                }
+            }
+
+            if (data.nextClearBit(0) >= elements)
+                return ret;
+
+            if (backtrack(data, ret, 0, elements))
+                return ret;
+
+            return null;
+        }
+
+        private static boolean claim(int[] ret, BitSet data, int claimed, int elements) {
+            Queue<Integer> pending = new LinkedList<Integer>();
+            pending.add(claimed);
+
+            while (pending.peek() != null) {
+                int test = pending.poll();
+                int offset = (test + 2) * elements;
+                int used = data.nextSetBit(offset) - offset;
+
+                if (used >= elements || used < 0)
+                    throw new IllegalStateException("What? We matched something, but it wasn't set in the range of this test! Test: " + test + " Used: " + used);
+
+                data.set(used);
+                data.set(elements + test);
+                ret[used] = test;
+
+                for (int x = 0; x < elements; x++) {
+                    offset = (x + 2) * elements;
+                    if (data.get(offset + used) && !data.get(elements + x)) {
+                        data.clear(offset + used);
+                        int count = 0;
+                        for (int y = offset; y < offset + elements; y++)
+                            if (data.get(y))
+                                count++;
+
+                        if (count == 0)
+                            return false;
+
+                        if (count == 1)
+                            pending.add(x);
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        private static boolean backtrack(BitSet data, int[] ret, int start, int elements) {
+            int test = data.nextClearBit(elements + start) - elements;
+            if (test >= elements)
+                return true;
+
+            if (test < 0)
+                throw new IllegalStateException("This should never happen, negative test in backtrack!");
+
+            int offset = (test + 2) * elements;
+            for (int x = 0; x < elements; x++) {
+                if (!data.get(offset + x) || data.get(x))
+                    continue;
+
+                data.set(x);
+
+                if (backtrack(data, ret, test + 1, elements)) {
+                    ret[x] = test;
+                    return true;
+                }
+
+                data.clear(x);
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.filters;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.RegistrySynchronization;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.ByteArrayTag;
+import net.minecraft.network.HandlerNames;
+import net.minecraft.network.PacketEncoder;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.configuration.ClientboundRegistryDataPacket;
+import net.minecraft.network.protocol.configuration.ConfigurationProtocols;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the single-pass encoding of {@link GenericPacketSplitter} against the old encode-to-measure mode.
+ * <p>
+ * The payload sizes cover a small packet, a medium packet and a packet that is larger than the
+ * {@linkplain net.minecraft.network.CompressionDecoder#MAXIMUM_COMPRESSED_LENGTH limit} of a connection without compression,
+ * which has to be split. Both modes end with the bytes that would be handed to the frame prepender.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenericPacketSplitterBenchmark {
+    @Param({ "256", "65536", "4194304" })
+    public int payloadSize;
+
+    private EmbeddedChannel channel;
+    private Packet<?> packet;
+
+    @Setup
+    public void setup() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+
+        channel = new EmbeddedChannel();
+        channel.pipeline().addLast(HandlerNames.ENCODER, new PacketEncoder<>(ConfigurationProtocols.CLIENTBOUND));
+        channel.pipeline().addLast(GenericPacketSplitter.CHANNEL_HANDLER_NAME, new GenericPacketSplitter());
+
+        var entry = new RegistrySynchronization.PackedRegistryEntry(ResourceLocation.withDefaultNamespace("benchmark"), Optional.of(new ByteArrayTag(new byte[payloadSize])));
+        packet = new ClientboundRegistryDataPacket(Registries.BIOME, List.of(entry));
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int singlePass() {
+        return encode();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dneoforge.splitter.twoPassEncoding=true")
+    public int twoPass() {
+        return encode();
+    }
+
+    private int encode() {
+        channel.writeOutbound(packet);
+        int frames = 0;
+        Object frame;
+        while ((frame = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(frame);
+            frames++;
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.network.filters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.SharedConstants;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.HandlerNames;
+import net.minecraft.network.PacketEncoder;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
+import net.minecraft.network.protocol.common.custom.BrandPayload;
+import net.minecraft.network.protocol.configuration.ConfigurationProtocols;
+import net.minecraft.server.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares broadcasting a payload with a {@link SharedPayloadPacket} against encoding it in the pipeline of every recipient.
+ * <p>
+ * Every recipient is a channel with the vanilla encoder and a {@link GenericPacketSplitter}, as the pipeline of a remote connection.
+ * The shared mode encodes the packet once and sends every channel a reference to the bytes, as {@code PacketDistributor} does for broadcasts,
+ * so its cost should stay flat in the number of recipients apart from handing the bytes to each channel.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SharedPayloadPacketBenchmark {
+    @Param({ "1", "16", "200" })
+    public int recipients;
+
+    @Param({ "64", "16384" })
+    public int payloadSize;
+
+    private EmbeddedChannel[] channels;
+    private StreamCodec<ByteBuf, Packet<?>> codec;
+    private ClientboundCustomPayloadPacket packet;
+
+    @Setup
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void setup() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+
+        channels = new EmbeddedChannel[recipients];
+        for (int i = 0; i < recipients; i++) {
+            channels[i] = new EmbeddedChannel();
+            channels[i].pipeline().addLast(HandlerNames.ENCODER, new PacketEncoder<>(ConfigurationProtocols.CLIENTBOUND));
+            channels[i].pipeline().addLast(GenericPacketSplitter.CHANNEL_HANDLER_NAME, new GenericPacketSplitter());
+        }
+        codec = (StreamCodec<ByteBuf, Packet<?>>) (StreamCodec) ConfigurationProtocols.CLIENTBOUND.codec();
+        packet = new ClientboundCustomPayloadPacket(new BrandPayload("x".repeat(payloadSize)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Benchmark
+    public int perRecipient() {
+        return broadcast(packet);
+    }
+
+    @Benchmark
+    public int shared() {
+        ByteBuf buf = Unpooled.buffer();
+        codec.encode(buf, packet);
+        SharedPayloadPacket sharedPacket = new SharedPayloadPacket(packet, ConnectionProtocol.CONFIGURATION, buf);
+        try {
+            return broadcast(sharedPacket);
+        } finally {
+            sharedPacket.release();
+        }
+    }
+
+    private int broadcast(Packet<?> packet) {
+        int bytes = 0;
+        for (EmbeddedChannel channel : channels) {
+            // Every channel releases the shared packet once it wrote it, regular packets are not reference counted
+            channel.writeOutbound(ReferenceCountUtil.retain(packet));
+            Object frame;
+            while ((frame = channel.readOutbound()) != null) {
+                bytes += ((ByteBuf) frame).readableBytes();
+                ReferenceCountUtil.release(frame);
+            }
+        }
+        return bytes;
+    }
+}
@@ -19,6 +19,7 @@ import net.neoforged.neoforge.common.crafting.CompoundIngredient;
 import net.neoforged.neoforge.common.crafting.DataComponentIngredient;
 import net.neoforged.neoforge.common.crafting.DifferenceIngredient;
 import net.neoforged.neoforge.common.crafting.IntersectionIngredient;
+import net.neoforged.neoforge.common.crafting.ItemIdSet;
 import net.neoforged.testframework.junit.EphemeralTestServerProvider;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -74,6 +75,64 @@ public class IngredientTests {
         Assertions.assertThat(ingredient.test(stack)).withFailMessage("Strictness check failed for ingredient with strict: " + strict).isEqualTo(!strict);
     }
 
+    @Test
+    void testItemIdSetOperations(MinecraftServer server) {
+        final var first = ItemIdSet.ofStacks(new ItemStack(Items.STONE), new ItemStack(Items.DIRT));
+        final var second = ItemIdSet.ofStacks(new ItemStack(Items.DIRT), new ItemStack(Items.DIAMOND_AXE));
+
+        Assertions.assertThat(first.or(second)).isEqualTo(ItemIdSet.ofStacks(new ItemStack(Items.STONE), new ItemStack(Items.DIRT), new ItemStack(Items.DIAMOND_AXE)));
+        Assertions.assertThat(first.and(second)).isEqualTo(ItemIdSet.ofStacks(new ItemStack(Items.DIRT)));
+        Assertions.assertThat(first.andNot(second)).isEqualTo(ItemIdSet.ofStacks(new ItemStack(Items.STONE)));
+        Assertions.assertThat(first.andNot(first).isEmpty()).withFailMessage("Set without itself is not empty").isTrue();
+        Assertions.assertThat(first.and(ItemIdSet.EMPTY)).isEqualTo(ItemIdSet.EMPTY);
+        Assertions.assertThat(first.or(ItemIdSet.EMPTY)).isEqualTo(first);
+        Assertions.assertThat(first.contains(Items.STONE)).isTrue();
+        Assertions.assertThat(first.contains(Items.DIAMOND_AXE)).isFalse();
+    }
+
+    @Test
+    void testCompoundIngredientRejectsOtherItems(MinecraftServer server) {
+        final var ingredient = CompoundIngredient.of(Ingredient.of(Items.STONE), Ingredient.of(ItemTags.LOGS));
+
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.STONE))).isTrue();
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.OAK_LOG))).isTrue();
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.DIRT))).withFailMessage("Compound ingredient accepts an item of neither child").isFalse();
+        Assertions.assertThat(ingredient.getItemSet()).isNotNull();
+        Assertions.assertThat(ingredient.getItemSet().contains(Items.DIRT)).isFalse();
+    }
+
+    @Test
+    void testIntersectionIngredientRejectsOtherItems(MinecraftServer server) {
+        final var ingredient = IntersectionIngredient.of(Ingredient.of(ItemTags.LOGS), Ingredient.of(Items.BIRCH_LOG, Items.DISPENSER));
+
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.BIRCH_LOG))).isTrue();
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.OAK_LOG))).withFailMessage("Intersection ingredient accepts an item of only the first child").isFalse();
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.DISPENSER))).withFailMessage("Intersection ingredient accepts an item of only the second child").isFalse();
+        Assertions.assertThat(ingredient.getItemSet()).isEqualTo(ItemIdSet.ofStacks(new ItemStack(Items.BIRCH_LOG)));
+    }
+
+    @Test
+    void testDifferenceIngredientRejectsSubtractedItems(MinecraftServer server) {
+        final var ingredient = DifferenceIngredient.of(Ingredient.of(ItemTags.LOGS), Ingredient.of(Items.ACACIA_LOG));
+
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.OAK_LOG))).isTrue();
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.ACACIA_LOG))).withFailMessage("Difference ingredient accepts a subtracted item").isFalse();
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.STONE))).withFailMessage("Difference ingredient accepts an item not in its base").isFalse();
+        Assertions.assertThat(ingredient.getItemSet()).isNotNull();
+        Assertions.assertThat(ingredient.getItemSet().contains(Items.ACACIA_LOG)).isFalse();
+    }
+
+    @Test
+    void testDifferenceIngredientKeepsItemsOfNonSimpleSubtraction(MinecraftServer server) {
+        // Only damaged axes are subtracted, so undamaged axes must still pass the item set
+        var damaged = new ItemStack(Items.DIAMOND_AXE);
+        damaged.set(DataComponents.DAMAGE, 1);
+        final var ingredient = DifferenceIngredient.of(Ingredient.of(Items.DIAMOND_AXE), DataComponentIngredient.of(true, damaged));
+
+        Assertions.assertThat(ingredient.test(new ItemStack(Items.DIAMOND_AXE))).isTrue();
+        Assertions.assertThat(ingredient.test(damaged)).isFalse();
+    }
+
     private static Stream<Arguments> provideIngredientMatrix(MinecraftServer server) {
         final List<Ingredient> matrix = List.of(
                 Ingredient.of(Items.DISPENSER.getDefaultInstance()),
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.unittest;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import net.minecraft.network.Connection;
+import net.minecraft.network.HandlerNames;
+import net.minecraft.network.protocol.PacketFlow;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ConfigurationTask;
+import net.minecraft.world.entity.player.Player;
+import net.neoforged.neoforge.common.NeoForgeConfig;
+import net.neoforged.neoforge.common.extensions.ICommonPacketListener;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+import net.neoforged.neoforge.network.handling.IPayloadHandler;
+import net.neoforged.neoforge.network.handling.WorkerPayloadHandler;
+import net.neoforged.testframework.junit.EphemeralTestServerProvider;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(EphemeralTestServerProvider.class)
+public class PayloadWorkersTest {
+    private EmbeddedChannel channel;
+    private IPayloadContext context;
+
+    @BeforeEach
+    void setup(MinecraftServer server) {
+        Connection connection = new Connection(PacketFlow.SERVERBOUND);
+        channel = new EmbeddedChannel(connection);
+        // Reading is only resumed while a decoder is present
+        channel.pipeline().addFirst(HandlerNames.DECODER, new ChannelInboundHandlerAdapter());
+        context = new TestContext(connection);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testPayloadsAreHandledInOrder() throws InterruptedException {
+        int payloads = NeoForgeConfig.COMMON.payloadWorkerMaxQueuedPayloads.getAsInt() / 2;
+        List<Integer> handled = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(payloads);
+        var handler = new WorkerPayloadHandler<TestPayload>((payload, context) -> {
+            synchronized (handled) {
+                handled.add(payload.index());
+            }
+            done.countDown();
+        });
+
+        for (int i = 0; i < payloads; i++) {
+            handler.handle(new TestPayload(i), context);
+        }
+
+        Assertions.assertThat(done.await(10, TimeUnit.SECONDS)).withFailMessage("Payloads were not handled").isTrue();
+        synchronized (handled) {
+            Assertions.assertThat(handled).containsExactlyElementsOf(IntStream.range(0, payloads).boxed().toList());
+        }
+    }
+
+    @Test
+    void testReadingPausesWhenQueueIsFull() throws InterruptedException {
+        int maxQueued = NeoForgeConfig.COMMON.payloadWorkerMaxQueuedPayloads.getAsInt();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(maxQueued);
+        var handler = new WorkerPayloadHandler<>(blockingFirst(release, done));
+
+        for (int i = 0; i < maxQueued - 1; i++) {
+            handler.handle(new TestPayload(i), context);
+        }
+        Assertions.assertThat(channel.config().isAutoRead()).withFailMessage("Reading paused before the queue was full").isTrue();
+
+        handler.handle(new TestPayload(maxQueued - 1), context);
+        Assertions.assertThat(channel.config().isAutoRead()).withFailMessage("Reading not paused once the queue was full").isFalse();
+
+        release.countDown();
+        Assertions.assertThat(done.await(10, TimeUnit.SECONDS)).withFailMessage("Payloads were not handled").isTrue();
+        // Reading is resumed on the event loop of the connection
+        channel.runPendingTasks();
+        Assertions.assertThat(channel.config().isAutoRead()).withFailMessage("Reading not resumed once the queue was drained").isTrue();
+    }
+
+    @Test
+    void testPayloadsOfClosedConnectionsAreDropped() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        var handler = new WorkerPayloadHandler<>(blockingFirst(release, done));
+
+        handler.handle(new TestPayload(0), context);
+        handler.handle(new TestPayload(1), context);
+        channel.close();
+        handler.handle(new TestPayload(2), context);
+        release.countDown();
+
+        Assertions.assertThat(done.await(1, TimeUnit.SECONDS)).withFailMessage("Payloads of a closed connection were handled").isFalse();
+        Assertions.assertThat(done.getCount()).isEqualTo(2);
+    }
+
+    /**
+     * {@return a handler that waits for the release latch before handling the first payload, and counts down the done latch for every payload}
+     */
+    private static IPayloadHandler<TestPayload> blockingFirst(CountDownLatch release, CountDownLatch done) {
+        return (payload, context) -> {
+            if (payload.index() == 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            done.countDown();
+        };
+    }
+
+    private record TestPayload(int index) implements CustomPacketPayload {
+        private static final Type<TestPayload> TYPE = new Type<>(ResourceLocation.fromNamespaceAndPath("neotests", "payload_workers"));
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return TYPE;
+        }
+    }
+
+    private record TestContext(Connection connection) implements IPayloadContext {
+        @Override
+        public ICommonPacketListener listener() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Player player() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> enqueueWork(Runnable task) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> CompletableFuture<T> enqueueWork(Supplier<T> task) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PacketFlow flow() {
+            return PacketFlow.SERVERBOUND;
+        }
+
+        @Override
+        public void handle(CustomPacketPayload payload) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void finishCurrentTask(ConfigurationTask.Type type) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) NeoForged and contributors
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+
+package net.neoforged.neoforge.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import net.neoforged.neoforge.common.util.RecipeMatcher;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class RecipeMatcherTest {
+    private static final int MAX_EXHAUSTIVE_ELEMENTS = 7;
+    private static final int GRAPHS_PER_SIZE = 2000;
+
+    @Test
+    void matchesExhaustiveSearch() {
+        Random random = new Random(0);
+        for (int elements = 1; elements <= MAX_EXHAUSTIVE_ELEMENTS; elements++) {
+            for (int graph = 0; graph < GRAPHS_PER_SIZE; graph++) {
+                // Vary the density, so that both matchable and unmatchable graphs are common
+                boolean[][] accepts = randomGraph(random, elements, random.nextDouble());
+                List<Integer> inputs = IntStream.range(0, elements).boxed().toList();
+                int[] matches = RecipeMatcher.findMatches(inputs, tests(accepts));
+                int[] expected = exhaustiveSearch(accepts);
+
+                if (expected == null) {
+                    assertNull(matches, "Found a match where exhaustive search found none");
+                } else {
+                    assertNotNull(matches, "Found no match where exhaustive search found one");
+                    assertValidMatch(accepts, matches);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesLargeOverlappingTests() {
+        // Every test accepts every input but one, which makes backtracking exponential
+        int elements = 64;
+        boolean[][] accepts = new boolean[elements][elements];
+        for (int test = 0; test < elements; test++) {
+            for (int input = 0; input < elements; input++) {
+                accepts[test][input] = input != test;
+            }
+        }
+
+        int[] matches = RecipeMatcher.findMatches(IntStream.range(0, elements).boxed().toList(), tests(accepts));
+        assertNotNull(matches);
+        assertValidMatch(accepts, matches);
+    }
+
+    @Test
+    void rejectsMismatchedSizes() {
+        assertNull(RecipeMatcher.findMatches(List.of(0, 1), List.<Predicate<Integer>>of(i -> true)));
+    }
+
+    @Test
+    void supportsTestsThatMatchRecipes() {
+        // The outer match must not be affected by the matches run from its tests
+        List<Predicate<Integer>> inner = List.of(i -> i == 1, i -> i == 0);
+        List<Predicate<Integer>> outer = new ArrayList<>();
+        for (int test = 0; test < 3; test++) {
+            int accepted = 2 - test;
+            outer.add(input -> {
+                assertArrayEquals(new int[] { 1, 0 }, RecipeMatcher.findMatches(List.of(0, 1), inner));
+                return input == accepted;
+            });
+        }
+
+        assertArrayEquals(new int[] { 2, 1, 0 }, RecipeMatcher.findMatches(List.of(0, 1, 2), outer));
+    }
+
+    private static boolean[][] randomGraph(Random random, int elements, double density) {
+        boolean[][] accepts = new boolean[elements][elements];
+        for (int test = 0; test < elements; test++) {
+            for (int input = 0; input < elements; input++) {
+                accepts[test][input] = random.nextDouble() < density;
+            }
+        }
+        return accepts;
+    }
+
+    private static List<Predicate<Integer>> tests(boolean[][] accepts) {
+        List<Predicate<Integer>> tests = new ArrayList<>(accepts.length);
+        for (boolean[] accepted : accepts) {
+            tests.add(input -> accepted[input]);
+        }
+        return tests;
+    }
+
+    private static void assertValidMatch(boolean[][] accepts, int[] matches) {
+        assertEquals(accepts.length, matches.length);
+        boolean[] used = new boolean[accepts.length];
+        for (int input = 0; input < matches.length; input++) {
+            int test = matches[input];
+            assertTrue(test >= 0 && test < accepts.length, "Input " + input + " is matched to no test");
+            assertTrue(!used[test], "Test " + test + " is matched to several inputs");
+            assertTrue(accepts[test][input], "Input " + input + " is matched to test " + test + " which does not accept it");
+            used[test] = true;
+        }
+    }
+
+    /**
+     * {@return a mapping of inputs to tests found by trying every permutation, or null if there is none}
+     */
+    private static int @Nullable [] exhaustiveSearch(boolean[][] accepts) {
+        int[] testOfInput = new int[accepts.length];
+        return permute(accepts, testOfInput, new boolean[accepts.length], 0) ? testOfInput : null;
+    }
+
+    private static boolean permute(boolean[][] accepts, int[] testOfInput, boolean[] used, int input) {
+        if (input == testOfInput.length)
+            return true;
+
+        for (int test = 0; test < accepts.length; test++) {
+            if (!used[test] && accepts[test][input]) {
+                used[test] = true;
+                testOfInput[input] = test;
+                if (permute(accepts, testOfInput, used, input + 1))
+                    return true;
+                used[test] = false;
+            }
+        }
+        return false;
+    }
+}
@@ -153,4 +153,62 @@ public class AttachmentTests {
             helper.succeed();
         });
     }
+
+    @GameTest
+    @EmptyTemplate
+    @TestHolder(description = "Ensures that dirty-tracked attachments are only re-encoded when they changed")
+    static void dirtyTrackedSerialization(DynamicTest test, RegistrationHelper reg) {
+        class TrackedInt implements INBTSerializable<IntTag> {
+            private int value;
+            private boolean dirty;
+            private int writes;
+
+            public void setValue(int value) {
+                this.value = value;
+                this.dirty = true;
+            }
+
+            public boolean consumeDirty() {
+                boolean wasDirty = dirty;
+                dirty = false;
+                return wasDirty;
+            }
+
+            @Override
+            public IntTag serializeNBT(HolderLookup.Provider provider) {
+                writes++;
+                return IntTag.valueOf(value);
+            }
+
+            @Override
+            public void deserializeNBT(HolderLookup.Provider provider, IntTag nbt) {
+                this.value = nbt.getAsInt();
+            }
+        }
+
+        var trackedType = reg.attachments()
+                .register("tracked_int", () -> AttachmentType.serializable(TrackedInt::new).trackDirty(TrackedInt::consumeDirty).build());
+
+        test.onGameTest(helper -> {
+            var player = helper.makeMockPlayer();
+            var provider = helper.getLevel().registryAccess();
+            var attachment = player.getData(trackedType);
+            var key = NeoForgeRegistries.ATTACHMENT_TYPES.getKey(trackedType.get()).toString();
+
+            player.serializeAttachments(provider);
+            player.serializeAttachments(provider);
+            helper.assertTrue(attachment.writes == 1, "Unchanged attachment should only have been written once");
+
+            attachment.setValue(5);
+            var tag = player.serializeAttachments(provider);
+            helper.assertTrue(attachment.writes == 2, "Dirty attachment should have been written again");
+            helper.assertTrue(tag != null && tag.getInt(key) == 5, "Attachment should have been written with its new value");
+
+            player.setData(trackedType, attachment);
+            player.serializeAttachments(provider);
+            helper.assertTrue(attachment.writes == 3, "Replaced attachment should have been written again");
+
+            helper.succeed();
+        });
+    }
 }
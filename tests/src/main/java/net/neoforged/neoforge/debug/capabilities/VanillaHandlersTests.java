@@ -11,8 +11,12 @@ import static net.neoforged.neoforge.fluids.capability.IFluidHandler.FluidAction
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.LayeredCauldronBlock;
+import net.minecraft.world.level.block.entity.ChestBlockEntity;
+import net.minecraft.world.level.block.entity.HopperBlockEntity;
 import net.minecraft.world.level.material.Fluids;
 import net.neoforged.neoforge.capabilities.BlockCapabilityCache;
 import net.neoforged.neoforge.capabilities.Capabilities;
@@ -49,14 +53,17 @@ public class VanillaHandlersTests {
 
         // The cache should only be invalidated once until it is queried again
         helper.setBlock(composterPos, Blocks.COMPOSTER.defaultBlockState());
+        deliverInvalidations(helper);
         if (invalidationCount.getValue() != 1)
             helper.fail("Should have invalidated once");
 
         helper.setBlock(composterPos, Blocks.AIR.defaultBlockState());
+        deliverInvalidations(helper);
         if (invalidationCount.getValue() != 1) // capability not re-queried, so no invalidation
             helper.fail("Should have invalidated once");
 
         helper.setBlock(composterPos, Blocks.COMPOSTER.defaultBlockState());
+        deliverInvalidations(helper);
         if (invalidationCount.getValue() != 1) // capability not re-queried, so no invalidation
             helper.fail("Should have invalidated once");
 
@@ -68,6 +75,7 @@ public class VanillaHandlersTests {
 
         // Should be notified of disappearance if the composter is removed
         helper.setBlock(composterPos, Blocks.AIR.defaultBlockState());
+        deliverInvalidations(helper);
 
         if (invalidationCount.getValue() != 2)
             helper.fail("Should have invalidated a second time");
@@ -97,6 +105,7 @@ public class VanillaHandlersTests {
 
         // Should invalidate once when setting the block
         helper.setBlock(cauldronPos, Blocks.CAULDRON);
+        deliverInvalidations(helper);
         var wrapper = capCache.getCapability();
         helper.assertTrue(wrapper != null, "Expected fluid handler");
         helper.assertTrue(invalidationCount.intValue() == 1, "Expected 1 invalidation only");
@@ -138,11 +147,42 @@ public class VanillaHandlersTests {
         helper.assertTrue(wrapper.fill(new FluidStack(Fluids.WATER, 1000), EXECUTE) == 0, "Expected no water fill to partial cauldron");
 
         // None of this should have invalidated the capability
+        deliverInvalidations(helper);
         helper.assertTrue(invalidationCount.intValue() == 1, "Expected 1 invalidation only after the whole test");
         // But if we change the block to a non-cauldron, it should invalidate
         helper.destroyBlock(cauldronPos);
+        deliverInvalidations(helper);
         helper.assertTrue(invalidationCount.intValue() == 2, "Expected a second invalidation after cauldron destruction");
 
         helper.succeed();
     }
+
+    @GameTest
+    @EmptyTemplate
+    @TestHolder(description = "Tests that hoppers insert into the new block entity after their cached neighbor is replaced")
+    public static void testHopperNeighborReplaced(ExtendedGameTestHelper helper) {
+        var containerPos = new BlockPos(1, 1, 1);
+        var hopperPos = containerPos.above();
+
+        helper.setBlock(containerPos, Blocks.CHEST);
+        helper.setBlock(hopperPos, Blocks.HOPPER);
+        helper.<HopperBlockEntity>getBlockEntity(hopperPos).setItem(0, new ItemStack(Items.DIAMOND, 2));
+
+        helper.startSequence()
+                .thenWaitUntil(() -> helper.assertContainerContains(containerPos, Items.DIAMOND))
+                .thenExecute(() -> {
+                    helper.<ChestBlockEntity>getBlockEntity(containerPos).clearContent();
+                    helper.setBlock(containerPos, Blocks.BARREL);
+                })
+                .thenWaitUntil(() -> helper.assertContainerContains(containerPos, Items.DIAMOND))
+                .thenExecute(() -> helper.assertContainerEmpty(hopperPos))
+                .thenSucceed();
+    }
+
+    /**
+     * Capability invalidations are delivered at the end of the tick, deliver them right away instead.
+     */
+    private static void deliverInvalidations(ExtendedGameTestHelper helper) {
+        helper.getLevel().cleanCapabilityListenerReferences();
+    }
 }